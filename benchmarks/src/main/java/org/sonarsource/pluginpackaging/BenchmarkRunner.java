@@ -0,0 +1,63 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.util.Arrays;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so that packaging throughput can be compared across releases.
+ * <p>
+ * Usage: {@code mvn -Pbenchmarks test-compile exec:exec -Dbenchmarks.args="[result file] [JMH options]"}. The result
+ * file defaults to {@value #DEFAULT_RESULT_FILE}, other arguments are passed to JMH, for example
+ * {@code -p classes=2000} or a benchmark name pattern.
+ */
+public class BenchmarkRunner {
+
+  static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+  private BenchmarkRunner() {
+    // only static methods
+  }
+
+  public static void main(String[] args) throws Exception {
+    String resultFile = DEFAULT_RESULT_FILE;
+    String[] jmhArgs = args;
+    if (args.length > 0 && args[0].endsWith(".json")) {
+      resultFile = args[0];
+      jmhArgs = Arrays.copyOfRange(args, 1, args.length);
+    }
+    File parent = new File(resultFile).getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IllegalStateException("Unable to create directory " + parent);
+    }
+    Options options = new OptionsBuilder()
+      .parent(new CommandLineOptions(jmhArgs))
+      .resultFormat(ResultFormatType.JSON)
+      .result(resultFile)
+      .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Staging of the dependencies of a synthetic plugin, as done by {@code SonarPluginMojo#copyDependencies()}: to an
+ * empty staging directory with an already populated store, and to an up-to-date staging directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyDependenciesBenchmark {
+
+  @Param({"10", "100"})
+  public int dependencies;
+
+  private Path baseDir;
+  private SyntheticPlugin.Layout layout;
+  private DependencyStagingStore store;
+  private Path stagingDir;
+  private Path upToDateDir;
+
+  @Setup
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDirectory("copy-dependencies-benchmark");
+    layout = new SyntheticPlugin(0, 0, dependencies, 1).generate(baseDir);
+    store = new DependencyStagingStore(baseDir.resolve("store").toFile(), Long.MAX_VALUE);
+    stagingDir = baseDir.resolve("staging");
+    upToDateDir = baseDir.resolve("up-to-date");
+    stage(upToDateDir);
+  }
+
+  @Setup(Level.Invocation)
+  public void cleanStagingDir() throws IOException {
+    SyntheticPlugin.delete(stagingDir);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    SyntheticPlugin.delete(baseDir);
+  }
+
+  @Benchmark
+  public int stageToEmptyDirectory() throws IOException {
+    return stage(stagingDir);
+  }
+
+  @Benchmark
+  public int stageToUpToDateDirectory() throws IOException {
+    return stage(upToDateDir);
+  }
+
+  private int stage(Path targetDir) throws IOException {
+    int staged = 0;
+    for (File dependency : layout.getDependencyFiles()) {
+      if (store.stage(dependency, targetDir.resolve(dependency.getName()).toFile())) {
+        staged++;
+      }
+    }
+    return staged;
+  }
+}
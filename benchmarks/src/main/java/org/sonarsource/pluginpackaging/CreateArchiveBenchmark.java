@@ -0,0 +1,103 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Packaging of a synthetic plugin, as done by {@link SonarPluginMojo#createArchive()} once the manifest is built
+ * and the dependencies are resolved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateArchiveBenchmark {
+
+  private static final String[] INCLUDES = {"**/**"};
+  private static final String[] EXCLUDES = {"**/package.html"};
+  private static final byte[] MANIFEST = ("Manifest-Version: 1.0\r\nPlugin-Key: synthetic\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+
+  @Param({"200", "2000"})
+  public int classes;
+
+  @Param({"4096", "262144"})
+  public int resourceSize;
+
+  @Param({"10", "50"})
+  public int dependencies;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  @Param({"true", "false"})
+  public boolean compress;
+
+  private Path baseDir;
+  private SyntheticPlugin.Layout layout;
+  private File jarFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDirectory("create-archive-benchmark");
+    layout = new SyntheticPlugin(classes, resourceSize, dependencies, 1).generate(baseDir);
+    jarFile = baseDir.resolve("sonar-synthetic-plugin.jar").toFile();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    SyntheticPlugin.delete(baseDir);
+  }
+
+  @Benchmark
+  public File createArchive() throws IOException {
+    long time = System.currentTimeMillis();
+    PluginArchive archive = new PluginArchive(time);
+    archive.addContent(PluginArchive.MANIFEST_NAME, MANIFEST, time);
+    archive.addDirectory(layout.getClassesDir(), "", INCLUDES, EXCLUDES);
+    for (File dependency : layout.getDependencyFiles()) {
+      archive.addFile(SonarPluginMojo.LIB_DIR + dependency.getName(), dependency);
+    }
+    List<PackagedEntry> entries = archive.getEntries();
+    new PluginJarWriter(threads, compress ? Deflater.DEFAULT_COMPRESSION : Deflater.NO_COMPRESSION).write(jarFile, entries);
+    return jarFile;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.aether.graph.DependencyNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Walk of the dependency graph of a synthetic plugin to find the artifacts provided by the legacy plugin API. The
+ * collection of the graph itself is done by Maven resolver and is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProvidedArtifactsBenchmark {
+
+  @Param({"50", "500", "5000"})
+  public int dependencies;
+
+  @Param({"2", "8"})
+  public int treeDepth;
+
+  private DependencyNode root;
+
+  @Setup
+  public void setUp() {
+    root = new SyntheticPlugin(0, 0, dependencies, treeDepth).dependencyTree();
+  }
+
+  @Benchmark
+  public Set<String> collectProvided() {
+    return ProvidedArtifactResolver.collectProvided(root);
+  }
+}
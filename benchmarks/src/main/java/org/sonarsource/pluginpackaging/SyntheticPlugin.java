@@ -0,0 +1,178 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+
+/**
+ * Generator of synthetic plugin layouts: a classes directory, the dependency files to package, and the dependency
+ * graph of the plugin. Generated content is pseudo-random but deterministic, with a compression ratio close to
+ * the one of compiled classes, so that results are comparable between runs.
+ */
+class SyntheticPlugin {
+
+  private static final int ENTRIES_PER_DEPENDENCY = 20;
+  private static final int CHILDREN_PER_NODE = 3;
+  private static final byte[] ALPHABET = "abcdefghijklmnopqrstuvwxyz/;()<>LIVZ\0\1\7\n".getBytes(StandardCharsets.US_ASCII);
+
+  private final int classes;
+  private final int resourceSize;
+  private final int dependencies;
+  private final int treeDepth;
+  private final Random random = new Random(42);
+
+  SyntheticPlugin(int classes, int resourceSize, int dependencies, int treeDepth) {
+    this.classes = classes;
+    this.resourceSize = resourceSize;
+    this.dependencies = dependencies;
+    this.treeDepth = treeDepth;
+  }
+
+  /**
+   * Writes {@code classes} class files and one resource of {@code resourceSize} bytes per ten classes to
+   * {@code <baseDir>/classes}, and {@code dependencies} jar files to {@code <baseDir>/dependencies}.
+   */
+  Layout generate(Path baseDir) throws IOException {
+    Path classesDir = baseDir.resolve("classes");
+    for (int i = 0; i < classes; i++) {
+      Path packageDir = classesDir.resolve("org/synthetic/p" + (i % 50));
+      Files.createDirectories(packageDir);
+      Files.write(packageDir.resolve("Class" + i + ".class"), classContent());
+      if (i % 10 == 0) {
+        Files.write(packageDir.resolve("resource" + i + ".txt"), content(resourceSize));
+      }
+    }
+    Path dependenciesDir = baseDir.resolve("dependencies");
+    Files.createDirectories(dependenciesDir);
+    List<File> dependencyFiles = new ArrayList<>();
+    for (int i = 0; i < dependencies; i++) {
+      Path jar = dependenciesDir.resolve("dep-" + i + "-1.0.jar");
+      writeJar(jar, i);
+      dependencyFiles.add(jar.toFile());
+    }
+    return new Layout(classesDir.toFile(), dependencyFiles);
+  }
+
+  /**
+   * Dependency graph of {@code dependencies} nodes spread on {@code treeDepth} levels. Each node depends on up to
+   * three nodes of the next level, so that nodes are shared, every tenth node is in test scope, and the first
+   * direct dependency is the legacy plugin API.
+   */
+  DependencyNode dependencyTree() {
+    DefaultDependencyNode root = new DefaultDependencyNode(new DefaultArtifact("org.synthetic:sonar-synthetic-plugin:1.0"));
+    int depth = Math.max(1, Math.min(treeDepth, dependencies));
+    List<List<DependencyNode>> levels = new ArrayList<>();
+    for (int level = 0; level < depth; level++) {
+      levels.add(new ArrayList<>());
+    }
+    for (int i = 0; i < dependencies; i++) {
+      String groupId = i == 0 ? ProvidedArtifactResolver.LEGACY_SONAR_GROUP_ID : "org.synthetic";
+      String scope = i % 10 == 9 ? "test" : "compile";
+      levels.get(i % depth).add(new DefaultDependencyNode(new Dependency(new DefaultArtifact(groupId + ":dep-" + i + ":1.0"), scope)));
+    }
+    root.setChildren(levels.get(0));
+    for (int level = 0; level + 1 < depth; level++) {
+      List<DependencyNode> next = levels.get(level + 1);
+      List<DependencyNode> current = levels.get(level);
+      for (int i = 0; i < current.size(); i++) {
+        List<DependencyNode> children = new ArrayList<>();
+        for (int c = 0; c < CHILDREN_PER_NODE && c < next.size(); c++) {
+          children.add(next.get((i * CHILDREN_PER_NODE + c) % next.size()));
+        }
+        current.get(i).setChildren(children);
+      }
+    }
+    return root;
+  }
+
+  private void writeJar(Path jar, int index) throws IOException {
+    try (OutputStream output = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(output)) {
+      for (int i = 0; i < ENTRIES_PER_DEPENDENCY; i++) {
+        zip.putNextEntry(new ZipEntry("org/synthetic/dep" + index + "/Class" + i + ".class"));
+        zip.write(classContent());
+        zip.closeEntry();
+      }
+    }
+  }
+
+  private byte[] classContent() {
+    byte[] content = content(512 + random.nextInt(4096));
+    content[0] = (byte) 0xCA;
+    content[1] = (byte) 0xFE;
+    content[2] = (byte) 0xBA;
+    content[3] = (byte) 0xBE;
+    return content;
+  }
+
+  private byte[] content(int size) {
+    byte[] content = new byte[Math.max(size, 4)];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+    }
+    return content;
+  }
+
+  static void delete(Path dir) throws IOException {
+    if (!Files.exists(dir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        // files of the staging store are read-only
+        path.toFile().setWritable(true);
+        Files.delete(path);
+      }
+    }
+  }
+
+  static class Layout {
+    private final File classesDir;
+    private final List<File> dependencyFiles;
+
+    Layout(File classesDir, List<File> dependencyFiles) {
+      this.classesDir = classesDir;
+      this.dependencyFiles = dependencyFiles;
+    }
+
+    File getClassesDir() {
+      return classesDir;
+    }
+
+    List<File> getDependencyFiles() {
+      return dependencyFiles;
+    }
+  }
+}
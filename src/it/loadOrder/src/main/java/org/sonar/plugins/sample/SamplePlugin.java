@@ -0,0 +1,18 @@
+package org.sonar.plugins.sample;
+
+import org.apache.commons.mail.SimpleEmail;
+import org.sonar.api.Plugin;
+
+/**
+ * This class is the entry point for all extensions. It is referenced in pom.xml.
+ */
+public class SamplePlugin implements Plugin {
+
+  // loaded from the embedded library when the plugin is instantiated
+  private static final String EMAIL_TYPE = SimpleEmail.class.getName();
+
+  @Override
+  public void define(Context context) {
+
+  }
+}
@@ -22,13 +22,11 @@ package org.sonarsource.pluginpackaging;
 import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import javax.annotation.CheckForNull;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.artifact.Artifact;
-import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.License;
 import org.apache.maven.plugin.AbstractMojo;
@@ -67,7 +65,8 @@ public abstract class AbstractSonarMojo extends AbstractMojo {
   private File classesDirectory;
 
   /**
-  * The directory where the app is built.
+  * The directory where the app is built. When the plugin has dependencies, its files are packaged too, except
+  * {@code META-INF/lib}: dependencies are read from the local repository.
   */
   @Parameter(defaultValue = "${project.build.directory}/${project.build.finalName}", required = true)
   private File appDirectory;
@@ -308,31 +307,24 @@ public abstract class AbstractSonarMojo extends AbstractMojo {
     return getProject().getDependencyArtifacts();
   }
 
-  @SuppressWarnings({"unchecked"})
   protected final Set<Artifact> getIncludedArtifacts() {
-    Set<Artifact> result = new HashSet<>();
-    Set<Artifact> artifacts = getProject().getArtifacts();
-    ScopeArtifactFilter filter = new ScopeArtifactFilter(Artifact.SCOPE_RUNTIME);
-    for (Artifact artifact : artifacts) {
-      if (filter.include(artifact)) {
-        result.add(artifact);
-      }
-    }
-    return result;
+    return getDependencyClassification().getIncluded();
   }
 
   @CheckForNull
   protected final Artifact getNullablePluginApiArtifact() {
-    Set<Artifact> dependencies = getDependencyArtifacts();
-    if (dependencies != null) {
-      for (Artifact dep : dependencies) {
-        if (SONAR_PLUGIN_API_ARTIFACTID.equals(dep.getArtifactId())
-          && SONAR_PLUGIN_API_TYPE.equals(dep.getType())) {
-          return dep;
-        }
-      }
-    }
-    return null;
+    return getDependencyClassification().getPluginApi();
+  }
+
+  /**
+   * The classification is computed once per project and shared by all the goals of the session.
+   */
+  final DependencyClassification getDependencyClassification() {
+    return getDependencyClassificationCache().classify(getProject());
+  }
+
+  final DependencyClassificationCache getDependencyClassificationCache() {
+    return DependencyClassificationCache.forSession(getSession().getRepositorySession());
   }
 
   protected final Artifact getPluginApiArtifact() {
@@ -0,0 +1,93 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Layout of the dependencies that are stored uncompressed in the plugin JAR, with their data aligned on
+ * {@value PluginJarWriter#ALIGNMENT} bytes, so that they can be memory-mapped in place instead of being extracted.
+ * <p>
+ * The manifest attribute {@code Plugin-Dependency-Offsets} gives the location of each file listed by
+ * {@code Plugin-Dependencies}, in the same order, as {@code <offset>:<length>} in bytes from the beginning of the
+ * plugin JAR. Numbers have a fixed width, so that the manifest keeps the same size when the offsets, known only
+ * once the JAR is written, replace the placeholder.
+ */
+final class AlignedDependencies {
+
+  static final String OFFSETS_ATTRIBUTE = "Plugin-Dependency-Offsets";
+  private static final String NUMBER_FORMAT = "%012d";
+  private static final long MAX_NUMBER = 999_999_999_999L;
+
+  private AlignedDependencies() {
+    // only static methods
+  }
+
+  static String placeholder(int dependencies) {
+    List<String> locations = new ArrayList<>();
+    for (int i = 0; i < dependencies; i++) {
+      locations.add(location(0L, 0L));
+    }
+    return StringUtils.join(locations, " ");
+  }
+
+  /**
+   * @param libs entry names of the dependencies, as listed by {@code Plugin-Dependencies}
+   * @param offsets data offsets of the aligned entries, by entry name
+   * @param lengths sizes of the dependencies, by entry name
+   */
+  static String format(List<String> libs, Map<String, Long> offsets, Map<String, Long> lengths) {
+    List<String> locations = new ArrayList<>();
+    for (String lib : libs) {
+      Long offset = offsets.get(lib);
+      if (offset == null) {
+        throw new IllegalStateException("Dependency is not aligned: " + lib);
+      }
+      locations.add(location(offset, lengths.get(lib)));
+    }
+    return StringUtils.join(locations, " ");
+  }
+
+  /**
+   * @return offset and length of each dependency, in the order of {@code Plugin-Dependencies}
+   */
+  static List<long[]> parse(String value) {
+    List<long[]> locations = new ArrayList<>();
+    for (String location : StringUtils.split(value, ' ')) {
+      int colon = location.indexOf(':');
+      if (colon < 0) {
+        throw new IllegalArgumentException("Invalid dependency location: " + location);
+      }
+      locations.add(new long[] {Long.parseLong(location.substring(0, colon)), Long.parseLong(location.substring(colon + 1))});
+    }
+    return locations;
+  }
+
+  private static String location(long offset, long length) {
+    if (offset > MAX_NUMBER || length > MAX_NUMBER) {
+      throw new IllegalStateException("Plugin is too large to align its dependencies");
+    }
+    return String.format(Locale.ROOT, NUMBER_FORMAT, offset) + ":" + String.format(Locale.ROOT, NUMBER_FORMAT, length);
+  }
+}
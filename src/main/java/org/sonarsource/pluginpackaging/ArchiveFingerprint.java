@@ -0,0 +1,107 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Fingerprint of the inputs of a plugin archive. Files of the project are identified by their content, because they
+ * may change without changing their size nor their last modification date, for example when they are rebuilt quickly
+ * or restored with their time. Artifacts of the local repository are identified by their path, size and last
+ * modification date, so that large dependencies are not read on each build: a version is never rewritten in place,
+ * and a new snapshot is downloaded with a new date.
+ */
+class ArchiveFingerprint {
+
+  private final Map<String, String> values = new TreeMap<>();
+
+  ArchiveFingerprint put(String key, @Nullable Object value) {
+    values.put(key, value == null ? "" : value.toString());
+    return this;
+  }
+
+  ArchiveFingerprint putFile(String key, File file) throws IOException {
+    return put(key, file.getAbsolutePath() + "|" + digest(file));
+  }
+
+  ArchiveFingerprint putArtifact(String key, File file) {
+    return put(key, file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified());
+  }
+
+  ArchiveFingerprint putDirectory(String key, File dir, String[] includes, String[] excludes) throws IOException {
+    if (!dir.isDirectory()) {
+      return put(key, null);
+    }
+    DirectoryScanner scanner = new DirectoryScanner();
+    scanner.setBasedir(dir);
+    scanner.setIncludes(includes);
+    scanner.setExcludes(excludes);
+    scanner.addDefaultExcludes();
+    scanner.scan();
+    String[] files = scanner.getIncludedFiles();
+    Arrays.sort(files);
+    for (String path : files) {
+      put(key + "/" + path.replace(File.separatorChar, '/'), digest(new File(dir, path)));
+    }
+    return this;
+  }
+
+  private static String digest(File file) throws IOException {
+    return file.isFile() ? com.google.common.io.Files.asByteSource(file).hash(Hashing.sha256()).toString() : "";
+  }
+
+  String compute() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      hasher.putString(entry.getKey(), StandardCharsets.UTF_8).putByte((byte) 0);
+      hasher.putString(entry.getValue(), StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  @CheckForNull
+  static String read(File fingerprintFile) {
+    if (!fingerprintFile.isFile()) {
+      return null;
+    }
+    try {
+      return new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8).trim();
+    } catch (IOException e) {
+      // an unreadable fingerprint only means that the archive must be rebuilt
+      return null;
+    }
+  }
+
+  static void write(File fingerprintFile, String fingerprint) throws IOException {
+    Files.createDirectories(fingerprintFile.getParentFile().toPath());
+    Files.write(fingerprintFile.toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+  }
+}
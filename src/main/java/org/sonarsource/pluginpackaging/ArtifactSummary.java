@@ -0,0 +1,182 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What the packaging needs to know about the content of a dependency: its classes with their compressed size, as
+ * listed by {@link DuplicateClassScanner#readClasses(File)}, and its packages, as defined by
+ * {@link PackageIndex#packageOf(String)}.
+ * <p>
+ * Summaries are stored by {@link ArtifactSummaryCache} in records designed to be memory-mapped: fixed-width arrays
+ * followed by pools of UTF-8 names. Format, with big-endian integers:
+ * <pre>
+ * int magic, int version, long fileSize
+ * int classCount, classCount * long compressed size
+ * (classCount + 1) * int name offset, int poolSize, poolSize * byte class name pool
+ * int packageCount, (packageCount + 1) * int name offset, int poolSize, poolSize * byte package name pool
+ * </pre>
+ */
+final class ArtifactSummary {
+
+  private static final int MAGIC = 0x53504153;
+  static final int VERSION = 1;
+
+  private final long fileSize;
+  private final Map<String, Long> classes;
+  private final SortedSet<String> packages;
+
+  private ArtifactSummary(long fileSize, Map<String, Long> classes, SortedSet<String> packages) {
+    this.fileSize = fileSize;
+    this.classes = Collections.unmodifiableMap(classes);
+    this.packages = Collections.unmodifiableSortedSet(packages);
+  }
+
+  static ArtifactSummary compute(File jar) throws IOException {
+    Map<String, Long> classes = new TreeMap<>();
+    SortedSet<String> packages = new TreeSet<>();
+    DuplicateClassScanner.readEntries(jar, (name, compressedSize) -> {
+      if (DuplicateClassScanner.isClass(name)) {
+        classes.put(DuplicateClassScanner.toClassName(name), compressedSize);
+      }
+      String packageName = PackageIndex.packageOf(name);
+      if (packageName != null) {
+        packages.add(packageName);
+      }
+    });
+    return new ArtifactSummary(jar.length(), classes, packages);
+  }
+
+  long getFileSize() {
+    return fileSize;
+  }
+
+  /**
+   * @return compressed size of the classes, by class name, sorted by class name
+   */
+  Map<String, Long> getClasses() {
+    return classes;
+  }
+
+  /**
+   * @return packages of the entries, with {@code /} as separator, the default package being the empty string
+   */
+  SortedSet<String> getPackages() {
+    return packages;
+  }
+
+  byte[] toBytes() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(fileSize);
+      output.writeInt(classes.size());
+      for (long size : classes.values()) {
+        output.writeLong(size);
+      }
+      writeNames(output, classes.keySet());
+      output.writeInt(packages.size());
+      writeNames(output, packages);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @throws IOException if the buffer does not contain a valid summary of the current version
+   */
+  static ArtifactSummary read(ByteBuffer buffer) throws IOException {
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("Not an artifact summary of version " + VERSION);
+      }
+      long fileSize = buffer.getLong();
+      int classCount = readCount(buffer);
+      long[] sizes = new long[classCount];
+      for (int i = 0; i < classCount; i++) {
+        sizes[i] = buffer.getLong();
+      }
+      List<String> classNames = readNames(buffer, classCount);
+      Map<String, Long> classes = new TreeMap<>();
+      for (int i = 0; i < classCount; i++) {
+        classes.put(classNames.get(i), sizes[i]);
+      }
+      SortedSet<String> packages = new TreeSet<>(readNames(buffer, readCount(buffer)));
+      if (buffer.hasRemaining()) {
+        throw new IOException("Unexpected data at the end of the artifact summary");
+      }
+      return new ArtifactSummary(fileSize, classes, packages);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("Truncated or corrupted artifact summary", e);
+    }
+  }
+
+  private static void writeNames(DataOutputStream output, Iterable<String> names) throws IOException {
+    ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    for (String name : names) {
+      output.writeInt(pool.size());
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      pool.write(bytes, 0, bytes.length);
+    }
+    output.writeInt(pool.size());
+    output.writeInt(pool.size());
+    pool.writeTo(output);
+  }
+
+  /**
+   * Reads a number of elements or of bytes, which can't be more than the remaining bytes, so that a corrupted record
+   * does not make the reader allocate arrays of any size.
+   */
+  private static int readCount(ByteBuffer buffer) {
+    int count = buffer.getInt();
+    if (count < 0 || count > buffer.remaining()) {
+      throw new IllegalArgumentException("Invalid count: " + count);
+    }
+    return count;
+  }
+
+  private static List<String> readNames(ByteBuffer buffer, int count) {
+    int[] offsets = new int[count + 1];
+    for (int i = 0; i <= count; i++) {
+      offsets[i] = buffer.getInt();
+    }
+    byte[] pool = new byte[readCount(buffer)];
+    buffer.get(pool);
+    List<String> names = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      names.add(new String(pool, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8));
+    }
+    return names;
+  }
+}
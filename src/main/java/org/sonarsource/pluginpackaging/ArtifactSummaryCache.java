@@ -0,0 +1,160 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Persistent cache of {@link ArtifactSummary}, shared by all the modules and all the builds using the same cache
+ * directory, usually in the local repository.
+ * <p>
+ * Records are keyed by the SHA-256 checksum of the JAR file, so they never need to be invalidated, and by the version
+ * of the record format. They are written in a temporary file then atomically moved, so that concurrent Maven
+ * processes never read a partial record: at worst they compute the same summary and one of them wins. The size of
+ * the cache is bounded by a {@link DirectorySizeLimit}: when it is exceeded, the least recently used records are
+ * deleted, the last modification time of a record being updated each time it is read.
+ * <p>
+ * Summaries are also kept by the JVM, by path, size and modification time of the JAR file, so that the builds of a
+ * Maven daemon don't compute checksums again. These values are softly referenced, so that they are released under
+ * memory pressure.
+ */
+class ArtifactSummaryCache {
+
+  private static final String EXTENSION = ".v" + ArtifactSummary.VERSION + ".summary";
+  private static final int MAX_RESIDENT_SUMMARIES = 5_000;
+  private static final Cache<String, ArtifactSummary> RESIDENT_SUMMARIES = CacheBuilder.newBuilder()
+    .maximumSize(MAX_RESIDENT_SUMMARIES)
+    .softValues()
+    .recordStats()
+    .build();
+
+  @Nullable
+  private final Path cacheDir;
+  @Nullable
+  private final DirectorySizeLimit sizeLimit;
+
+  /**
+   * @param maxSize maximum size of the records in bytes, the cache is disabled if zero or negative
+   */
+  ArtifactSummaryCache(@Nullable File cacheDir, long maxSize) {
+    this.cacheDir = (cacheDir == null || maxSize <= 0) ? null : cacheDir.toPath();
+    this.sizeLimit = this.cacheDir == null ? null : new DirectorySizeLimit(this.cacheDir, maxSize, file -> file.getFileName().toString().endsWith(EXTENSION));
+  }
+
+  /**
+   * @return a cache that always computes the summaries
+   */
+  static ArtifactSummaryCache disabled() {
+    return new ArtifactSummaryCache(null, 0L);
+  }
+
+  ArtifactSummary get(File jar) throws IOException {
+    String key = jar.getAbsolutePath() + "|" + jar.length() + "|" + jar.lastModified();
+    try {
+      return RESIDENT_SUMMARIES.get(key, () -> loadPersistent(jar));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * @return hit and miss counts of the summaries kept by the JVM
+   */
+  static CacheStats getResidentStatistics() {
+    return RESIDENT_SUMMARIES.stats();
+  }
+
+  /**
+   * Reads the summary from the cache directory, or computes and stores it.
+   */
+  ArtifactSummary loadPersistent(File jar) throws IOException {
+    if (cacheDir == null) {
+      return ArtifactSummary.compute(jar);
+    }
+    String checksum = DependencyStagingStore.checksum(jar);
+    Path record = cacheDir.resolve(checksum.substring(0, 2)).resolve(checksum + EXTENSION);
+    ArtifactSummary summary = read(record);
+    if (summary == null) {
+      summary = ArtifactSummary.compute(jar);
+      byte[] bytes = summary.toBytes();
+      sizeLimit.reserve(bytes.length);
+      write(record, bytes);
+    }
+    return summary;
+  }
+
+  @CheckForNull
+  private static ArtifactSummary read(Path record) {
+    try (FileChannel channel = FileChannel.open(record, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      ArtifactSummary summary = ArtifactSummary.read(buffer);
+      touch(record);
+      return summary;
+    } catch (IOException e) {
+      // not cached yet, evicted, or corrupted: the record is written again
+      return null;
+    }
+  }
+
+  private static void write(Path record, byte[] bytes) throws IOException {
+    Path dir = record.getParent();
+    Files.createDirectories(dir);
+    Path temp = Files.createTempFile(dir, record.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temp, bytes);
+      Files.move(temp, record, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // the record may be locked by another process, its content is the same anyway
+      if (!Files.exists(record)) {
+        throw e;
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void touch(Path record) {
+    try {
+      Files.setLastModifiedTime(record, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // evicted by another process
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Waits for changes of files and of the content of directory trees, and coalesces bursts of changes, like the classes
+ * written by a compiler, into a single notification.
+ * <p>
+ * Directories created in a watched tree are watched too. Their files may have been written before being watched, so
+ * they are reported as changed when the directory is created.
+ * <p>
+ * The nearest existing parent of each root is watched as well, so that a root which does not exist yet, or which is
+ * deleted and created again by a clean build, is watched as soon as it is created.
+ */
+class ChangeWatcher implements Closeable {
+
+  private final WatchService service;
+  private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+  private final Set<Path> roots = new LinkedHashSet<>();
+  private final Set<Path> trees = new HashSet<>();
+  private final Set<Path> files = new HashSet<>();
+
+  /**
+   * @param trees directories whose content is watched recursively
+   * @param files files watched individually, like dependencies in the local repository
+   */
+  ChangeWatcher(Collection<Path> trees, Collection<Path> files) throws IOException {
+    this.service = FileSystems.getDefault().newWatchService();
+    try {
+      for (Path tree : trees) {
+        Path root = tree.toAbsolutePath().normalize();
+        roots.add(root);
+        registerRoot(root, new LinkedHashSet<>());
+      }
+      for (Path file : files) {
+        Path absolute = file.toAbsolutePath().normalize();
+        this.files.add(absolute);
+        register(absolute.getParent());
+      }
+    } catch (IOException e) {
+      service.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for a change, then until nothing changes during the quiet period.
+   *
+   * @return the changed files and directories. A directory may be returned instead of its files, when too many events
+   * have been lost.
+   */
+  Set<Path> awaitChanges(long quietPeriodMillis) throws InterruptedException, IOException {
+    Set<Path> changes = new LinkedHashSet<>();
+    while (changes.isEmpty()) {
+      collect(service.take(), changes);
+    }
+    WatchKey key;
+    while ((key = service.poll(quietPeriodMillis, TimeUnit.MILLISECONDS)) != null) {
+      collect(key, changes);
+    }
+    return changes;
+  }
+
+  private void collect(WatchKey key, Set<Path> changes) throws IOException {
+    Path dir = watchedDirs.get(key);
+    if (dir == null) {
+      key.cancel();
+      return;
+    }
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        changes.add(dir);
+        continue;
+      }
+      Path path = dir.resolve((Path) event.context());
+      if (trees.contains(dir)) {
+        changes.add(path);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+          registerTree(path, changes);
+        }
+      } else if (files.contains(path)) {
+        changes.add(path);
+      }
+      collectRoots(path, event.kind(), changes);
+    }
+    if (!key.reset()) {
+      watchedDirs.remove(key);
+      // the directory may already be watched again, with another key, when it has been created again
+      if (!watchedDirs.containsValue(dir)) {
+        trees.remove(dir);
+      }
+    }
+  }
+
+  private void collectRoots(Path path, WatchEvent.Kind<?> kind, Set<Path> changes) throws IOException {
+    for (Path root : roots) {
+      if (!root.startsWith(path)) {
+        continue;
+      }
+      if (root.equals(path)) {
+        changes.add(root);
+      }
+      if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+        registerRoot(root, changes);
+      }
+    }
+  }
+
+  private void registerRoot(Path root, Set<Path> existingFiles) throws IOException {
+    Path parent = root.getParent();
+    while (parent != null && !Files.isDirectory(parent)) {
+      parent = parent.getParent();
+    }
+    if (parent != null) {
+      register(parent);
+    }
+    // registered after its parent, so that a root created in between is not missed
+    registerTree(root, existingFiles);
+  }
+
+  private void registerTree(Path root, Set<Path> existingFiles) throws IOException {
+    if (!Files.isDirectory(root)) {
+      return;
+    }
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(root)) {
+      paths = walk.collect(Collectors.toList());
+    }
+    for (Path path : paths) {
+      if (Files.isDirectory(path)) {
+        register(path);
+        trees.add(path);
+      } else {
+        existingFiles.add(path);
+      }
+    }
+  }
+
+  private void register(Path dir) throws IOException {
+    WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    watchedDirs.put(key, dir);
+  }
+
+  @Override
+  public void close() throws IOException {
+    service.close();
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Chooses whether to store or deflate each entry of a JAR file, and at which level.
+ * <p>
+ * Rules given by the build apply first. A rule is a fileset pattern followed by {@code =store}, or by {@code =} and a
+ * deflate level from 1 to 9. The first rule matching the name of an entry applies. When adaptive compression is
+ * enabled, the other entries that are big enough are sampled: slices spread over their content are deflated, and the
+ * entry is stored when the sample is not reduced enough. Entries whose type is a compressed format, like nested JAR
+ * files, images or archives, need to be reduced more than the others to be deflated, so that for example JAR files of
+ * stored entries are still deflated.
+ * <p>
+ * A decision to store an entry comes with estimates, extrapolated from the sample: the CPU time saved by not deflating
+ * the entry, and the number of bytes it costs. When the sample is the whole entry, a decision to deflate it comes with
+ * the deflated content, so that the entry is not deflated twice.
+ */
+class CompressionPolicy {
+
+  static final String STORE = "store";
+  static final int MIN_SAMPLED_SIZE = 4 * 1024;
+  private static final int SLICES = 16;
+  private static final int SLICE_SIZE = 4 * 1024;
+  /**
+   * Minimum reduction of the sample for an entry to be deflated.
+   */
+  private static final double MIN_REDUCTION = 0.03;
+  private static final double MIN_REDUCTION_OF_COMPRESSED_TYPES = 0.20;
+  private static final Set<String> COMPRESSED_TYPES = ImmutableSet.of(
+    "jar", "war", "zip", "gz", "tgz", "bz2", "xz", "zst", "br", "7z", "lz4",
+    "png", "jpg", "jpeg", "gif", "webp", "woff", "woff2", "mp3", "mp4");
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final List<Rule> rules;
+  private final boolean adaptive;
+
+  private CompressionPolicy(List<Rule> rules, boolean adaptive) {
+    this.rules = rules;
+    this.adaptive = adaptive;
+  }
+
+  /**
+   * @throws IllegalArgumentException if a rule is not valid
+   */
+  static CompressionPolicy of(List<String> rules, boolean adaptive) {
+    List<Rule> parsed = new ArrayList<>();
+    for (String rule : rules) {
+      String pattern = StringUtils.trimToEmpty(StringUtils.substringBeforeLast(rule, "="));
+      String value = StringUtils.trimToEmpty(StringUtils.substringAfterLast(rule, "="));
+      if (!rule.contains("=") || pattern.isEmpty()) {
+        throw new IllegalArgumentException("Invalid compression rule, expected <pattern>=store or <pattern>=<level>: " + rule);
+      }
+      parsed.add(new Rule(pattern, parseLevel(rule, value)));
+    }
+    return new CompressionPolicy(parsed, adaptive);
+  }
+
+  private static int parseLevel(String rule, String value) {
+    if (STORE.equalsIgnoreCase(value)) {
+      return Deflater.NO_COMPRESSION;
+    }
+    int level;
+    try {
+      level = Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      level = -1;
+    }
+    if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid level of compression rule, expected store or a level from 1 to 9: " + rule);
+    }
+    return level;
+  }
+
+  /**
+   * @param level deflate level of the entries that are neither matched by a rule nor stored by adaptive compression
+   */
+  Decision decide(String name, byte[] content, int level) {
+    return decide(name, content.length, level, () -> sample(content));
+  }
+
+  /**
+   * Same as {@link #decide(String, byte[], int)} for an entry backed by a file, of which only the sample is read.
+   */
+  Decision decide(String name, File file, int level) throws IOException {
+    try {
+      return decide(name, file.length(), level, () -> {
+        try {
+          return sample(file);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private Decision decide(String name, long length, int level, Supplier<byte[]> sampler) {
+    for (Rule rule : rules) {
+      if (SelectorUtils.matchPath(rule.pattern, name)) {
+        return new Decision(rule.level, false);
+      }
+    }
+    if (!adaptive || length < MIN_SAMPLED_SIZE) {
+      return new Decision(level, false);
+    }
+    byte[] sample = sampler.get();
+    long start = cpuTime();
+    byte[] deflatedSample = PluginJarWriter.deflate(sample, level);
+    long samplingNanos = cpuTime() - start;
+    double ratio = (double) deflatedSample.length / sample.length;
+    double minReduction = isCompressedType(name) ? MIN_REDUCTION_OF_COMPRESSED_TYPES : MIN_REDUCTION;
+    if (1 - ratio >= minReduction) {
+      Decision deflated = new Decision(level, false);
+      deflated.samplingNanos = samplingNanos;
+      deflated.deflatedContent = sample.length == length ? deflatedSample : null;
+      return deflated;
+    }
+    Decision stored = new Decision(Deflater.NO_COMPRESSION, true);
+    stored.samplingNanos = samplingNanos;
+    stored.estimatedSavedNanos = samplingNanos * length / sample.length;
+    stored.estimatedExtraBytes = Math.max(0L, Math.round(length * (1 - ratio)));
+    return stored;
+  }
+
+  static boolean isCompressedType(String name) {
+    String fileName = StringUtils.substringAfterLast("/" + name, "/");
+    return COMPRESSED_TYPES.contains(StringUtils.substringAfterLast(fileName, ".").toLowerCase(Locale.ENGLISH));
+  }
+
+  /**
+   * Slices at the beginning, at the end and evenly spread between them, so that an archive whose first entries are
+   * stored and whose other entries are deflated is not taken for incompressible, and conversely.
+   */
+  static byte[] sample(byte[] content) {
+    if (content.length <= SLICES * SLICE_SIZE) {
+      return content;
+    }
+    byte[] sample = new byte[SLICES * SLICE_SIZE];
+    for (int i = 0; i < SLICES; i++) {
+      int offset = (int) ((long) i * (content.length - SLICE_SIZE) / (SLICES - 1));
+      System.arraycopy(content, offset, sample, i * SLICE_SIZE, SLICE_SIZE);
+    }
+    return sample;
+  }
+
+  /**
+   * Same slices as {@link #sample(byte[])}, read from the file without reading the rest of its content.
+   */
+  static byte[] sample(File file) throws IOException {
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      long length = input.length();
+      if (length <= SLICES * SLICE_SIZE) {
+        byte[] content = new byte[(int) length];
+        input.readFully(content);
+        return content;
+      }
+      byte[] sample = new byte[SLICES * SLICE_SIZE];
+      for (int i = 0; i < SLICES; i++) {
+        input.seek(i * (length - SLICE_SIZE) / (SLICES - 1));
+        input.readFully(sample, i * SLICE_SIZE, SLICE_SIZE);
+      }
+      return sample;
+    }
+  }
+
+  private static long cpuTime() {
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+  }
+
+  private static class Rule {
+    private final String pattern;
+    private final int level;
+
+    private Rule(String pattern, int level) {
+      this.pattern = pattern;
+      this.level = level;
+    }
+  }
+
+  /**
+   * How to compress an entry. The level is {@link Deflater#NO_COMPRESSION} when the entry is stored. The estimates are
+   * zero unless the entry is stored because of its sample.
+   */
+  static class Decision {
+    private final int level;
+    private final boolean adaptivelyStored;
+    private long samplingNanos;
+    private long estimatedSavedNanos;
+    private long estimatedExtraBytes;
+    @Nullable
+    private byte[] deflatedContent;
+
+    private Decision(int level, boolean adaptivelyStored) {
+      this.level = level;
+      this.adaptivelyStored = adaptivelyStored;
+    }
+
+    int getLevel() {
+      return level;
+    }
+
+    boolean isAdaptivelyStored() {
+      return adaptivelyStored;
+    }
+
+    /**
+     * @return the content deflated at the level of the decision, when the whole entry has been sampled
+     */
+    @CheckForNull
+    byte[] getDeflatedContent() {
+      return deflatedContent;
+    }
+
+    long getSamplingNanos() {
+      return samplingNanos;
+    }
+
+    /**
+     * @return CPU time that deflating the entry would have taken, extrapolated from the time to deflate its sample
+     */
+    long getEstimatedSavedNanos() {
+      return estimatedSavedNanos;
+    }
+
+    /**
+     * @return number of bytes that deflating the entry would have saved, extrapolated from the ratio of its sample
+     */
+    long getEstimatedExtraBytes() {
+      return estimatedExtraBytes;
+    }
+  }
+}
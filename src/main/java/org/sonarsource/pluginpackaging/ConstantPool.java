@@ -0,0 +1,107 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal parser of the constant pool of class files. All the names of classes used by a class, including the ones of
+ * descriptors, signatures, annotations and string constants, are in the UTF-8 entries of its constant pool.
+ */
+final class ConstantPool {
+
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int UTF8 = 1;
+  private static final int INTEGER = 3;
+  private static final int FLOAT = 4;
+  private static final int LONG = 5;
+  private static final int DOUBLE = 6;
+  private static final int CLASS = 7;
+  private static final int STRING = 8;
+  private static final int FIELD_REF = 9;
+  private static final int METHOD_REF = 10;
+  private static final int INTERFACE_METHOD_REF = 11;
+  private static final int NAME_AND_TYPE = 12;
+  private static final int METHOD_HANDLE = 15;
+  private static final int METHOD_TYPE = 16;
+  private static final int DYNAMIC = 17;
+  private static final int INVOKE_DYNAMIC = 18;
+  private static final int MODULE = 19;
+  private static final int PACKAGE = 20;
+
+  private ConstantPool() {
+    // only static methods
+  }
+
+  /**
+   * @return UTF-8 entries of the constant pool of a class file
+   */
+  static List<String> readStrings(byte[] classFile) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(classFile));
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a class file");
+    }
+    // minor and major versions
+    input.skipBytes(4);
+    int count = input.readUnsignedShort();
+    List<String> strings = new ArrayList<>();
+    for (int index = 1; index < count; index++) {
+      int tag = input.readUnsignedByte();
+      switch (tag) {
+        case UTF8:
+          strings.add(input.readUTF());
+          break;
+        case CLASS:
+        case STRING:
+        case METHOD_TYPE:
+        case MODULE:
+        case PACKAGE:
+          input.skipBytes(2);
+          break;
+        case METHOD_HANDLE:
+          input.skipBytes(3);
+          break;
+        case INTEGER:
+        case FLOAT:
+        case FIELD_REF:
+        case METHOD_REF:
+        case INTERFACE_METHOD_REF:
+        case NAME_AND_TYPE:
+        case DYNAMIC:
+        case INVOKE_DYNAMIC:
+          input.skipBytes(4);
+          break;
+        case LONG:
+        case DOUBLE:
+          input.skipBytes(8);
+          // 8-byte constants take two entries
+          index++;
+          break;
+        default:
+          throw new IOException("Unknown constant pool tag " + tag + " at index " + index);
+      }
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Rebuilds a plugin JAR file from the previous version and a delta written by {@link PluginDelta}. It is the main class
+ * of the executable delta archive, so it only depends on the JDK:
+ * <pre>java -jar plugin-2.0-delta.jar plugin-1.0.jar plugin-2.0.jar</pre>
+ * The previous and the rebuilt files are checked against the SHA-256 recorded in the delta. When the delta recompresses
+ * libraries, the {@link Deflater} of this JVM is checked against the one that computed the delta before rebuilding.
+ */
+public final class DeltaApplier {
+
+  static final String DELTA_ENTRY = "delta.bin";
+  static final int MAGIC = 0x53515044;
+  static final int VERSION = 2;
+
+  static final int END = 0;
+  static final int DATA = 1;
+  static final int COPY = 2;
+  static final int NESTED = 3;
+
+  static final int STORED = 0;
+  static final int DEFLATED = 8;
+
+  private DeltaApplier() {
+    // only static methods
+  }
+
+  public static void main(String[] args) {
+    if (args.length != 2) {
+      System.err.println("Usage: java -jar <delta.jar> <previous plugin JAR file> <new plugin JAR file>");
+      System.exit(2);
+    }
+    Path target = Paths.get(args[1]).toAbsolutePath();
+    try (InputStream delta = DeltaApplier.class.getResourceAsStream("/" + DELTA_ENTRY)) {
+      if (delta == null) {
+        throw new IOException("Delta not found: " + DELTA_ENTRY);
+      }
+      byte[] previous = Files.readAllBytes(Paths.get(args[0]));
+      Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+      try {
+        try (OutputStream output = Files.newOutputStream(temp)) {
+          apply(previous, delta, output);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      System.err.println("Fail to rebuild " + target + ": " + e.getMessage());
+      System.exit(1);
+    }
+    System.out.println("Rebuilt " + target);
+  }
+
+  /**
+   * @throws IOException if the previous file is not the one the delta was computed from, or if the result does not
+   * match the new file
+   */
+  static void apply(byte[] previous, InputStream delta, OutputStream output) throws IOException {
+    DataInputStream input = new DataInputStream(delta);
+    if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+      throw new IOException("Not a plugin delta, or written by another version");
+    }
+    byte[] previousHash = readHash(input);
+    byte[] expectedHash = readHash(input);
+    if (!Arrays.equals(previousHash, sha256().digest(previous))) {
+      throw new IOException("The delta does not apply to this version of the plugin");
+    }
+    if (input.readBoolean()) {
+      byte[] signature = readHash(input);
+      String runtime = input.readUTF();
+      if (!Arrays.equals(signature, deflaterSignature())) {
+        throw new IOException("The delta recompresses libraries with the Deflater of " + runtime + ", which compresses differently than the one of "
+          + runtimeName() + ". Apply it with the same JVM, or compute it with sonar.packaging.recompressLibraries=false");
+      }
+    }
+    DigestOutputStream digestOutput = new DigestOutputStream(output, sha256());
+    applyOperations(previous, input, digestOutput);
+    digestOutput.flush();
+    if (!Arrays.equals(expectedHash, digestOutput.getMessageDigest().digest())) {
+      throw new IOException("The rebuilt file does not match the new version of the plugin");
+    }
+  }
+
+  private static void applyOperations(byte[] base, DataInputStream input, OutputStream output) throws IOException {
+    for (int operation = input.readUnsignedByte(); operation != END; operation = input.readUnsignedByte()) {
+      switch (operation) {
+        case DATA:
+          byte[] data = new byte[input.readInt()];
+          input.readFully(data);
+          output.write(data);
+          break;
+        case COPY:
+          int offset = input.readInt();
+          int length = input.readInt();
+          checkRange(base, offset, length);
+          output.write(base, offset, length);
+          break;
+        case NESTED:
+          output.write(applyNested(base, input));
+          break;
+        default:
+          throw new IOException("Invalid delta operation: " + operation);
+      }
+    }
+  }
+
+  /**
+   * A JAR file nested in the plugin, rebuilt from its previous version then compressed again if needed.
+   */
+  private static byte[] applyNested(byte[] base, DataInputStream input) throws IOException {
+    int offset = input.readInt();
+    int length = input.readInt();
+    int previousMethod = input.readUnsignedByte();
+    int method = input.readUnsignedByte();
+    int level = input.readByte();
+    int size = input.readInt();
+    checkRange(base, offset, length);
+    byte[] previousContent = previousMethod == DEFLATED ? inflate(base, offset, length) : Arrays.copyOfRange(base, offset, offset + length);
+    ByteArrayOutputStream content = new ByteArrayOutputStream(size);
+    applyOperations(previousContent, input, content);
+    return method == DEFLATED ? deflate(content.toByteArray(), level) : content.toByteArray();
+  }
+
+  static byte[] inflate(byte[] data, int offset, int length) throws IOException {
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(data, offset, length);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(length * 4);
+      byte[] buffer = new byte[64 * 1024];
+      while (!inflater.finished()) {
+        int inflated = inflater.inflate(buffer);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated compressed data");
+        }
+        output.write(buffer, 0, inflated);
+      }
+      return output.toByteArray();
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid compressed data", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  static byte[] deflate(byte[] data, int level) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 64);
+      byte[] buffer = new byte[64 * 1024];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Identifies the implementation of {@link Deflater}, by the compressed bytes of a sample at each level.
+   */
+  static byte[] deflaterSignature() {
+    String[] words = {"org/sonar/", "java/lang/Object", "String", "<init>", "()V", "Code", "LineNumberTable", "this", ";", "L", "\n"};
+    ByteArrayOutputStream sample = new ByteArrayOutputStream();
+    int seed = 1;
+    while (sample.size() < 64 * 1024) {
+      seed = seed * 1_103_515_245 + 12_345;
+      byte[] word = words[(seed >>> 16) % words.length].getBytes(StandardCharsets.US_ASCII);
+      sample.write(word, 0, word.length);
+      sample.write(seed >>> 24);
+    }
+    MessageDigest digest = sha256();
+    for (int level = Deflater.BEST_SPEED; level <= Deflater.BEST_COMPRESSION; level++) {
+      digest.update(deflate(sample.toByteArray(), level));
+    }
+    return digest.digest();
+  }
+
+  static String runtimeName() {
+    return System.getProperty("java.vm.vendor") + " " + System.getProperty("java.runtime.version") + " on " + System.getProperty("os.name") + " "
+      + System.getProperty("os.arch");
+  }
+
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] readHash(DataInputStream input) throws IOException {
+    byte[] hash = new byte[32];
+    input.readFully(hash);
+    return hash;
+  }
+
+  private static void checkRange(byte[] base, int offset, int length) throws IOException {
+    if (offset < 0 || length < 0 || offset > base.length - length) {
+      throw new IOException("Invalid range of the previous file: " + offset + "+" + length);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+
+import static java.lang.String.format;
+
+/**
+ * Compute the delta between a previous version of the plugin and the packaged one, to distribute upgrades without
+ * shipping the whole JAR file. The delta is written as an executable JAR file next to the plugin, which rebuilds the
+ * new version byte for byte from the previous one with only a JRE:
+ * <pre>java -jar &lt;plugin&gt;-delta.jar &lt;previous plugin JAR file&gt; &lt;new plugin JAR file&gt;</pre>
+ */
+@Mojo(name = "delta", threadSafe = true)
+public class DeltaMojo extends AbstractSonarMojo {
+
+  /**
+   * Version of the plugin to compute the delta from. It is read from the local repository.
+   */
+  @Parameter(property = "sonar.packaging.previousVersion")
+  private String previousVersion;
+
+  /**
+   * JAR file of the plugin to compute the delta from. Takes precedence over {@code previousVersion}.
+   */
+  @Parameter(property = "sonar.packaging.previousPluginFile")
+  private File previousPluginFile;
+
+  /**
+   * Whether compressed libraries are diffed entry by entry then compressed again when rebuilding the plugin. This gives
+   * far smaller deltas, but they can only be applied by a JVM whose {@link java.util.zip.Deflater} gives the same
+   * bytes, like the same build of the JDK: applying them with another one, for example built with zlib-ng, fails before
+   * writing anything. Disable to compute deltas that any JVM applies, where changed compressed libraries are copied
+   * whole.
+   */
+  @Parameter(property = "sonar.packaging.recompressLibraries", defaultValue = "true")
+  private boolean recompressLibraries;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    File jarFile = SonarPluginMojo.getJarFile(getOutputDirectory(), getFinalName(), getClassifier());
+    if (!jarFile.isFile()) {
+      throw new MojoFailureException(format("Plugin not found: %s. Package it first.", jarFile));
+    }
+    File previousFile = getPreviousPluginFile();
+    File deltaFile = new File(jarFile.getParentFile(), StringUtils.removeEnd(jarFile.getName(), ".jar") + "-delta.jar");
+    PluginDelta delta;
+    try {
+      delta = PluginDelta.compute(Files.readAllBytes(previousFile.toPath()), Files.readAllBytes(jarFile.toPath()), recompressLibraries);
+      delta.writeArchive(deltaFile);
+    } catch (IOException e) {
+      throw new MojoExecutionException(format("Fail to compute the delta between %s and %s", previousFile, jarFile), e);
+    }
+    getLog().info(format("Delta from %s: %d KB instead of %d KB, %d entries unchanged, %d changed, %d libraries diffed. See %s",
+      previousFile.getName(), deltaFile.length() / 1024, jarFile.length() / 1024, delta.getUnchangedEntries(), delta.getChangedEntries(),
+      delta.getDiffedLibraries(), deltaFile));
+    getLog().info(format("Rebuild the plugin with: java -jar %s %s %s", deltaFile.getName(), previousFile.getName(), jarFile.getName()));
+  }
+
+  private File getPreviousPluginFile() throws MojoFailureException {
+    if (previousPluginFile != null) {
+      if (!previousPluginFile.isFile()) {
+        throw new MojoFailureException("Previous plugin not found: " + previousPluginFile);
+      }
+      return previousPluginFile;
+    }
+    if (StringUtils.isBlank(previousVersion)) {
+      throw new MojoFailureException("The previous version of the plugin must be set with sonar.packaging.previousVersion or sonar.packaging.previousPluginFile");
+    }
+    DefaultArtifact artifact = new DefaultArtifact(getProject().getGroupId(), getProject().getArtifactId(), StringUtils.defaultString(getClassifier()),
+      "jar", previousVersion);
+    RepositorySystemSession session = getSession().getRepositorySession();
+    LocalArtifactResult result = session.getLocalRepositoryManager().find(session, new LocalArtifactRequest(artifact, Collections.emptyList(), null));
+    if (result.getFile() == null || !result.getFile().isFile()) {
+      throw new MojoFailureException(format("Plugin %s not found in the local repository", artifact));
+    }
+    return result.getFile();
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.collection.DependencyCollectionException;
+
+/**
+ * Classification of the dependencies of a plugin project. The artifacts provided by the legacy SonarQube API are
+ * resolved on demand, only by the goals that package dependencies, then kept for the next calls.
+ */
+final class DependencyClassification {
+
+  private final Set<Artifact> included;
+  @CheckForNull
+  private final Artifact pluginApi;
+  private final Set<Artifact> sonarPlugins;
+  private final Set<Artifact> candidates;
+  private Set<Artifact> providedByApi;
+
+  private DependencyClassification(Set<Artifact> included, @CheckForNull Artifact pluginApi, Set<Artifact> sonarPlugins, Set<Artifact> candidates) {
+    this.included = Collections.unmodifiableSet(included);
+    this.pluginApi = pluginApi;
+    this.sonarPlugins = Collections.unmodifiableSet(sonarPlugins);
+    this.candidates = Collections.unmodifiableSet(candidates);
+  }
+
+  @SuppressWarnings({"unchecked"})
+  static DependencyClassification classify(MavenProject project) {
+    Set<Artifact> included = new HashSet<>();
+    Set<Artifact> sonarPlugins = new HashSet<>();
+    Set<Artifact> candidates = new HashSet<>();
+    ScopeArtifactFilter filter = new ScopeArtifactFilter(Artifact.SCOPE_RUNTIME);
+    for (Artifact artifact : (Set<Artifact>) project.getArtifacts()) {
+      // provided and test dependencies are never packaged
+      if (!filter.include(artifact)) {
+        continue;
+      }
+      included.add(artifact);
+      if ("sonar-plugin".equals(artifact.getType())) {
+        sonarPlugins.add(artifact);
+      } else {
+        candidates.add(artifact);
+      }
+    }
+    return new DependencyClassification(included, findPluginApi(project), sonarPlugins, candidates);
+  }
+
+  @CheckForNull
+  @SuppressWarnings({"unchecked"})
+  static Artifact findPluginApi(MavenProject project) {
+    Set<Artifact> dependencies = project.getDependencyArtifacts();
+    if (dependencies != null) {
+      for (Artifact dep : dependencies) {
+        if (AbstractSonarMojo.SONAR_PLUGIN_API_ARTIFACTID.equals(dep.getArtifactId())
+          && AbstractSonarMojo.SONAR_PLUGIN_API_TYPE.equals(dep.getType())) {
+          return dep;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Dependencies of scope compile and runtime
+   */
+  Set<Artifact> getIncluded() {
+    return included;
+  }
+
+  @CheckForNull
+  Artifact getPluginApi() {
+    return pluginApi;
+  }
+
+  Set<Artifact> getSonarPlugins() {
+    return sonarPlugins;
+  }
+
+  /**
+   * Dependencies to be packaged, unless they are provided by the legacy SonarQube API
+   */
+  Set<Artifact> getCandidates() {
+    return candidates;
+  }
+
+  synchronized Set<Artifact> getProvidedByApi(ProvidedArtifactsLoader loader) throws DependencyCollectionException {
+    if (providedByApi == null) {
+      Set<Artifact> result = new HashSet<>();
+      if (!candidates.isEmpty()) {
+        Set<String> keys = loader.load();
+        for (Artifact candidate : candidates) {
+          if (keys.contains(ProvidedArtifactResolver.key(candidate))) {
+            result.add(candidate);
+          }
+        }
+      }
+      providedByApi = Collections.unmodifiableSet(result);
+    }
+    return providedByApi;
+  }
+
+  Set<Artifact> getPackaged(ProvidedArtifactsLoader loader) throws DependencyCollectionException {
+    Set<Artifact> result = new HashSet<>(candidates);
+    result.removeAll(getProvidedByApi(loader));
+    return result;
+  }
+
+  @FunctionalInterface
+  interface ProvidedArtifactsLoader {
+    Set<String> load() throws DependencyCollectionException;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+import org.eclipse.aether.collection.DependencyCollectionException;
+
+/**
+ * Cache of dependency classifications, shared by all the goals and all the modules of a Maven session.
+ * <p>
+ * The cache is stored in the data of the repository session, so that it lives as long as the Maven session. It can be
+ * used concurrently by parallel builds and its size is bounded.
+ * <p>
+ * The artifacts provided by the legacy SonarQube API are also kept by the JVM, because resolving them requires to
+ * collect a dependency tree. When the plugin realm outlives the session, like with the Maven daemon, the next builds
+ * reuse them as long as the API artifacts, their POM files, the runtime dependencies of the project, their exclusions
+ * and the dependency management are the same. These values are softly referenced, so that they are released under memory pressure.
+ */
+final class DependencyClassificationCache {
+
+  private static final Object KEY = DependencyClassificationCache.class;
+  private static final int MAX_PROJECTS = 500;
+  private static final int MAX_PROVIDED_SETS = 50;
+
+  private static final Cache<String, Set<String>> RESIDENT_PROVIDED_ARTIFACTS = CacheBuilder.newBuilder()
+    .maximumSize(MAX_PROVIDED_SETS)
+    .softValues()
+    .recordStats()
+    .build();
+
+  private final Cache<String, DependencyClassification> classifications = CacheBuilder.newBuilder().maximumSize(MAX_PROJECTS).recordStats().build();
+  private final Cache<String, Set<String>> providedArtifacts = CacheBuilder.newBuilder().maximumSize(MAX_PROVIDED_SETS).recordStats().build();
+
+  static DependencyClassificationCache forSession(RepositorySystemSession session) {
+    SessionData data = session.getData();
+    DependencyClassificationCache cache = (DependencyClassificationCache) data.get(KEY);
+    if (cache == null) {
+      // another thread may win, so always return the instance that has been stored
+      data.set(KEY, null, new DependencyClassificationCache());
+      cache = (DependencyClassificationCache) data.get(KEY);
+    }
+    return cache;
+  }
+
+  DependencyClassification classify(MavenProject project) {
+    Artifact pluginApi = DependencyClassification.findPluginApi(project);
+    String key = project.getId() + "|" + (pluginApi == null ? "" : pluginApi.getId());
+    try {
+      return classifications.get(key, () -> DependencyClassification.classify(project));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new IllegalStateException("Fail to classify dependencies of " + project.getId(), e.getCause());
+    }
+  }
+
+  /**
+   * Artifacts provided by the legacy SonarQube API are shared by the modules depending on the same version of the API,
+   * with the same runtime dependencies, dependency management and exclusions.
+   */
+  Set<String> getProvidedArtifacts(MavenProject project, ProvidedArtifactResolver resolver, RepositorySystemSession session)
+    throws DependencyCollectionException {
+    if (!ProvidedArtifactResolver.dependsOnLegacyApi(project.getArtifacts())) {
+      return Collections.emptySet();
+    }
+    try {
+      String key = providedArtifactsKey(project);
+      return providedArtifacts.get(key, () -> getResidentProvidedArtifacts(key + "|" + legacyApiFingerprint(project), project, resolver, session));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DependencyCollectionException) {
+        throw (DependencyCollectionException) e.getCause();
+      }
+      throw new IllegalStateException("Fail to resolve artifacts provided by SonarQube", e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw new IllegalStateException("Fail to resolve artifacts provided by SonarQube", e.getCause());
+    }
+  }
+
+  private static Set<String> getResidentProvidedArtifacts(String key, MavenProject project, ProvidedArtifactResolver resolver,
+    RepositorySystemSession session) throws Exception {
+    try {
+      return RESIDENT_PROVIDED_ARTIFACTS.get(key, () -> Collections.unmodifiableSet(resolver.resolve(project, session)));
+    } catch (ExecutionException e) {
+      throw (Exception) e.getCause();
+    }
+  }
+
+  @SuppressWarnings({"unchecked"})
+  static String providedArtifactsKey(MavenProject project) {
+    Set<String> key = new TreeSet<>();
+    for (Artifact artifact : (Set<Artifact>) project.getArtifacts()) {
+      if (ProvidedArtifactResolver.LEGACY_SONAR_GROUP_ID.equals(artifact.getGroupId())) {
+        key.add("api:" + artifact.getId());
+      }
+    }
+    for (Dependency dependency : project.getDependencies()) {
+      // the runtime dependencies are the roots of the collected tree, conflict resolution depends on them
+      if (ProvidedArtifactResolver.isRuntimeScope(dependency.getScope())) {
+        key.add("dependency:" + dependency.getManagementKey() + ":" + dependency.getVersion() + ":"
+          + StringUtils.defaultIfEmpty(dependency.getScope(), Artifact.SCOPE_COMPILE) + ":" + dependency.isOptional());
+      }
+      for (Exclusion exclusion : dependency.getExclusions()) {
+        key.add("exclusion:" + dependency.getManagementKey() + "/" + exclusion.getGroupId() + ":" + exclusion.getArtifactId());
+      }
+    }
+    if (project.getDependencyManagement() != null) {
+      for (Dependency dependency : project.getDependencyManagement().getDependencies()) {
+        key.add("managed:" + dependency.getManagementKey() + ":" + dependency.getVersion() + ":" + dependency.getScope());
+      }
+    }
+    return String.join("|", key);
+  }
+
+  /**
+   * Identifies the content of the legacy API artifacts and of their POM files, that may change for snapshots.
+   */
+  @SuppressWarnings({"unchecked"})
+  static String legacyApiFingerprint(MavenProject project) {
+    Set<String> fingerprint = new TreeSet<>();
+    for (Artifact artifact : (Set<Artifact>) project.getArtifacts()) {
+      File file = artifact.getFile();
+      if (ProvidedArtifactResolver.LEGACY_SONAR_GROUP_ID.equals(artifact.getGroupId()) && file != null) {
+        File pom = new File(file.getParentFile(), artifact.getArtifactId() + "-" + artifact.getVersion() + ".pom");
+        fingerprint.add(artifact.getId() + ":" + file.length() + ":" + file.lastModified() + ":" + pom.length() + ":" + pom.lastModified());
+      }
+    }
+    return String.join("|", fingerprint);
+  }
+
+  /**
+   * @return hit and miss counts of the caches of this session and of the JVM, by cache name
+   */
+  Map<String, CacheStats> getStatistics() {
+    Map<String, CacheStats> statistics = new LinkedHashMap<>();
+    statistics.put("classifications", classifications.stats());
+    statistics.put("providedArtifacts", providedArtifacts.stats());
+    statistics.put("residentProvidedArtifacts", RESIDENT_PROVIDED_ARTIFACTS.stats());
+    return statistics;
+  }
+}
@@ -0,0 +1,352 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.io.ByteStreams;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Removes from the dependencies of a plugin the classes that can't be reached from its entry point.
+ * <p>
+ * Reachability is computed on the classes of the plugin and of its dependencies, from the roots: the entry point and
+ * all the other classes of the plugin, the implementations declared in {@code META-INF/services} and the classes matching the keep rules. A class reaches
+ * all the classes whose name appears in the UTF-8 entries of its constant pool, in internal form ({@code org/foo/Bar}),
+ * in descriptors and signatures ({@code Lorg/foo/Bar;}) or in binary form ({@code org.foo.Bar}), so that classes
+ * loaded by name from string constants are kept too. Reflection on computed names can't be detected, such classes
+ * must be kept by rules.
+ * <p>
+ * Keep rules are class names, or patterns {@code org.foo.*} for the classes of a package and {@code org.foo.**} for
+ * the classes of a package and its sub-packages. Resources, {@code module-info} and {@code package-info} classes are
+ * always kept, as well as the classes of the plugin itself. Dependencies without unreachable classes are not rewritten.
+ * <p>
+ * Minimized dependencies are written at the path of their entry in the plugin JAR, and are not written again while the
+ * dependency and its removed classes don't change, so that their time stays the same from one build to the next.
+ */
+class DependencyMinimizer {
+
+  private static final String CLASS_SUFFIX = ".class";
+  private static final String SERVICES_DIR = "META-INF/services/";
+  private static final String VERSIONS_DIR = "META-INF/versions/";
+
+  private final File outputDir;
+  private final List<String> keepRules;
+
+  /**
+   * @param outputDir directory of the minimized dependencies
+   */
+  DependencyMinimizer(File outputDir, List<String> keepRules) {
+    this.outputDir = outputDir;
+    this.keepRules = keepRules;
+  }
+
+  /**
+   * @param entryPoint binary name of the plugin class
+   * @param classesDir compiled classes of the plugin
+   * @param libs dependency files by entry name in the plugin JAR
+   */
+  Result minimize(String entryPoint, File classesDir, Map<String, File> libs) throws IOException {
+    Map<String, List<ClassLocation>> classes = new HashMap<>();
+    Set<String> roots = new HashSet<>();
+    roots.add(toInternalName(entryPoint));
+    Map<String, ZipFile> zipFiles = new LinkedHashMap<>();
+    try {
+      indexDirectory(classesDir, classes, roots);
+      for (Map.Entry<String, File> lib : libs.entrySet()) {
+        ZipFile zipFile = ZipFile.builder().setFile(lib.getValue()).get();
+        zipFiles.put(lib.getKey(), zipFile);
+        indexJar(lib.getKey(), zipFile, classes, roots);
+      }
+      for (String className : classes.keySet()) {
+        if (isKept(className.replace('/', '.'))) {
+          roots.add(className);
+        }
+      }
+      Set<String> reachable = computeReachable(roots, classes, classesDir, zipFiles);
+
+      Result result = new Result(entryPoint);
+      for (Map.Entry<String, File> lib : libs.entrySet()) {
+        ZipFile zipFile = zipFiles.get(lib.getKey());
+        Set<String> removed = new TreeSet<>();
+        for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+          String className = classNameOf(entry.getName());
+          if (className != null && !reachable.contains(className)) {
+            removed.add(entry.getName());
+          }
+        }
+        result.add(lib.getKey(), lib.getValue(), removed.isEmpty() ? lib.getValue() : rewrite(lib.getKey(), lib.getValue(), zipFile, removed), removed);
+      }
+      return result;
+    } finally {
+      for (ZipFile zipFile : zipFiles.values()) {
+        zipFile.close();
+      }
+    }
+  }
+
+  private static void indexDirectory(File classesDir, Map<String, List<ClassLocation>> classes, Set<String> roots) throws IOException {
+    if (!classesDir.isDirectory()) {
+      return;
+    }
+    DirectoryScanner scanner = new DirectoryScanner();
+    scanner.setBasedir(classesDir);
+    scanner.scan();
+    for (String path : scanner.getIncludedFiles()) {
+      String name = path.replace(File.separatorChar, '/');
+      String className = classNameOf(name);
+      if (className != null) {
+        classes.computeIfAbsent(className, c -> new ArrayList<>()).add(new ClassLocation(null, name));
+        roots.add(className);
+      } else if (name.startsWith(SERVICES_DIR)) {
+        addServices(new String(Files.readAllBytes(new File(classesDir, path).toPath()), StandardCharsets.UTF_8), roots);
+      }
+    }
+  }
+
+  private static void indexJar(String lib, ZipFile zipFile, Map<String, List<ClassLocation>> classes, Set<String> roots) throws IOException {
+    for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+      String className = classNameOf(entry.getName());
+      if (className != null) {
+        classes.computeIfAbsent(className, c -> new ArrayList<>()).add(new ClassLocation(lib, entry.getName()));
+      } else if (entry.getName().startsWith(SERVICES_DIR) && !entry.isDirectory()) {
+        try (InputStream input = zipFile.getInputStream(entry)) {
+          addServices(new String(ByteStreams.toByteArray(input), StandardCharsets.UTF_8), roots);
+        }
+      }
+    }
+  }
+
+  private static void addServices(String content, Set<String> roots) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int comment = line.indexOf('#');
+        String className = (comment < 0 ? line : line.substring(0, comment)).trim();
+        if (!className.isEmpty()) {
+          roots.add(toInternalName(className));
+        }
+      }
+    }
+  }
+
+  private static Set<String> computeReachable(Set<String> roots, Map<String, List<ClassLocation>> classes, File classesDir,
+    Map<String, ZipFile> zipFiles) throws IOException {
+    Set<String> reachable = new HashSet<>();
+    Deque<String> queue = new ArrayDeque<>();
+    for (String root : roots) {
+      if (classes.containsKey(root) && reachable.add(root)) {
+        queue.add(root);
+      }
+    }
+    while (!queue.isEmpty()) {
+      String className = queue.poll();
+      for (ClassLocation location : classes.get(className)) {
+        for (String string : ConstantPool.readStrings(location.read(classesDir, zipFiles))) {
+          for (String reference : referencedNames(string)) {
+            if (classes.containsKey(reference) && reachable.add(reference)) {
+              queue.add(reference);
+            }
+          }
+        }
+      }
+    }
+    return reachable;
+  }
+
+  /**
+   * @return candidate internal names of the classes referenced by a constant
+   */
+  static Set<String> referencedNames(String constant) {
+    Set<String> names = new HashSet<>();
+    int start = -1;
+    for (int i = 0; i <= constant.length(); i++) {
+      boolean namePart = i < constant.length() && isNamePart(constant.charAt(i));
+      if (namePart && start < 0) {
+        start = i;
+      } else if (!namePart && start >= 0) {
+        String token = constant.substring(start, i);
+        names.add(toInternalName(token));
+        if (token.length() > 1 && token.charAt(0) == 'L') {
+          names.add(token.substring(1));
+        }
+        start = -1;
+      }
+    }
+    return names;
+  }
+
+  private static boolean isNamePart(char c) {
+    return c == '/' || c == '.' || Character.isJavaIdentifierPart(c);
+  }
+
+  private File rewrite(String lib, File source, ZipFile zipFile, Set<String> removed) throws IOException {
+    File target = new File(outputDir, lib);
+    File removedFile = new File(outputDir, lib + ".removed");
+    String removedContent = source.getAbsolutePath() + "|" + source.length() + "|" + source.lastModified() + "\n" + String.join("\n", removed);
+    if (target.isFile() && removedFile.isFile() && removedContent.equals(new String(Files.readAllBytes(removedFile.toPath()), StandardCharsets.UTF_8))) {
+      return target;
+    }
+    Files.deleteIfExists(removedFile.toPath());
+    Files.createDirectories(target.getParentFile().toPath());
+    try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(target)) {
+      output.setUseZip64(Zip64Mode.AsNeeded);
+      for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+        if (!removed.contains(entry.getName())) {
+          try (InputStream data = zipFile.getRawInputStream(entry)) {
+            output.addRawArchiveEntry(entry, data);
+          }
+        }
+      }
+    }
+    PackagingTrace.writeAtomically(removedFile, removedContent);
+    return target;
+  }
+
+  private boolean isKept(String className) {
+    for (String rule : keepRules) {
+      if (matches(rule.trim(), className)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean matches(String rule, String className) {
+    if (rule.endsWith(".**")) {
+      return className.startsWith(rule.substring(0, rule.length() - 2));
+    }
+    if (rule.endsWith(".*")) {
+      String packagePrefix = rule.substring(0, rule.length() - 1);
+      return className.startsWith(packagePrefix) && className.indexOf('.', packagePrefix.length()) < 0;
+    }
+    return className.equals(rule);
+  }
+
+  /**
+   * @return internal name of the class of an entry, or null if the entry is not a class that can be removed
+   */
+  @CheckForNull
+  static String classNameOf(String entryName) {
+    String name = entryName;
+    if (name.startsWith(VERSIONS_DIR)) {
+      int slash = name.indexOf('/', VERSIONS_DIR.length());
+      name = slash < 0 ? "" : name.substring(slash + 1);
+    }
+    if (!name.endsWith(CLASS_SUFFIX) || name.startsWith("META-INF/") || name.endsWith("module-info.class") || name.endsWith("package-info.class")) {
+      return null;
+    }
+    return name.substring(0, name.length() - CLASS_SUFFIX.length());
+  }
+
+  private static String toInternalName(String className) {
+    return className.replace('.', '/');
+  }
+
+  private static class ClassLocation {
+    @Nullable
+    private final String lib;
+    private final String entryName;
+
+    private ClassLocation(@Nullable String lib, String entryName) {
+      this.lib = lib;
+      this.entryName = entryName;
+    }
+
+    private byte[] read(File classesDir, Map<String, ZipFile> zipFiles) throws IOException {
+      if (lib == null) {
+        return Files.readAllBytes(new File(classesDir, entryName).toPath());
+      }
+      ZipFile zipFile = zipFiles.get(lib);
+      try (InputStream input = zipFile.getInputStream(zipFile.getEntry(entryName))) {
+        return ByteStreams.toByteArray(input);
+      }
+    }
+  }
+
+  static class Result {
+    private final String entryPoint;
+    private final Map<String, File> minimizedFiles = new LinkedHashMap<>();
+    private final Map<String, Set<String>> removedEntries = new LinkedHashMap<>();
+    private final Map<String, Long> savedBytes = new LinkedHashMap<>();
+
+    private Result(String entryPoint) {
+      this.entryPoint = entryPoint;
+    }
+
+    private void add(String lib, File original, File minimized, Set<String> removed) {
+      minimizedFiles.put(lib, minimized);
+      removedEntries.put(lib, removed);
+      savedBytes.put(lib, original.length() - minimized.length());
+    }
+
+    /**
+     * @return dependency files to package, by entry name in the plugin JAR
+     */
+    Map<String, File> getMinimizedFiles() {
+      return minimizedFiles;
+    }
+
+    int getRemovedClasses() {
+      return removedEntries.values().stream().mapToInt(Set::size).sum();
+    }
+
+    long getSavedBytes() {
+      return savedBytes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    String toReport() {
+      StringBuilder report = new StringBuilder()
+        .append("Entry point: ").append(entryPoint).append('\n')
+        .append("Removed classes: ").append(getRemovedClasses()).append('\n')
+        .append("Saved bytes: ").append(getSavedBytes()).append('\n');
+      for (Map.Entry<String, Set<String>> lib : removedEntries.entrySet()) {
+        report.append('\n').append(lib.getKey()).append(": ").append(lib.getValue().size()).append(" classes removed, ")
+          .append(savedBytes.get(lib.getKey())).append(" bytes saved\n");
+        for (String entry : lib.getValue()) {
+          report.append("  ").append(entry).append('\n');
+        }
+      }
+      return report.toString();
+    }
+  }
+}
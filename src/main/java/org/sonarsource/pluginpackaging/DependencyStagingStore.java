@@ -0,0 +1,149 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-addressed store of dependency files, shared by all the modules using the same store directory.
+ * <p>
+ * Files are stored once per SHA-256 checksum, then hard-linked to their staging location. When hard links are not
+ * supported, for example when the store and the staging directory are not on the same file system, files are copied.
+ * Stored files are shared by all the staging directories that link to them, so staged files are replaced, never
+ * modified in place. They are not made read-only though, because read-only files can be neither deleted nor replaced on
+ * Windows.
+ * <p>
+ * The size of the store is bounded: when it is exceeded, the least recently staged files are deleted, by day. Staged files
+ * linked to them are still valid, and are stored again by the next build that stages them.
+ */
+class DependencyStagingStore {
+
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final long TOUCH_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+  private final Path storeDir;
+  private final DirectorySizeLimit sizeLimit;
+
+  /**
+   * @param maxSize maximum size of the stored files in bytes
+   */
+  DependencyStagingStore(File storeDir, long maxSize) {
+    this.storeDir = storeDir.toPath();
+    this.sizeLimit = new DirectorySizeLimit(this.storeDir, maxSize, file -> !file.getFileName().toString().endsWith(TEMP_SUFFIX));
+  }
+
+  /**
+   * @return true if the target file has been created or replaced, false if it was already up-to-date
+   */
+  boolean stage(File source, File target) throws IOException {
+    String checksum = checksum(source);
+    Path stored = store(source, checksum);
+    Path targetPath = target.toPath();
+    if (Files.exists(targetPath) && (Files.isSameFile(targetPath, stored) || checksum.equals(checksum(target)))) {
+      return false;
+    }
+    Files.createDirectories(targetPath.getParent());
+    try {
+      Files.deleteIfExists(targetPath);
+    } catch (AccessDeniedException e) {
+      // linked to a read-only file stored by a previous version
+      if (!targetPath.toFile().setWritable(true)) {
+        throw e;
+      }
+      Files.delete(targetPath);
+    }
+    try {
+      Files.createLink(targetPath, stored);
+    } catch (UnsupportedOperationException | IOException e) {
+      Files.copy(stored, targetPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return true;
+  }
+
+  private Path store(File source, String checksum) throws IOException {
+    Path dir = storeDir.resolve(checksum.substring(0, 2));
+    Path stored = dir.resolve(checksum);
+    if (Files.exists(stored)) {
+      touch(stored);
+      return stored;
+    }
+    Files.createDirectories(dir);
+    Path temp = Files.createTempFile(dir, checksum, TEMP_SUFFIX);
+    try {
+      transfer(source, temp.toFile());
+      sizeLimit.reserve(Files.size(temp));
+      // concurrent builds may store the same file at the same time, the content is the same anyway
+      Files.move(temp, stored, StandardCopyOption.ATOMIC_MOVE);
+    } catch (FileAlreadyExistsException | AccessDeniedException e) {
+      // stored by another build, Windows denies the move when the existing file is in use
+      if (!Files.exists(stored)) {
+        throw e;
+      }
+      return stored;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return stored;
+  }
+
+  /**
+   * Files are evicted by last modification time, which is updated when they are staged again. Staged files are links
+   * to the stored files, and their time is compared to sync them, so it is updated at most once a day.
+   */
+  private static void touch(Path stored) {
+    try {
+      long now = System.currentTimeMillis();
+      if (Files.getLastModifiedTime(stored).toMillis() < now - TOUCH_INTERVAL) {
+        Files.setLastModifiedTime(stored, FileTime.fromMillis(now));
+      }
+    } catch (IOException e) {
+      // evicted by another process
+    }
+  }
+
+  static String checksum(File file) throws IOException {
+    return com.google.common.io.Files.asByteSource(file).hash(Hashing.sha256()).toString();
+  }
+
+  /**
+   * Copy a file without going through user-space buffers, when supported by the operating system.
+   */
+  static void transfer(File source, File target) throws IOException {
+    try (FileChannel input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+      FileChannel output = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      long size = input.size();
+      long position = 0L;
+      while (position < size) {
+        position += input.transferTo(position, size - position, output);
+      }
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import javax.annotation.CheckForNull;
+
+/**
+ * Bounds the size of a directory shared by modules and builds, like the caches of the local repository, by deleting
+ * its oldest files, by last modification time.
+ * <p>
+ * The size of the directory is computed once by the JVM, then tracked as files are added, so that the directory is
+ * only walked again when the limit is exceeded. Files added by other processes are only counted at the next eviction.
+ */
+class DirectorySizeLimit {
+
+  private static final Map<Path, Long> SIZES = new HashMap<>();
+
+  private final Path dir;
+  private final long maxSize;
+  private final Predicate<Path> files;
+
+  /**
+   * @param files the files that count in the size of the directory, and that may be deleted
+   */
+  DirectorySizeLimit(Path dir, long maxSize, Predicate<Path> files) {
+    this.dir = dir.toAbsolutePath().normalize();
+    this.maxSize = maxSize;
+    this.files = files;
+  }
+
+  /**
+   * Makes room for a file about to be added to the directory, so that the file itself is never evicted.
+   */
+  void reserve(long bytes) throws IOException {
+    synchronized (SIZES) {
+      Long size = SIZES.get(dir);
+      if (size == null || size + bytes > maxSize) {
+        size = evict(bytes);
+      }
+      SIZES.put(dir, size + bytes);
+    }
+  }
+
+  /**
+   * Deletes the oldest files until the size of the directory, reserved bytes included, is under three quarters of its
+   * maximum size, so that eviction does not run again at each new file.
+   *
+   * @return the size of the remaining files
+   */
+  private long evict(long reserved) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return 0L;
+    }
+    List<Entry> entries = new ArrayList<>();
+    long size = 0L;
+    try (Stream<Path> walk = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) walk::iterator) {
+        BasicFileAttributes attributes = readAttributes(file);
+        if (attributes != null && attributes.isRegularFile() && files.test(file)) {
+          entries.add(new Entry(file, attributes.lastModifiedTime().toMillis(), attributes.size()));
+          size += attributes.size();
+        }
+      }
+    }
+    if (size + reserved <= maxSize) {
+      return size;
+    }
+    entries.sort(Comparator.comparingLong((Entry entry) -> entry.lastModified));
+    for (Entry entry : entries) {
+      if (size + reserved <= maxSize * 3 / 4) {
+        break;
+      }
+      try {
+        Files.deleteIfExists(entry.path);
+        size -= entry.size;
+      } catch (IOException e) {
+        // used by another process, it will be deleted later
+      }
+    }
+    return size;
+  }
+
+  @CheckForNull
+  private static BasicFileAttributes readAttributes(Path file) {
+    try {
+      return Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (IOException e) {
+      // deleted by another process
+      return null;
+    }
+  }
+
+  private static class Entry {
+    private final Path path;
+    private final long lastModified;
+    private final long size;
+
+    private Entry(Path path, long lastModified, long size) {
+      this.path = path;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+  }
+}
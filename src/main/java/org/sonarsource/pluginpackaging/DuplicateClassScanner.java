@@ -0,0 +1,263 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ObjLongConsumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Finds the classes shipped by several dependencies of a plugin. Only the central directory of the JAR files is read,
+ * memory-mapped, and JAR files are read concurrently by a bounded pool of threads.
+ * <p>
+ * Classes of {@code META-INF}, including the ones of multi-release JAR files, and {@code module-info.class} are
+ * ignored. The bytes wasted by a conflict are the compressed size of the duplicated classes in the second JAR.
+ */
+class DuplicateClassScanner {
+
+  private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+  private static final int CENTRAL_FILE_HEADER = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int CENTRAL_FILE_HEADER_SIZE = 46;
+  private static final int MAX_COMMENT_SIZE = 0xFFFF;
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final short ZIP64_EXTRA_FIELD = 0x0001;
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final int threads;
+  private final ArtifactSummaryCache summaries;
+
+  DuplicateClassScanner(int threads) {
+    this(threads, ArtifactSummaryCache.disabled());
+  }
+
+  DuplicateClassScanner(int threads, ArtifactSummaryCache summaries) {
+    checkArgument(threads > 0, "Number of threads must be positive: %s", threads);
+    this.threads = threads;
+    this.summaries = summaries;
+  }
+
+  /**
+   * @param jars JAR files by name, in the order of the classpath
+   * @return conflicts by pair of JAR files, in the order of the classpath
+   */
+  List<Conflict> scan(Map<String, File> jars) throws IOException {
+    List<String> names = new ArrayList<>(jars.keySet());
+    List<Map<String, Long>> classesByJar = readAll(jars, names);
+    Map<String, Integer> firstJarByClass = new HashMap<>();
+    Map<String, Conflict> conflicts = new LinkedHashMap<>();
+    for (int jar = 0; jar < names.size(); jar++) {
+      String secondJar = names.get(jar);
+      for (Map.Entry<String, Long> entry : classesByJar.get(jar).entrySet()) {
+        Integer firstJar = firstJarByClass.putIfAbsent(entry.getKey(), jar);
+        if (firstJar != null) {
+          conflicts.computeIfAbsent(firstJar + "|" + jar, k -> new Conflict(names.get(firstJar), secondJar))
+            .add(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    return new ArrayList<>(conflicts.values());
+  }
+
+  private List<Map<String, Long>> readAll(Map<String, File> jars, List<String> names) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, names.size())));
+    try {
+      List<Future<Map<String, Long>>> futures = new ArrayList<>();
+      for (String name : names) {
+        File file = jars.get(name);
+        futures.add(executor.submit(() -> summaries.get(file).getClasses()));
+      }
+      List<Map<String, Long>> result = new ArrayList<>();
+      for (Future<Map<String, Long>> future : futures) {
+        result.add(future.get());
+      }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while scanning dependencies");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return compressed size of the classes of a JAR file, by class name, sorted by class name
+   */
+  static Map<String, Long> readClasses(File jar) throws IOException {
+    Map<String, Long> classes = new TreeMap<>();
+    readEntries(jar, (name, compressedSize) -> {
+      if (isClass(name)) {
+        classes.put(toClassName(name), compressedSize);
+      }
+    });
+    return classes;
+  }
+
+  /**
+   * Visits the name and the compressed size of all the entries of a JAR file, in the order of its central directory.
+   */
+  static void readEntries(File jar, ObjLongConsumer<String> visitor) throws IOException {
+    try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+      MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, size - tailSize, tailSize);
+      tail.order(ByteOrder.LITTLE_ENDIAN);
+      int end = findEndOfCentralDirectory(tail);
+      if (end < 0) {
+        throw new IOException("Not a JAR file, end of central directory not found: " + jar);
+      }
+      long entries = Short.toUnsignedLong(tail.getShort(end + 10));
+      long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+      long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+      int locator = end - 20;
+      if ((entries == 0xFFFF || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC)
+        && locator >= 0 && tail.getInt(locator) == ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+        MappedByteBuffer zip64End = channel.map(FileChannel.MapMode.READ_ONLY, tail.getLong(locator + 8), 56);
+        zip64End.order(ByteOrder.LITTLE_ENDIAN);
+        if (zip64End.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+          throw new IOException("Invalid ZIP64 end of central directory: " + jar);
+        }
+        directorySize = zip64End.getLong(40);
+        directoryOffset = zip64End.getLong(48);
+      }
+      if (directoryOffset + directorySize > size || directorySize > Integer.MAX_VALUE) {
+        throw new IOException("Invalid central directory: " + jar);
+      }
+      MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize);
+      directory.order(ByteOrder.LITTLE_ENDIAN);
+      readCentralDirectory(directory, jar, visitor);
+    }
+  }
+
+  private static int findEndOfCentralDirectory(MappedByteBuffer tail) {
+    for (int position = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--) {
+      if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY) {
+        return position;
+      }
+    }
+    return -1;
+  }
+
+  private static void readCentralDirectory(MappedByteBuffer directory, File jar, ObjLongConsumer<String> visitor) throws IOException {
+    int position = 0;
+    byte[] nameBytes = new byte[256];
+    while (position + CENTRAL_FILE_HEADER_SIZE <= directory.limit()) {
+      if (directory.getInt(position) != CENTRAL_FILE_HEADER) {
+        throw new IOException("Invalid central directory: " + jar);
+      }
+      long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+      long uncompressedSize = Integer.toUnsignedLong(directory.getInt(position + 24));
+      int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+      int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+      int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+      int namePosition = position + CENTRAL_FILE_HEADER_SIZE;
+      if (nameLength > nameBytes.length) {
+        nameBytes = new byte[nameLength];
+      }
+      directory.position(namePosition);
+      directory.get(nameBytes, 0, nameLength);
+      String name = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+      if (compressedSize == ZIP64_MAGIC) {
+        compressedSize = zip64CompressedSize(directory, namePosition + nameLength, extraLength, uncompressedSize == ZIP64_MAGIC);
+      }
+      visitor.accept(name, compressedSize);
+      position = namePosition + nameLength + extraLength + commentLength;
+    }
+  }
+
+  private static long zip64CompressedSize(MappedByteBuffer directory, int extraPosition, int extraLength, boolean hasUncompressedSize) {
+    int position = extraPosition;
+    while (position + 4 <= extraPosition + extraLength) {
+      short id = directory.getShort(position);
+      int size = Short.toUnsignedInt(directory.getShort(position + 2));
+      if (id == ZIP64_EXTRA_FIELD) {
+        return directory.getLong(position + 4 + (hasUncompressedSize ? 8 : 0));
+      }
+      position += 4 + size;
+    }
+    return ZIP64_MAGIC;
+  }
+
+  static boolean isClass(String entryName) {
+    return entryName.endsWith(CLASS_SUFFIX) && !entryName.startsWith("META-INF/") && !entryName.endsWith("module-info.class");
+  }
+
+  static String toClassName(String entryName) {
+    return entryName.substring(0, entryName.length() - CLASS_SUFFIX.length()).replace('/', '.');
+  }
+
+  static class Conflict {
+    private final String firstJar;
+    private final String secondJar;
+    private final List<String> classes = new ArrayList<>();
+    private long wastedBytes = 0L;
+
+    private Conflict(String firstJar, String secondJar) {
+      this.firstJar = firstJar;
+      this.secondJar = secondJar;
+    }
+
+    private void add(String className, long size) {
+      classes.add(className);
+      wastedBytes += size;
+    }
+
+    String getFirstJar() {
+      return firstJar;
+    }
+
+    String getSecondJar() {
+      return secondJar;
+    }
+
+    List<String> getClasses() {
+      return classes;
+    }
+
+    long getWastedBytes() {
+      return wastedBytes;
+    }
+  }
+}
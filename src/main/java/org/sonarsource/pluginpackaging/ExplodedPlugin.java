@@ -0,0 +1,202 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A plugin written as a directory instead of a JAR file: the manifest, the classes and resources, and the
+ * dependencies in {@code META-INF/lib}.
+ * <p>
+ * Updating a directory only writes the files that changed, so that an iteration of the development loop costs the
+ * changed bytes instead of the compression of the whole plugin. A file copied from another file is up to date when it
+ * has the same size and time, a file built in memory or linked from the staging store when it has the same content.
+ * The time of linked files is never set, because it is shared by all the links to the stored file. Files that are not
+ * part of the plugin anymore are deleted, as well as the directories that become empty.
+ */
+class ExplodedPlugin {
+
+  private ExplodedPlugin() {
+    // only static methods
+  }
+
+  /**
+   * @param linkedEntries entries to link from the staging store instead of copying them, like dependencies
+   */
+  static Statistics write(File dir, List<PackagedEntry> entries, Predicate<String> linkedEntries, DependencyStagingStore store)
+    throws IOException {
+    Statistics statistics = new Statistics();
+    Path root = dir.toPath();
+    Set<Path> written = new HashSet<>();
+    for (PackagedEntry entry : entries) {
+      Path target = root.resolve(entry.getName());
+      written.add(target);
+      if (entry.isDirectory()) {
+        Files.createDirectories(target);
+        continue;
+      }
+      File source = entry.getFile();
+      if (source == null) {
+        byte[] content = entry.readContent();
+        if (Files.isRegularFile(target) && Arrays.equals(content, Files.readAllBytes(target))) {
+          statistics.unchangedFiles++;
+        } else {
+          Files.createDirectories(target.getParent());
+          Files.write(target, content);
+          statistics.written(content.length);
+        }
+      } else if (linkedEntries.test(entry.getName())) {
+        if (store.stage(source, target.toFile())) {
+          statistics.written(source.length());
+        } else {
+          statistics.unchangedFiles++;
+        }
+      } else if (isUpToDate(source.toPath(), target)) {
+        statistics.unchangedFiles++;
+      } else {
+        copy(source.toPath(), target);
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source.toPath()));
+        statistics.written(source.length());
+      }
+    }
+    deleteOthers(root, written, statistics);
+    return statistics;
+  }
+
+  /**
+   * Makes the target directory a copy of the source directory, by copying the files whose size or time differ and by
+   * deleting the files that are not in the source directory.
+   */
+  static Statistics sync(File sourceDir, File targetDir) throws IOException {
+    Statistics statistics = new Statistics();
+    Path sourceRoot = sourceDir.toPath();
+    Path targetRoot = targetDir.toPath();
+    Set<Path> synced = new HashSet<>();
+    List<Path> sources;
+    try (Stream<Path> paths = Files.walk(sourceRoot)) {
+      sources = paths.filter(path -> !path.equals(sourceRoot)).sorted().collect(Collectors.toList());
+    }
+    for (Path source : sources) {
+      Path target = targetRoot.resolve(sourceRoot.relativize(source).toString());
+      synced.add(target);
+      if (Files.isDirectory(source)) {
+        Files.createDirectories(target);
+      } else if (isUpToDate(source, target)) {
+        statistics.unchangedFiles++;
+      } else {
+        copy(source, target);
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+        statistics.written(Files.size(source));
+      }
+    }
+    deleteOthers(targetRoot, synced, statistics);
+    return statistics;
+  }
+
+  private static boolean isUpToDate(Path source, Path target) throws IOException {
+    return Files.isRegularFile(target)
+      && Files.size(target) == Files.size(source)
+      && Files.getLastModifiedTime(target).equals(Files.getLastModifiedTime(source));
+  }
+
+  /**
+   * Copies to a temporary file first, so that a server reading the target never sees a partially written file.
+   */
+  private static void copy(Path source, Path target) throws IOException {
+    Files.createDirectories(target.getParent());
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      DependencyStagingStore.transfer(source.toFile(), temp.toFile());
+      Files.deleteIfExists(target);
+      Files.move(temp, target);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void deleteOthers(Path root, Set<Path> kept, Statistics statistics) throws IOException {
+    if (!Files.isDirectory(root)) {
+      return;
+    }
+    List<Path> others;
+    try (Stream<Path> paths = Files.walk(root)) {
+      // children before their parent
+      others = paths.filter(path -> !path.equals(root) && !kept.contains(path))
+        .sorted(Comparator.reverseOrder())
+        .collect(Collectors.toList());
+    }
+    for (Path other : others) {
+      if (!Files.isDirectory(other)) {
+        Files.delete(other);
+        statistics.deletedFiles++;
+      } else if (isEmpty(other)) {
+        Files.delete(other);
+      }
+    }
+  }
+
+  private static boolean isEmpty(Path dir) throws IOException {
+    try (Stream<Path> children = Files.list(dir)) {
+      return !children.findAny().isPresent();
+    }
+  }
+
+  /**
+   * Files written, left untouched and deleted by an update of a directory.
+   */
+  static class Statistics {
+    private int writtenFiles;
+    private long writtenBytes;
+    private int unchangedFiles;
+    private int deletedFiles;
+
+    private void written(long bytes) {
+      writtenFiles++;
+      writtenBytes += bytes;
+    }
+
+    int getWrittenFiles() {
+      return writtenFiles;
+    }
+
+    long getWrittenBytes() {
+      return writtenBytes;
+    }
+
+    int getUnchangedFiles() {
+      return unchangedFiles;
+    }
+
+    int getDeletedFiles() {
+      return deletedFiles;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order of the entries of the plugin JAR file that puts first what the server reads to start the plugin: the manifest,
+ * the package index, then the classes and libraries loaded when the plugin class is instantiated, in load order. Cold
+ * reads of the file are then sequential.
+ * <p>
+ * A load order file has one name per line, either a class name or an entry name like {@code org/foo/Bar.class} or
+ * {@code META-INF/lib/foo-1.0.jar}. Blank lines and lines starting with {@code #} are ignored.
+ */
+class LoadOrder {
+
+  private static final String HEADER = "# Entries read when the plugin is instantiated, in load order";
+  private static final String CLASS_SUFFIX = ".class";
+
+  private LoadOrder() {
+    // only static methods
+  }
+
+  static List<String> read(File file) throws IOException {
+    List<String> result = new ArrayList<>();
+    for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+      String name = line.trim();
+      if (name.isEmpty() || name.startsWith("#")) {
+        continue;
+      }
+      result.add(name.contains("/") || name.endsWith(CLASS_SUFFIX) ? name : (name.replace('.', '/') + CLASS_SUFFIX));
+    }
+    return result;
+  }
+
+  static void write(File file, List<String> entryNames) throws IOException {
+    PackagingTrace.writeAtomically(file, HEADER + "\n" + String.join("\n", entryNames) + "\n");
+  }
+
+  /**
+   * @param startupEntries names of the entries read at startup, in load order. Unknown names are ignored.
+   * @return the same entries, startup ones first, preceded by their parent directories. The order of the other entries
+   * is kept.
+   */
+  static List<PackagedEntry> apply(List<PackagedEntry> entries, List<String> startupEntries) {
+    Map<String, PackagedEntry> remaining = new LinkedHashMap<>();
+    for (PackagedEntry entry : entries) {
+      remaining.put(entry.getName(), entry);
+    }
+    List<PackagedEntry> result = new ArrayList<>(entries.size());
+    List<String> first = new ArrayList<>();
+    first.add(PluginArchive.MANIFEST_NAME);
+    first.add(PackageIndex.ENTRY_NAME);
+    first.addAll(startupEntries);
+    for (String name : first) {
+      moveWithParents(name, remaining, result);
+    }
+    result.addAll(remaining.values());
+    return result;
+  }
+
+  private static void moveWithParents(String name, Map<String, PackagedEntry> remaining, List<PackagedEntry> result) {
+    if (!remaining.containsKey(name)) {
+      return;
+    }
+    for (int slash = name.indexOf('/'); slash >= 0 && slash < name.length() - 1; slash = name.indexOf('/', slash + 1)) {
+      PackagedEntry parent = remaining.remove(name.substring(0, slash + 1));
+      if (parent != null) {
+        result.add(parent);
+      }
+    }
+    result.add(remaining.remove(name));
+  }
+}
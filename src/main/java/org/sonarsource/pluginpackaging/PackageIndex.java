@@ -0,0 +1,261 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.primitives.UnsignedBytes;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.CheckForNull;
+
+/**
+ * Binary index of the packages of a plugin, giving for each package the JAR files that contain it: the plugin JAR
+ * itself and the dependencies of {@code META-INF/lib}. It plays the role of the {@code INDEX.LIST} of JAR indexing,
+ * so that the classloader of the plugin can find the JAR of a class without probing all of them.
+ * <p>
+ * The index is loaded in primitive arrays: the UTF-8 names of the packages, sorted as unsigned bytes and
+ * concatenated, their offsets in this pool, and the JAR numbers of each package. A lookup is a binary search.
+ * Package names use {@code /} as separator, the default package is the empty string. JAR number 0 is the plugin JAR,
+ * its name is the empty string, the next ones are the dependencies in the order of {@code Plugin-Dependencies}. Format, with big-endian integers:
+ * <pre>
+ * int magic, int version
+ * int jarCount, jarCount * modified UTF-8 JAR name
+ * int packageCount, (packageCount + 1) * int name offset, int poolSize, poolSize * byte name pool
+ * (packageCount + 1) * int JAR offset, int jarRefCount, jarRefCount * int JAR number
+ * </pre>
+ */
+final class PackageIndex {
+
+  static final String ENTRY_NAME = "META-INF/sonar-package-index.bin";
+  static final String MANIFEST_ATTRIBUTE = "Plugin-Package-Index";
+  static final int PLUGIN_JAR = 0;
+  private static final int MAGIC = 0x53504958;
+  private static final int VERSION = 1;
+  private static final String VERSIONS_DIR = "META-INF/versions/";
+  private static final int[] NONE = new int[0];
+
+  private final String[] jars;
+  private final int[] nameOffsets;
+  private final byte[] namePool;
+  private final int[] jarOffsets;
+  private final int[] jarRefs;
+
+  private PackageIndex(String[] jars, int[] nameOffsets, byte[] namePool, int[] jarOffsets, int[] jarRefs) {
+    this.jars = jars;
+    this.nameOffsets = nameOffsets;
+    this.namePool = namePool;
+    this.jarOffsets = jarOffsets;
+    this.jarRefs = jarRefs;
+  }
+
+  String getJar(int jar) {
+    return jars[jar];
+  }
+
+  int getPackageCount() {
+    return nameOffsets.length - 1;
+  }
+
+  /**
+   * @param className binary name of a class, for example {@code org.foo.Bar$Baz}
+   * @return numbers of the JAR files containing the package of the class, empty if the package is unknown
+   */
+  int[] findJars(String className) {
+    int lastDot = className.lastIndexOf('.');
+    String packageName = lastDot < 0 ? "" : className.substring(0, lastDot).replace('.', '/');
+    return findJarsOfPackage(packageName);
+  }
+
+  int[] findJarsOfPackage(String packageName) {
+    byte[] name = packageName.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = getPackageCount() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = compareUnsigned(namePool, nameOffsets[middle], nameOffsets[middle + 1], name);
+      if (comparison < 0) {
+        low = middle + 1;
+      } else if (comparison > 0) {
+        high = middle - 1;
+      } else {
+        return Arrays.copyOfRange(jarRefs, jarOffsets[middle], jarOffsets[middle + 1]);
+      }
+    }
+    return NONE;
+  }
+
+  byte[] toBytes() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(jars.length);
+      for (String jar : jars) {
+        output.writeUTF(jar);
+      }
+      output.writeInt(getPackageCount());
+      writeInts(output, nameOffsets);
+      output.writeInt(namePool.length);
+      output.write(namePool);
+      writeInts(output, jarOffsets);
+      output.writeInt(jarRefs.length);
+      writeInts(output, jarRefs);
+    }
+    return bytes.toByteArray();
+  }
+
+  static PackageIndex read(InputStream inputStream) throws IOException {
+    DataInputStream input = new DataInputStream(inputStream);
+    if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+      throw new IOException("Not a package index of version " + VERSION);
+    }
+    String[] jars = new String[input.readInt()];
+    for (int i = 0; i < jars.length; i++) {
+      jars[i] = input.readUTF();
+    }
+    int packageCount = input.readInt();
+    int[] nameOffsets = readInts(input, packageCount + 1);
+    byte[] namePool = new byte[input.readInt()];
+    input.readFully(namePool);
+    int[] jarOffsets = readInts(input, packageCount + 1);
+    int[] jarRefs = readInts(input, input.readInt());
+    return new PackageIndex(jars, nameOffsets, namePool, jarOffsets, jarRefs);
+  }
+
+  private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+    for (int value : values) {
+      output.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(DataInputStream input, int count) throws IOException {
+    int[] values = new int[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = input.readInt();
+    }
+    return values;
+  }
+
+  /**
+   * @return package of a file entry, or null if the entry is not part of a package, like the files of {@code META-INF}
+   */
+  @CheckForNull
+  static String packageOf(String entryName) {
+    String name = entryName;
+    if (name.startsWith(VERSIONS_DIR)) {
+      // classes of multi-release JAR files, for example META-INF/versions/11/org/foo/Bar.class
+      int slash = name.indexOf('/', VERSIONS_DIR.length());
+      name = slash < 0 ? "" : name.substring(slash + 1);
+    }
+    if (name.isEmpty() || name.endsWith("/") || name.startsWith("META-INF/")) {
+      return null;
+    }
+    int lastSlash = name.lastIndexOf('/');
+    return lastSlash < 0 ? "" : name.substring(0, lastSlash);
+  }
+
+  static class Builder {
+    private final List<String> jars = new ArrayList<>(Collections.singletonList(""));
+    private final Map<String, SortedSet<Integer>> packages = new TreeMap<>(PackageIndex::compareUtf8);
+
+    /**
+     * Indexes an entry of the plugin JAR.
+     */
+    Builder addPluginEntry(String entryName) {
+      add(entryName, PLUGIN_JAR);
+      return this;
+    }
+
+    /**
+     * Indexes the entries of a dependency packaged in the plugin JAR.
+     */
+    Builder addJar(String name, File file) throws IOException {
+      return addJar(name, ArtifactSummary.compute(file));
+    }
+
+    Builder addJar(String name, ArtifactSummary summary) {
+      int jar = jars.size();
+      jars.add(name);
+      for (String packageName : summary.getPackages()) {
+        packages.computeIfAbsent(packageName, p -> new TreeSet<>()).add(jar);
+      }
+      return this;
+    }
+
+    private void add(String entryName, int jar) {
+      String packageName = packageOf(entryName);
+      if (packageName != null) {
+        packages.computeIfAbsent(packageName, p -> new TreeSet<>()).add(jar);
+      }
+    }
+
+    PackageIndex build() {
+      int[] nameOffsets = new int[packages.size() + 1];
+      int[] jarOffsets = new int[packages.size() + 1];
+      ByteArrayOutputStream namePool = new ByteArrayOutputStream();
+      List<Integer> jarRefs = new ArrayList<>();
+      int i = 0;
+      for (Map.Entry<String, SortedSet<Integer>> entry : packages.entrySet()) {
+        nameOffsets[i] = namePool.size();
+        jarOffsets[i] = jarRefs.size();
+        byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        namePool.write(name, 0, name.length);
+        jarRefs.addAll(entry.getValue());
+        i++;
+      }
+      nameOffsets[i] = namePool.size();
+      jarOffsets[i] = jarRefs.size();
+      return new PackageIndex(jars.toArray(new String[0]), nameOffsets, namePool.toByteArray(), jarOffsets,
+        jarRefs.stream().mapToInt(Integer::intValue).toArray());
+    }
+  }
+
+  private static int compareUtf8(String a, String b) {
+    byte[] first = a.getBytes(StandardCharsets.UTF_8);
+    byte[] second = b.getBytes(StandardCharsets.UTF_8);
+    return UnsignedBytes.lexicographicalComparator().compare(first, second);
+  }
+
+  /**
+   * Compares a range of an array to another array, in the same order as {@link #compareUtf8(String, String)}.
+   */
+  private static int compareUnsigned(byte[] array, int from, int to, byte[] other) {
+    int length = Math.min(to - from, other.length);
+    for (int i = 0; i < length; i++) {
+      int comparison = UnsignedBytes.compare(array[from + i], other[i]);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return (to - from) - other.length;
+  }
+}
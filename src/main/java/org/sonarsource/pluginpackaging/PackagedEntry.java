@@ -0,0 +1,125 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * An entry of the plugin JAR, backed either by a file or by content built in memory.
+ */
+final class PackagedEntry {
+
+  private final String name;
+  @Nullable
+  private final File file;
+  @Nullable
+  private final byte[] content;
+  private final long time;
+  /**
+   * Length and time of the file when the entry has been created, to detect that the file changed since then.
+   */
+  private final long fileLength;
+  private final long fileModified;
+
+  private PackagedEntry(String name, @Nullable File file, @Nullable byte[] content, long time, long fileLength, long fileModified) {
+    this.name = name;
+    this.file = file;
+    this.content = content;
+    this.time = time;
+    this.fileLength = fileLength;
+    this.fileModified = fileModified;
+  }
+
+  static PackagedEntry directory(String name, long time) {
+    return new PackagedEntry(name.endsWith("/") ? name : (name + "/"), null, null, time, 0L, 0L);
+  }
+
+  static PackagedEntry file(String name, File file) {
+    long modified = file.lastModified();
+    return new PackagedEntry(name, file, null, modified, file.length(), modified);
+  }
+
+  static PackagedEntry content(String name, byte[] content, long time) {
+    return new PackagedEntry(name, null, content, time, 0L, 0L);
+  }
+
+  PackagedEntry withTime(long newTime) {
+    return new PackagedEntry(name, file, content, newTime, fileLength, fileModified);
+  }
+
+  String getName() {
+    return name;
+  }
+
+  boolean isDirectory() {
+    return file == null && content == null;
+  }
+
+  /**
+   * @return the file backing this entry, null if the entry is a directory or content built in memory
+   */
+  @CheckForNull
+  File getFile() {
+    return file;
+  }
+
+  long getTime() {
+    return time;
+  }
+
+  long getSize() {
+    if (file != null) {
+      return file.length();
+    }
+    return content == null ? 0L : content.length;
+  }
+
+  /**
+   * Digest of the name, the time and the content of the entry. The content of an entry backed by a file is identified
+   * by the path, the length and the time of the file, so that computing the key never requires reading it. Such a file
+   * may have changed without changing its length nor its time, so its content must be checked before reusing an entry
+   * written with the same key.
+   */
+  String getKey() {
+    Hasher hasher = Hashing.sha256().newHasher()
+      .putString(name, StandardCharsets.UTF_8)
+      .putLong(time);
+    if (file != null) {
+      hasher.putByte((byte) 'F').putString(file.getAbsolutePath(), StandardCharsets.UTF_8).putLong(fileLength).putLong(fileModified);
+    } else if (content != null) {
+      hasher.putByte((byte) 'C').putBytes(content);
+    }
+    return hasher.hash().toString();
+  }
+
+  byte[] readContent() throws IOException {
+    if (file != null) {
+      return Files.readAllBytes(file.toPath());
+    }
+    return content == null ? new byte[0] : content;
+  }
+}
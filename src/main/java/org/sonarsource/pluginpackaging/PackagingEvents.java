@@ -0,0 +1,147 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Java Flight Recorder events emitted by the goals of the plugin, in the category "SonarQube / Packaging".
+ * <p>
+ * The plugin runs on Java 8, where the {@code jdk.jfr} API may not exist. The events of this class only hold their
+ * attributes, and are recorded by {@code JfrPackagingEvents}, which is compiled separately from
+ * {@code src/main/java11} and loaded only when it links. Otherwise, events are never committed.
+ * <p>
+ * Events are begun before the work and their attributes are set only when {@link PackagingEvent#shouldCommit()}
+ * returns true, so that they cost nothing when no recording is running.
+ */
+final class PackagingEvents {
+
+  static final String JFR_RECORDER = "org.sonarsource.pluginpackaging.JfrPackagingEvents";
+  private static final Recorder NO_RECORDER = new Recorder() {
+    @Override
+    public Object begin(PackagingEvent event) {
+      return null;
+    }
+
+    @Override
+    public boolean shouldCommit(Object recorded) {
+      return false;
+    }
+
+    @Override
+    public void commit(Object recorded, PackagingEvent event) {
+      // nothing is recorded
+    }
+  };
+  private static final Recorder RECORDER = loadRecorder();
+
+  private PackagingEvents() {
+    // only nested classes
+  }
+
+  static boolean isRecorded() {
+    return RECORDER != NO_RECORDER;
+  }
+
+  private static Recorder loadRecorder() {
+    try {
+      return (Recorder) Class.forName(JFR_RECORDER).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // not compiled, or the runtime is older than the recorder or has no jdk.jfr module
+      return NO_RECORDER;
+    }
+  }
+
+  /**
+   * Records events as Java Flight Recorder events.
+   */
+  interface Recorder {
+    /**
+     * @return the begun event recorded for the given one, null if it is not recorded
+     */
+    @CheckForNull
+    Object begin(PackagingEvent event);
+
+    boolean shouldCommit(Object recorded);
+
+    /**
+     * Copies the attributes of the given event to the recorded event, and commits it.
+     */
+    void commit(Object recorded, PackagingEvent event);
+  }
+
+  abstract static class PackagingEvent {
+    @Nullable
+    private Object recorded;
+
+    void begin() {
+      recorded = RECORDER.begin(this);
+    }
+
+    boolean shouldCommit() {
+      return recorded != null && RECORDER.shouldCommit(recorded);
+    }
+
+    void commit() {
+      if (recorded != null) {
+        RECORDER.commit(recorded, this);
+      }
+    }
+  }
+
+  static final class DependencyTree extends PackagingEvent {
+    String project;
+    int providedArtifacts;
+  }
+
+  static final class Classification extends PackagingEvent {
+    String project;
+    int includedArtifacts;
+    int providedArtifacts;
+    int packagedArtifacts;
+  }
+
+  static final class DependencyCopy extends PackagingEvent {
+    String artifact;
+    long bytes;
+    boolean staged;
+  }
+
+  static final class DirectoryScan extends PackagingEvent {
+    String directory;
+    int entries;
+    long bytes;
+  }
+
+  static final class Manifest extends PackagingEvent {
+    String project;
+    long bytes;
+  }
+
+  static final class Archive extends PackagingEvent {
+    String file;
+    int threads;
+    int entries;
+    long uncompressedBytes;
+    long compressedBytes;
+    long fileSize;
+  }
+}
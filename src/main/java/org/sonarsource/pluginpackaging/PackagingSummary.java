@@ -0,0 +1,110 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.cache.CacheStats;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Aggregation of the packaging traces of all the modules of a Maven session. The summary is rewritten after each
+ * packaging run, so that it is complete at the end of the build, including for parallel builds.
+ */
+final class PackagingSummary {
+
+  private static final Object KEY = PackagingSummary.class;
+  private static final String[] SUMMED_COUNTERS = {PackagingTrace.ENTRIES, PackagingTrace.BYTES_READ, PackagingTrace.BYTES_WRITTEN,
+    PackagingTrace.UNCOMPRESSED_BYTES, PackagingTrace.COMPRESSED_BYTES, PackagingTrace.DEPENDENCIES};
+
+  private final Map<String, PackagingTrace> traces = new TreeMap<>();
+  private Map<String, CacheStats> cacheStatistics = Collections.emptyMap();
+
+  static PackagingSummary forSession(RepositorySystemSession session) {
+    SessionData data = session.getData();
+    PackagingSummary summary = (PackagingSummary) data.get(KEY);
+    if (summary == null) {
+      // another thread may win, so always return the instance that has been stored
+      data.set(KEY, null, new PackagingSummary());
+      summary = (PackagingSummary) data.get(KEY);
+    }
+    return summary;
+  }
+
+  /**
+   * A module packaged twice in the same session, for example by several executions, is counted once.
+   */
+  synchronized void add(PackagingTrace trace) {
+    traces.put(trace.getModule() + "|" + trace.getFile(), trace);
+  }
+
+  /**
+   * Statistics of the caches, by cache name. The caches kept by the JVM accumulate the statistics of all the builds.
+   */
+  synchronized void setCacheStatistics(Map<String, CacheStats> statistics) {
+    this.cacheStatistics = new LinkedHashMap<>(statistics);
+  }
+
+  synchronized String toJson() {
+    long durationNanos = 0L;
+    int upToDate = 0;
+    long peakBufferBytes = 0L;
+    Map<String, Long> totals = new LinkedHashMap<>();
+    StringJoiner traceArray = new StringJoiner(",", "[", "]");
+    for (PackagingTrace trace : traces.values()) {
+      durationNanos += trace.getDurationNanos();
+      upToDate += trace.isUpToDate() ? 1 : 0;
+      peakBufferBytes = Math.max(peakBufferBytes, trace.getCounter(PackagingTrace.PEAK_BUFFER_BYTES));
+      for (String counter : SUMMED_COUNTERS) {
+        totals.merge(counter, trace.getCounter(counter), Long::sum);
+      }
+      traceArray.add(trace.toJson());
+    }
+    StringBuilder json = new StringBuilder()
+      .append("{\"modules\":").append(traces.size())
+      .append(",\"upToDate\":").append(upToDate)
+      .append(",\"durationMs\":").append(PackagingTrace.millis(durationNanos));
+    for (Map.Entry<String, Long> total : totals.entrySet()) {
+      json.append(",\"").append(total.getKey()).append("\":").append(total.getValue());
+    }
+    StringJoiner caches = new StringJoiner(",", "{", "}");
+    for (Map.Entry<String, CacheStats> cache : cacheStatistics.entrySet()) {
+      CacheStats stats = cache.getValue();
+      caches.add(PackagingTrace.quote(cache.getKey()) + ":{\"hits\":" + stats.hitCount() + ",\"misses\":" + stats.missCount()
+        + ",\"hitRate\":" + String.format(Locale.ROOT, "%.3f", stats.hitRate()) + ",\"evictions\":" + stats.evictionCount() + "}");
+    }
+    return json.append(",\"").append(PackagingTrace.PEAK_BUFFER_BYTES).append("\":").append(peakBufferBytes)
+      .append(",\"caches\":").append(caches)
+      .append(",\"traces\":").append(traceArray)
+      .append('}')
+      .toString();
+  }
+
+  synchronized void write(File jsonFile) throws IOException {
+    PackagingTrace.writeAtomically(jsonFile, toJson());
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings and I/O metrics of a packaging run, written as JSON in the build directory.
+ * <p>
+ * Spans measure the duration of the phases of the run, counters hold the number of entries and bytes. A trace is
+ * filled by the thread executing the mojo only.
+ */
+class PackagingTrace {
+
+  static final String ENTRIES = "entries";
+  static final String BYTES_READ = "bytesRead";
+  static final String BYTES_WRITTEN = "bytesWritten";
+  static final String UNCOMPRESSED_BYTES = "uncompressedBytes";
+  static final String COMPRESSED_BYTES = "compressedBytes";
+  static final String PEAK_BUFFER_BYTES = "peakBufferBytes";
+  static final String DEPENDENCIES = "dependencies";
+  static final String STAGED_DEPENDENCIES = "stagedDependencies";
+  static final String REUSED_ENTRIES = "reusedEntries";
+  static final String ADAPTIVELY_STORED_ENTRIES = "adaptivelyStoredEntries";
+  static final String SAMPLING_CPU_NANOS = "samplingCpuNanos";
+  static final String ESTIMATED_SAVED_CPU_NANOS = "estimatedSavedCpuNanos";
+  static final String ESTIMATED_EXTRA_BYTES = "estimatedExtraBytes";
+  static final String UNCHANGED_FILES = "unchangedFiles";
+  static final String DELETED_FILES = "deletedFiles";
+
+  private final String module;
+  private final String file;
+  private final long startNanos = System.nanoTime();
+  private final List<Span> spans = new ArrayList<>();
+  private final Map<String, Long> counters = new LinkedHashMap<>();
+  private long durationNanos = -1L;
+  private boolean upToDate = false;
+
+  PackagingTrace(String module, String file) {
+    this.module = module;
+    this.file = file;
+  }
+
+  /**
+   * Starts a span, to be closed at the end of the phase, typically with try-with-resources.
+   */
+  Span start(String name) {
+    Span span = new Span(name, System.nanoTime());
+    spans.add(span);
+    return span;
+  }
+
+  PackagingTrace count(String counter, long delta) {
+    counters.merge(counter, delta, Long::sum);
+    return this;
+  }
+
+  PackagingTrace max(String counter, long value) {
+    counters.merge(counter, value, Math::max);
+    return this;
+  }
+
+  void setUpToDate(boolean upToDate) {
+    this.upToDate = upToDate;
+  }
+
+  void finish() {
+    durationNanos = System.nanoTime() - startNanos;
+  }
+
+  String getModule() {
+    return module;
+  }
+
+  String getFile() {
+    return file;
+  }
+
+  boolean isUpToDate() {
+    return upToDate;
+  }
+
+  long getDurationNanos() {
+    return durationNanos < 0 ? System.nanoTime() - startNanos : durationNanos;
+  }
+
+  long getCounter(String counter) {
+    return counters.getOrDefault(counter, 0L);
+  }
+
+  /**
+   * @return compressed size divided by uncompressed size of the entries, 1 when there is no content
+   */
+  double getCompressionRatio() {
+    long uncompressed = getCounter(UNCOMPRESSED_BYTES);
+    return uncompressed == 0L ? 1.0 : ((double) getCounter(COMPRESSED_BYTES) / uncompressed);
+  }
+
+  String toJson() {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"module\":").append(quote(module))
+      .append(",\"file\":").append(quote(file))
+      .append(",\"upToDate\":").append(upToDate)
+      .append(",\"durationMs\":").append(millis(getDurationNanos()))
+      .append(",\"compressionRatio\":").append(String.format(Locale.ROOT, "%.4f", getCompressionRatio()))
+      .append(",\"spans\":[");
+    for (int i = 0; i < spans.size(); i++) {
+      Span span = spans.get(i);
+      json.append(i == 0 ? "" : ",")
+        .append("{\"name\":").append(quote(span.name))
+        .append(",\"startMs\":").append(millis(span.startNanos - startNanos))
+        .append(",\"durationMs\":").append(millis(span.getDurationNanos()))
+        .append('}');
+    }
+    json.append("],\"counters\":{");
+    String separator = "";
+    for (Map.Entry<String, Long> counter : counters.entrySet()) {
+      json.append(separator).append(quote(counter.getKey())).append(':').append(counter.getValue());
+      separator = ",";
+    }
+    return json.append("}}").toString();
+  }
+
+  void write(File jsonFile) throws IOException {
+    writeAtomically(jsonFile, toJson());
+  }
+
+  static void writeAtomically(File file, String content) throws IOException {
+    Path path = file.toPath();
+    Files.createDirectories(path.getParent());
+    Path temp = Files.createTempFile(path.getParent(), file.getName(), ".tmp");
+    try {
+      Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  static String quote(String value) {
+    StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  static final class Span implements AutoCloseable {
+    private final String name;
+    private final long startNanos;
+    private long endNanos = -1L;
+
+    private Span(String name, long startNanos) {
+      this.name = name;
+      this.startNanos = startNanos;
+    }
+
+    long getDurationNanos() {
+      return (endNanos < 0 ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    @Override
+    public void close() {
+      if (endNanos < 0) {
+        endNanos = System.nanoTime();
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Additional JAR file built and attached by the {@code sonar-plugin} goal, for example a plugin without its
+ * dependencies. Configured in the POM:
+ * <pre>
+ * &lt;variants&gt;
+ *   &lt;variant&gt;
+ *     &lt;classifier&gt;slim&lt;/classifier&gt;
+ *     &lt;skipDependenciesPackaging&gt;true&lt;/skipDependenciesPackaging&gt;
+ *   &lt;/variant&gt;
+ * &lt;/variants&gt;
+ * </pre>
+ * Includes and excludes default to the ones of the main JAR. The dependencies of a variant are the ones of the main
+ * JAR, minus the excluded ones.
+ */
+public class PackagingVariant {
+
+  private String classifier;
+  private String[] includes;
+  private String[] excludes;
+  private boolean skipDependenciesPackaging;
+  private String[] excludedDependencies;
+
+  @CheckForNull
+  public String getClassifier() {
+    return classifier;
+  }
+
+  public void setClassifier(String classifier) {
+    this.classifier = classifier;
+  }
+
+  @CheckForNull
+  public String[] getIncludes() {
+    return includes;
+  }
+
+  public void setIncludes(String[] includes) {
+    this.includes = includes;
+  }
+
+  @CheckForNull
+  public String[] getExcludes() {
+    return excludes;
+  }
+
+  public void setExcludes(String[] excludes) {
+    this.excludes = excludes;
+  }
+
+  public boolean isSkipDependenciesPackaging() {
+    return skipDependenciesPackaging;
+  }
+
+  public void setSkipDependenciesPackaging(boolean skipDependenciesPackaging) {
+    this.skipDependenciesPackaging = skipDependenciesPackaging;
+  }
+
+  /**
+   * @return dependencies not to package in this variant, as {@code groupId:artifactId}
+   */
+  @CheckForNull
+  public String[] getExcludedDependencies() {
+    return excludedDependencies;
+  }
+
+  public void setExcludedDependencies(String[] excludedDependencies) {
+    this.excludedDependencies = excludedDependencies;
+  }
+}
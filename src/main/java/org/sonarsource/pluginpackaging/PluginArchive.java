@@ -0,0 +1,140 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Ordered set of entries of the plugin JAR. The first entry added with a given name wins and parent directories are
+ * added automatically.
+ */
+class PluginArchive {
+
+  static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+  private static final String MANIFEST_DIR = "META-INF/";
+
+  /**
+   * {@code META-INF/} then the manifest, as expected by {@link java.util.jar.JarInputStream}, then the other entries
+   * sorted by name. Parent directories are sorted before their children.
+   */
+  private static final Comparator<PackagedEntry> CANONICAL_ORDER = Comparator
+    .comparingInt((PackagedEntry entry) -> rank(entry.getName()))
+    .thenComparing(PackagedEntry::getName);
+
+  private final Map<String, PackagedEntry> entries = new LinkedHashMap<>();
+  private final long directoryTime;
+
+  PluginArchive(long directoryTime) {
+    this.directoryTime = directoryTime;
+  }
+
+  void addDirectory(File dir, String prefix, String[] includes, String[] excludes) {
+    if (!dir.isDirectory()) {
+      return;
+    }
+    PackagingEvents.DirectoryScan event = new PackagingEvents.DirectoryScan();
+    event.begin();
+    DirectoryScanner scanner = new DirectoryScanner();
+    scanner.setBasedir(dir);
+    scanner.setIncludes(includes);
+    scanner.setExcludes(excludes);
+    scanner.addDefaultExcludes();
+    scanner.scan();
+    for (String path : scanner.getIncludedDirectories()) {
+      if (!path.isEmpty()) {
+        add(PackagedEntry.directory(prefix + toEntryName(path), directoryTime));
+      }
+    }
+    for (String path : scanner.getIncludedFiles()) {
+      String name = prefix + toEntryName(path);
+      // the manifest is generated, it can't be overridden by a file
+      if (!MANIFEST_NAME.equals(name)) {
+        add(PackagedEntry.file(name, new File(dir, path)));
+      }
+    }
+    if (event.shouldCommit()) {
+      event.directory = dir.getPath();
+      event.entries = scanner.getIncludedFiles().length;
+      for (String path : scanner.getIncludedFiles()) {
+        event.bytes += new File(dir, path).length();
+      }
+      event.commit();
+    }
+  }
+
+  void addFile(String name, File file) {
+    add(PackagedEntry.file(name, file));
+  }
+
+  void addContent(String name, byte[] content, long time) {
+    add(PackagedEntry.content(name, content, time));
+  }
+
+  boolean contains(String name) {
+    return entries.containsKey(name);
+  }
+
+  List<PackagedEntry> getEntries() {
+    return new ArrayList<>(entries.values());
+  }
+
+  /**
+   * @return the entries in an order that depends only on their names, not on the order they were added in
+   */
+  List<PackagedEntry> getCanonicalEntries() {
+    List<PackagedEntry> result = getEntries();
+    result.sort(CANONICAL_ORDER);
+    return result;
+  }
+
+  private void add(PackagedEntry entry) {
+    addParentDirectories(entry.getName());
+    entries.putIfAbsent(entry.getName(), entry);
+  }
+
+  private void addParentDirectories(String name) {
+    int end = name.endsWith("/") ? (name.length() - 1) : name.length();
+    int slash = name.lastIndexOf('/', end - 1);
+    if (slash > 0) {
+      String parent = name.substring(0, slash + 1);
+      if (!entries.containsKey(parent)) {
+        addParentDirectories(parent);
+        entries.put(parent, PackagedEntry.directory(parent, directoryTime));
+      }
+    }
+  }
+
+  private static int rank(String name) {
+    if (MANIFEST_DIR.equals(name)) {
+      return 0;
+    }
+    return MANIFEST_NAME.equals(name) ? 1 : 2;
+  }
+
+  private static String toEntryName(String path) {
+    return path.replace(File.separatorChar, '/');
+  }
+}
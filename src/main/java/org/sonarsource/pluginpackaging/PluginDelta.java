@@ -0,0 +1,423 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+
+/**
+ * Delta between two versions of a plugin JAR file, from which {@link DeltaApplier} rebuilds the new version byte for byte.
+ * <p>
+ * The records of the new ZIP file, made of the local header, the compressed data and the data descriptor, are copied
+ * from the previous file when they are unchanged. When only the header changed, for example the time of the entry, the
+ * compressed data is still copied. Libraries in {@code META-INF/lib/} are diffed entry by entry against the previous
+ * version of the same library, then compressed again with the level that gives the same bytes. Everything else,
+ * including the central directory, is part of the delta.
+ * <p>
+ * Compressing a library again only gives the same bytes with the same implementation of {@link Deflater}: a JVM built
+ * with another zlib, like zlib-ng, gives other bytes. The delta records a {@link DeltaApplier#deflaterSignature()
+ * signature} of the implementation in that case, so that applying it on another one fails before writing anything.
+ * A delta that any JVM applies is computed without recompressing libraries: compressed libraries are then part of the
+ * delta.
+ */
+class PluginDelta {
+
+  /**
+   * Compression levels to try to get the compressed data of a library again, the default one first.
+   */
+  private static final int[] LEVELS = {Deflater.DEFAULT_COMPRESSION, 9, 1, 2, 3, 4, 5, 7, 8};
+  private static final int NO_LEVEL = Integer.MIN_VALUE;
+
+  private final boolean recompressLibraries;
+  private final byte[] bytes;
+  private boolean recompressed;
+  private int unchangedEntries;
+  private int changedEntries;
+  private int diffedLibraries;
+
+  private PluginDelta(byte[] previous, byte[] current, boolean recompressLibraries) throws IOException {
+    this.recompressLibraries = recompressLibraries;
+    ByteArrayOutputStream operations = new ByteArrayOutputStream();
+    diff(previous, current, new DataOutputStream(operations), true);
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(operations.size() + 256);
+    DataOutputStream output = new DataOutputStream(buffer);
+    output.writeInt(DeltaApplier.MAGIC);
+    output.writeByte(DeltaApplier.VERSION);
+    output.write(Hashing.sha256().hashBytes(previous).asBytes());
+    output.write(Hashing.sha256().hashBytes(current).asBytes());
+    output.writeBoolean(recompressed);
+    if (recompressed) {
+      output.write(DeltaApplier.deflaterSignature());
+      output.writeUTF(DeltaApplier.runtimeName());
+    }
+    operations.writeTo(output);
+    output.flush();
+    this.bytes = buffer.toByteArray();
+  }
+
+  /**
+   * @throws IOException if a file is not a valid ZIP file
+   */
+  static PluginDelta compute(byte[] previous, byte[] current) throws IOException {
+    return compute(previous, current, true);
+  }
+
+  /**
+   * @param recompressLibraries whether compressed libraries are diffed entry by entry then compressed again, which
+   * requires the same implementation of {@link Deflater} to apply the delta
+   * @throws IOException if a file is not a valid ZIP file
+   */
+  static PluginDelta compute(byte[] previous, byte[] current, boolean recompressLibraries) throws IOException {
+    PluginDelta delta = new PluginDelta(previous, current, recompressLibraries);
+    try {
+      DeltaApplier.apply(previous, new ByteArrayInputStream(delta.bytes), ByteStreams.nullOutputStream());
+    } catch (IOException e) {
+      throw new IllegalStateException("The delta does not rebuild the plugin", e);
+    }
+    return delta;
+  }
+
+  private void diff(byte[] previous, byte[] current, DataOutputStream output, boolean countEntries) throws IOException {
+    ZipLayout previousLayout = ZipLayout.parse(previous);
+    ZipLayout currentLayout = ZipLayout.parse(current);
+    Map<HashCode, ZipLayout.Record> previousRecords = new HashMap<>();
+    Map<HashCode, ZipLayout.Record> previousData = new HashMap<>();
+    Map<String, ZipLayout.Record> previousLibraries = new HashMap<>();
+    for (ZipLayout.Record record : previousLayout.records) {
+      previousRecords.putIfAbsent(hash(previous, record.start, record.end), record);
+      if (record.dataEnd > record.dataStart) {
+        previousData.putIfAbsent(hash(previous, record.dataStart, record.dataEnd), record);
+      }
+      if (isLibrary(record.name)) {
+        previousLibraries.put(record.name, record);
+        previousLibraries.putIfAbsent(libraryStem(record.name), record);
+      }
+    }
+
+    Operations operations = new Operations(output);
+    operations.data(current, 0, currentLayout.recordsStart);
+    for (ZipLayout.Record record : currentLayout.records) {
+      ZipLayout.Record previousRecord = previousRecords.get(hash(current, record.start, record.end));
+      if (previousRecord != null) {
+        operations.copy(previousRecord.start, record.end - record.start);
+        unchangedEntries += countEntries ? 1 : 0;
+        continue;
+      }
+      changedEntries += countEntries ? 1 : 0;
+      ZipLayout.Record previousDataRecord = record.dataEnd > record.dataStart ? previousData.get(hash(current, record.dataStart, record.dataEnd)) : null;
+      operations.data(current, record.start, record.dataStart);
+      if (previousDataRecord != null) {
+        operations.copy(previousDataRecord.dataStart, record.dataEnd - record.dataStart);
+      } else if (!diffLibrary(previous, previousLibraries, current, record, operations)) {
+        operations.data(current, record.dataStart, record.dataEnd);
+      }
+      operations.data(current, record.dataEnd, record.end);
+    }
+    operations.data(current, currentLayout.recordsEnd, current.length);
+    operations.end();
+  }
+
+  private boolean diffLibrary(byte[] previous, Map<String, ZipLayout.Record> previousLibraries, byte[] current, ZipLayout.Record record,
+    Operations operations) throws IOException {
+    ZipLayout.Record previousRecord = isLibrary(record.name) ? previousLibraries.getOrDefault(record.name, previousLibraries.get(libraryStem(record.name))) : null;
+    if (previousRecord == null || !isSupported(previousRecord.method) || !isSupported(record.method)
+      || (!recompressLibraries && record.method == DeltaApplier.DEFLATED)) {
+      return false;
+    }
+    byte[] content = uncompress(current, record);
+    int level = 0;
+    if (record.method == DeltaApplier.DEFLATED) {
+      level = findLevel(content, Arrays.copyOfRange(current, record.dataStart, record.dataEnd));
+      if (level == NO_LEVEL) {
+        return false;
+      }
+    }
+    ByteArrayOutputStream nested = new ByteArrayOutputStream();
+    try {
+      diff(uncompress(previous, previousRecord), content, new DataOutputStream(nested), false);
+    } catch (IOException e) {
+      // not a valid JAR file, written as is
+      return false;
+    }
+    operations.nested(previousRecord, record.method, level, content.length, nested.toByteArray());
+    recompressed |= record.method == DeltaApplier.DEFLATED;
+    diffedLibraries++;
+    return true;
+  }
+
+  private static int findLevel(byte[] content, byte[] compressed) {
+    for (int level : LEVELS) {
+      if (Arrays.equals(DeltaApplier.deflate(content, level), compressed)) {
+        return level;
+      }
+    }
+    return NO_LEVEL;
+  }
+
+  private static byte[] uncompress(byte[] zip, ZipLayout.Record record) throws IOException {
+    int length = record.dataEnd - record.dataStart;
+    return record.method == DeltaApplier.DEFLATED ? DeltaApplier.inflate(zip, record.dataStart, length) : Arrays.copyOfRange(zip, record.dataStart, record.dataEnd);
+  }
+
+  private static boolean isSupported(int method) {
+    return method == DeltaApplier.STORED || method == DeltaApplier.DEFLATED;
+  }
+
+  private static boolean isLibrary(String name) {
+    return name.startsWith(SonarPluginMojo.LIB_DIR) && name.endsWith(".jar");
+  }
+
+  /**
+   * The name of a library without its version, to diff it against its previous version.
+   */
+  static String libraryStem(String name) {
+    return name.replaceFirst("-\\d[^/]*\\.jar$", "");
+  }
+
+  private static HashCode hash(byte[] bytes, int start, int end) {
+    return Hashing.sha256().hashBytes(bytes, start, end - start);
+  }
+
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  int getUnchangedEntries() {
+    return unchangedEntries;
+  }
+
+  int getChangedEntries() {
+    return changedEntries;
+  }
+
+  int getDiffedLibraries() {
+    return diffedLibraries;
+  }
+
+  /**
+   * Writes an executable JAR file made of the delta and of {@link DeltaApplier}.
+   */
+  void writeArchive(File file) throws IOException {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, DeltaApplier.class.getName());
+    String applierName = DeltaApplier.class.getName().replace('.', '/') + ".class";
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(file.toPath()), manifest);
+      InputStream applier = DeltaApplier.class.getResourceAsStream("/" + applierName)) {
+      if (applier == null) {
+        throw new IOException("Class not found: " + applierName);
+      }
+      output.putNextEntry(new JarEntry(applierName));
+      ByteStreams.copy(applier, output);
+      output.putNextEntry(new JarEntry(DeltaApplier.DELTA_ENTRY));
+      output.write(bytes);
+    }
+  }
+
+  /**
+   * Writes the operations of the delta, merging consecutive data and consecutive copies.
+   */
+  private static class Operations {
+    private final DataOutputStream output;
+    private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    private int copyOffset;
+    private int copyLength;
+
+    Operations(DataOutputStream output) {
+      this.output = output;
+    }
+
+    void data(byte[] bytes, int start, int end) throws IOException {
+      if (end > start) {
+        flushCopy();
+        data.write(bytes, start, end - start);
+      }
+    }
+
+    void copy(int offset, int length) throws IOException {
+      flushData();
+      if (copyLength > 0 && copyOffset + copyLength == offset) {
+        copyLength += length;
+        return;
+      }
+      flushCopy();
+      copyOffset = offset;
+      copyLength = length;
+    }
+
+    void nested(ZipLayout.Record previousRecord, int method, int level, int size, byte[] operations) throws IOException {
+      flush();
+      output.writeByte(DeltaApplier.NESTED);
+      output.writeInt(previousRecord.dataStart);
+      output.writeInt(previousRecord.dataEnd - previousRecord.dataStart);
+      output.writeByte(previousRecord.method);
+      output.writeByte(method);
+      output.writeByte(level);
+      output.writeInt(size);
+      output.write(operations);
+    }
+
+    void end() throws IOException {
+      flush();
+      output.writeByte(DeltaApplier.END);
+    }
+
+    private void flush() throws IOException {
+      flushData();
+      flushCopy();
+    }
+
+    private void flushData() throws IOException {
+      if (data.size() > 0) {
+        output.writeByte(DeltaApplier.DATA);
+        output.writeInt(data.size());
+        data.writeTo(output);
+        data.reset();
+      }
+    }
+
+    private void flushCopy() throws IOException {
+      if (copyLength > 0) {
+        output.writeByte(DeltaApplier.COPY);
+        output.writeInt(copyOffset);
+        output.writeInt(copyLength);
+        copyLength = 0;
+      }
+    }
+  }
+
+  /**
+   * Position of the records of a ZIP file, read from its central directory.
+   */
+  private static class ZipLayout {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+    private final List<Record> records;
+    private final int recordsStart;
+    private final int recordsEnd;
+
+    private ZipLayout(List<Record> records, int recordsStart, int recordsEnd) {
+      this.records = records;
+      this.recordsStart = recordsStart;
+      this.recordsEnd = recordsEnd;
+    }
+
+    static ZipLayout parse(byte[] zip) throws IOException {
+      int end = findEndOfCentralDirectory(zip);
+      int count = readShort(zip, end + 10);
+      long centralDirectory = readInt(zip, end + 16);
+      if (count == 0xFFFF || centralDirectory == ZIP64_MARKER) {
+        throw new IOException("ZIP64 files are not supported");
+      }
+      List<Record> records = new ArrayList<>(count);
+      int position = (int) centralDirectory;
+      for (int i = 0; i < count; i++) {
+        check(zip, position, 46, CENTRAL_HEADER);
+        int method = readShort(zip, position + 10);
+        long compressedSize = readInt(zip, position + 20);
+        int nameLength = readShort(zip, position + 28);
+        long localHeader = readInt(zip, position + 42);
+        if (compressedSize == ZIP64_MARKER || localHeader == ZIP64_MARKER) {
+          throw new IOException("ZIP64 files are not supported");
+        }
+        String name = new String(zip, position + 46, nameLength, StandardCharsets.UTF_8);
+        int start = (int) localHeader;
+        check(zip, start, 30, LOCAL_HEADER);
+        int dataStart = start + 30 + readShort(zip, start + 26) + readShort(zip, start + 28);
+        records.add(new Record(name, method, start, dataStart, (int) (dataStart + compressedSize)));
+        position += 46 + nameLength + readShort(zip, position + 30) + readShort(zip, position + 32);
+      }
+      records.sort((a, b) -> Integer.compare(a.start, b.start));
+      for (int i = 0; i < records.size(); i++) {
+        Record record = records.get(i);
+        record.end = i + 1 < records.size() ? records.get(i + 1).start : (int) centralDirectory;
+        if (record.dataEnd > record.end) {
+          throw new IOException("Invalid size of entry " + record.name);
+        }
+      }
+      return new ZipLayout(records, records.isEmpty() ? (int) centralDirectory : records.get(0).start, (int) centralDirectory);
+    }
+
+    private static int findEndOfCentralDirectory(byte[] zip) throws IOException {
+      int last = zip.length - END_OF_CENTRAL_DIRECTORY_SIZE;
+      for (int position = last; position >= 0 && position >= last - 0xFFFF; position--) {
+        if (readInt(zip, position) == END_OF_CENTRAL_DIRECTORY) {
+          return position;
+        }
+      }
+      throw new IOException("Not a ZIP file");
+    }
+
+    private static void check(byte[] zip, int position, int size, int signature) throws IOException {
+      if (position < 0 || position > zip.length - size || readInt(zip, position) != signature) {
+        throw new IOException("Invalid ZIP file");
+      }
+    }
+
+    private static int readShort(byte[] zip, int position) {
+      return (zip[position] & 0xFF) | ((zip[position + 1] & 0xFF) << 8);
+    }
+
+    private static long readInt(byte[] zip, int position) {
+      return readShort(zip, position) | ((long) readShort(zip, position + 2) << 16);
+    }
+
+    private static class Record {
+      private final String name;
+      private final int method;
+      private final int start;
+      private final int dataStart;
+      private final int dataEnd;
+      private int end;
+
+      private Record(String name, int method, int start, int dataStart, int dataEnd) {
+        this.name = name;
+        this.method = method;
+        this.start = start;
+        this.dataStart = dataStart;
+        this.dataEnd = dataEnd;
+      }
+    }
+  }
+}
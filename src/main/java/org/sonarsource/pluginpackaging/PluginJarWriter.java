@@ -0,0 +1,638 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.compress.archivers.zip.ResourceAlignmentExtraField;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Writes a JAR file whose entries are compressed concurrently by a bounded pool of threads.
+ * <p>
+ * Entries are deflated independently from each other, then appended to the file in the order they are given,
+ * so the output does not depend on the number of threads. The number of entries waiting to be written is bounded,
+ * as well as the size of their content, in order to keep memory usage under control. Entries backed by a big file are
+ * not read in memory: they are deflated while being written, by the thread writing the file, once the entries before
+ * them are written.
+ */
+class PluginJarWriter {
+
+  private static final long MAX_PENDING_BYTES = 64L * 1024 * 1024;
+  private static final long DEFAULT_STREAMING_THRESHOLD = MAX_PENDING_BYTES / 8;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  static final int ALIGNMENT = 4096;
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+  private static final int FILE_MODE = 0100644;
+  private static final int DIRECTORY_MODE = 040755;
+  /**
+   * Earliest time that fits in the DOS date and time fields of ZIP headers. Earlier times would require extra fields.
+   */
+  private static final long MIN_DOS_TIME = Instant.parse("1980-01-01T00:00:00Z").toEpochMilli();
+
+  private final int threads;
+  private final int level;
+  private Predicate<String> storedEntries = name -> false;
+  private Predicate<String> alignedEntries = name -> false;
+  private boolean reproducible = false;
+  private long streamingThreshold = DEFAULT_STREAMING_THRESHOLD;
+  @Nullable
+  private CompressionPolicy compressionPolicy;
+  @Nullable
+  private File reusedJar;
+  private final Map<String, String> reusedEntries = new HashMap<>();
+
+  /**
+   * @param threads number of compression threads, at least one
+   * @param level deflate level, {@link Deflater#NO_COMPRESSION} to store entries
+   */
+  PluginJarWriter(int threads, int level) {
+    checkArgument(threads > 0, "Number of packaging threads must be positive: %s", threads);
+    this.threads = threads;
+    this.level = level;
+  }
+
+  /**
+   * Entries to store uncompressed, whatever the compression level.
+   */
+  PluginJarWriter store(Predicate<String> entryNames) {
+    this.storedEntries = entryNames;
+    return this;
+  }
+
+  /**
+   * Entries to store uncompressed, with their data aligned on {@value #ALIGNMENT} bytes so that they can be
+   * memory-mapped in place. Padding is written in a {@link ResourceAlignmentExtraField} of the local file header.
+   */
+  PluginJarWriter align(Predicate<String> entryNames) {
+    this.alignedEntries = entryNames;
+    return this;
+  }
+
+  /**
+   * Chooses the compression of each entry with the given policy instead of deflating all of them at the level of the
+   * writer. Stored and aligned entries are not subject to the policy, nor are the entries of a writer that does not
+   * compress.
+   */
+  PluginJarWriter compression(CompressionPolicy policy) {
+    this.compressionPolicy = policy;
+    return this;
+  }
+
+  /**
+   * Entries backed by a file bigger than the given size are streamed to the JAR file instead of being compressed
+   * concurrently. Defaults to {@value #DEFAULT_STREAMING_THRESHOLD} bytes.
+   */
+  PluginJarWriter streamAbove(long size) {
+    this.streamingThreshold = size;
+    return this;
+  }
+
+  /**
+   * Normalizes the metadata of entries so that the file does not depend on the machine it is written on: times are
+   * written in UTC whatever the default time zone, and clamped to the DOS range so that no extended timestamp extra
+   * field is added, and permissions are {@code rw-r--r--} for files and {@code rwxr-xr-x} for directories.
+   */
+  PluginJarWriter reproducible() {
+    this.reproducible = true;
+    return this;
+  }
+
+  /**
+   * Entries that are the same as the ones of a JAR file written by this writer, with the same options, are copied from
+   * it instead of being compressed again. For example, the classes shared by several variants of a plugin are
+   * compressed only once.
+   *
+   * @param writtenEntries entries given to {@link #write(File, List)} to write the JAR file
+   */
+  PluginJarWriter reuse(File jarFile, List<PackagedEntry> writtenEntries) {
+    Map<String, String> keys = new HashMap<>();
+    for (PackagedEntry entry : writtenEntries) {
+      keys.put(entry.getName(), entry.getKey());
+    }
+    return reuse(jarFile, keys);
+  }
+
+  /**
+   * @param writtenKeys {@link PackagedEntry#getKey() keys} of the entries written in the JAR file, by entry name
+   */
+  PluginJarWriter reuse(File jarFile, Map<String, String> writtenKeys) {
+    this.reusedJar = jarFile;
+    this.reusedEntries.clear();
+    this.reusedEntries.putAll(writtenKeys);
+    return this;
+  }
+
+  Statistics write(File jarFile, List<PackagedEntry> entries) throws IOException {
+    File tempFile = new File(jarFile.getParentFile(), jarFile.getName() + ".tmp");
+    Files.createDirectories(jarFile.getParentFile().toPath());
+    PackagingEvents.Archive event = new PackagingEvents.Archive();
+    event.begin();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      Statistics statistics = writeEntries(tempFile, entries, executor);
+      Files.move(tempFile.toPath(), jarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      statistics.fileSize = jarFile.length();
+      if (event.shouldCommit()) {
+        event.file = jarFile.getPath();
+        event.threads = threads;
+        event.entries = statistics.entries;
+        event.uncompressedBytes = statistics.uncompressedBytes;
+        event.compressedBytes = statistics.compressedBytes;
+        event.fileSize = statistics.fileSize;
+        event.commit();
+      }
+      return statistics;
+    } finally {
+      executor.shutdownNow();
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  private Statistics writeEntries(File file, List<PackagedEntry> entries, ExecutorService executor) throws IOException {
+    Statistics statistics = new Statistics();
+    try (ZipFile reused = reusedJar == null ? null : ZipFile.builder().setFile(reusedJar).get();
+      ZipArchiveOutputStream output = new ZipArchiveOutputStream(file)) {
+      output.setUseZip64(Zip64Mode.AsNeeded);
+      Deque<Pending> pendings = new ArrayDeque<>();
+      long pendingBytes = 0L;
+      for (PackagedEntry entry : entries) {
+        if (entry.getFile() != null && entry.getSize() > streamingThreshold) {
+          while (!pendings.isEmpty()) {
+            Pending head = pendings.removeFirst();
+            pendingBytes -= head.size;
+            writeEntry(output, head, statistics);
+          }
+          stream(output, reused, entry, statistics);
+          continue;
+        }
+        while (!pendings.isEmpty() && (pendings.size() >= 2 * threads || pendingBytes + entry.getSize() > MAX_PENDING_BYTES)) {
+          Pending head = pendings.removeFirst();
+          pendingBytes -= head.size;
+          writeEntry(output, head, statistics);
+        }
+        ZipArchiveEntry reusedEntry = findReusedEntry(reused, entry);
+        Callable<CompressedEntry> task;
+        if (reusedEntry == null) {
+          task = () -> compress(entry);
+        } else {
+          task = () -> copy(reused, reusedEntry, entry);
+        }
+        pendings.addLast(new Pending(entry.getSize(), executor.submit(task)));
+        pendingBytes += entry.getSize();
+        statistics.peakPendingBytes = Math.max(statistics.peakPendingBytes, pendingBytes);
+      }
+      while (!pendings.isEmpty()) {
+        writeEntry(output, pendings.removeFirst(), statistics);
+      }
+    }
+    return statistics;
+  }
+
+  private static void writeEntry(ZipArchiveOutputStream output, Pending pending, Statistics statistics) throws IOException {
+    CompressedEntry compressed;
+    try {
+      compressed = pending.future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing JAR entries");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    writeEntry(output, compressed, statistics);
+  }
+
+  private static void writeEntry(ZipArchiveOutputStream output, CompressedEntry compressed, Statistics statistics) throws IOException {
+    long dataOffset = addRawEntry(output, compressed.entry, new ByteArrayInputStream(compressed.data), compressed.aligned);
+    if (compressed.aligned) {
+      statistics.alignedOffsets.put(compressed.entry.getName(), dataOffset);
+    }
+    statistics.add(compressed.entry, compressed.reused, compressed.decision);
+  }
+
+  /**
+   * Writes an entry backed by a file without reading the file in memory. As when entries are compressed concurrently,
+   * the content of a reused entry is checked against its CRC before its compressed data is copied.
+   */
+  private void stream(ZipArchiveOutputStream output, @Nullable ZipFile reused, PackagedEntry entry, Statistics statistics) throws IOException {
+    File file = entry.getFile();
+    boolean aligned = alignedEntries.test(entry.getName());
+    ZipArchiveEntry reusedEntry = findReusedEntry(reused, entry);
+    if (reused != null && reusedEntry != null && file.length() == reusedEntry.getSize() && crc(file) == reusedEntry.getCrc()) {
+      ZipArchiveEntry copied = new ZipArchiveEntry(reusedEntry);
+      try (InputStream data = reused.getRawInputStream(reusedEntry)) {
+        long dataOffset = addRawEntry(output, copied, data, aligned);
+        if (aligned) {
+          statistics.alignedOffsets.put(copied.getName(), dataOffset);
+        }
+      }
+      statistics.add(copied, true, null);
+      return;
+    }
+    ZipArchiveEntry zipEntry = newEntry(entry);
+    int entryLevel = level;
+    CompressionPolicy.Decision decision = null;
+    if (aligned || storedEntries.test(entry.getName())) {
+      entryLevel = Deflater.NO_COMPRESSION;
+    } else if (level != Deflater.NO_COMPRESSION && compressionPolicy != null) {
+      decision = compressionPolicy.decide(entry.getName(), file, level);
+      entryLevel = decision.getLevel();
+    }
+    if (entryLevel == Deflater.NO_COMPRESSION) {
+      zipEntry.setMethod(ZipEntry.STORED);
+      zipEntry.setSize(file.length());
+      zipEntry.setCompressedSize(file.length());
+      zipEntry.setCrc(crc(file));
+      try (InputStream data = Files.newInputStream(file.toPath())) {
+        long dataOffset = addRawEntry(output, zipEntry, data, aligned);
+        if (aligned) {
+          statistics.alignedOffsets.put(zipEntry.getName(), dataOffset);
+        }
+      }
+    } else {
+      zipEntry.setMethod(ZipEntry.DEFLATED);
+      zipEntry.setSize(file.length());
+      output.setLevel(entryLevel);
+      output.putArchiveEntry(zipEntry);
+      Files.copy(file.toPath(), output);
+      output.closeArchiveEntry();
+    }
+    statistics.add(zipEntry, false, decision);
+  }
+
+  /**
+   * @return offset of the data of the entry in the file
+   */
+  private static long addRawEntry(ZipArchiveOutputStream output, ZipArchiveEntry entry, InputStream data, boolean aligned) throws IOException {
+    long headerOffset = output.getBytesWritten() + LOCAL_FILE_HEADER_SIZE + entry.getName().getBytes(StandardCharsets.UTF_8).length;
+    if (aligned) {
+      if (entry.getExtraField(ResourceAlignmentExtraField.ID) != null) {
+        entry.removeExtraField(ResourceAlignmentExtraField.ID);
+      }
+      entry.addExtraField(new ResourceAlignmentExtraField(ALIGNMENT, false, 0));
+      long unalignedOffset = headerOffset + entry.getLocalFileDataExtra().length;
+      int padding = (int) ((ALIGNMENT - unalignedOffset % ALIGNMENT) % ALIGNMENT);
+      entry.addExtraField(new ResourceAlignmentExtraField(ALIGNMENT, false, padding));
+    }
+    long dataOffset = headerOffset + entry.getLocalFileDataExtra().length;
+    output.addRawArchiveEntry(entry, data);
+    return dataOffset;
+  }
+
+  /**
+   * Replaces an entry of an existing JAR file. Other entries are copied without being compressed again, and aligned
+   * entries stay aligned. When the replacement has the same name and size as the replaced entry, all the other entries
+   * keep their offset.
+   */
+  Statistics replace(File jarFile, PackagedEntry replacement) throws IOException {
+    File tempFile = new File(jarFile.getParentFile(), jarFile.getName() + ".tmp");
+    Statistics statistics = new Statistics();
+    try {
+      try (ZipFile source = ZipFile.builder().setFile(jarFile).get();
+        ZipArchiveOutputStream output = new ZipArchiveOutputStream(tempFile)) {
+        output.setUseZip64(Zip64Mode.AsNeeded);
+        for (ZipArchiveEntry entry : Collections.list(source.getEntriesInPhysicalOrder())) {
+          if (entry.getName().equals(replacement.getName())) {
+            writeEntry(output, compress(replacement), statistics);
+          } else {
+            boolean aligned = entry.getExtraField(ResourceAlignmentExtraField.ID) != null;
+            try (InputStream data = source.getRawInputStream(entry)) {
+              long dataOffset = addRawEntry(output, entry, data, aligned);
+              if (aligned) {
+                statistics.alignedOffsets.put(entry.getName(), dataOffset);
+              }
+            }
+            statistics.add(entry, false, null);
+          }
+        }
+      }
+      Files.move(tempFile.toPath(), jarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      statistics.fileSize = jarFile.length();
+      return statistics;
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  @CheckForNull
+  private ZipArchiveEntry findReusedEntry(@Nullable ZipFile reused, PackagedEntry entry) {
+    String writtenKey = reusedEntries.get(entry.getName());
+    if (reused == null || writtenKey == null || !writtenKey.equals(entry.getKey())) {
+      return null;
+    }
+    return reused.getEntry(entry.getName());
+  }
+
+  /**
+   * The key of an entry backed by a file does not depend on its content, which may have changed without changing its
+   * length nor its time, for example when it is rebuilt quickly or restored with its time. The content is checked
+   * against the CRC of the reused entry, which is cheaper than compressing it again.
+   */
+  private CompressedEntry copy(ZipFile reused, ZipArchiveEntry reusedEntry, PackagedEntry entry) throws IOException {
+    if (entry.getFile() != null) {
+      byte[] content = entry.readContent();
+      if (content.length != reusedEntry.getSize() || crc(content) != reusedEntry.getCrc()) {
+        return compress(entry, content);
+      }
+    }
+    byte[] data;
+    try (InputStream input = reused.getRawInputStream(reusedEntry)) {
+      data = ByteStreams.toByteArray(input);
+    }
+    CompressedEntry copied = new CompressedEntry(new ZipArchiveEntry(reusedEntry), data);
+    copied.aligned = alignedEntries.test(reusedEntry.getName());
+    copied.reused = true;
+    return copied;
+  }
+
+  private CompressedEntry compress(PackagedEntry entry) throws IOException {
+    return compress(entry, null);
+  }
+
+  private CompressedEntry compress(PackagedEntry entry, @Nullable byte[] readContent) throws IOException {
+    ZipArchiveEntry zipEntry = newEntry(entry);
+    if (entry.isDirectory()) {
+      return stored(zipEntry, new byte[0]);
+    }
+    byte[] content = readContent == null ? entry.readContent() : readContent;
+    if (alignedEntries.test(entry.getName())) {
+      CompressedEntry stored = stored(zipEntry, content);
+      stored.aligned = true;
+      return stored;
+    }
+    if (level == Deflater.NO_COMPRESSION || storedEntries.test(entry.getName())) {
+      return stored(zipEntry, content);
+    }
+    if (compressionPolicy == null) {
+      return deflated(zipEntry, content, level);
+    }
+    CompressionPolicy.Decision decision = compressionPolicy.decide(entry.getName(), content, level);
+    CompressedEntry compressed = decision.getLevel() == Deflater.NO_COMPRESSION
+      ? stored(zipEntry, content)
+      : deflated(zipEntry, content, decision.getLevel(), decision.getDeflatedContent());
+    compressed.decision = decision;
+    return compressed;
+  }
+
+  private ZipArchiveEntry newEntry(PackagedEntry entry) {
+    ZipArchiveEntry zipEntry = new ZipArchiveEntry(entry.getName());
+    if (reproducible) {
+      zipEntry.setTime(toUtcDosTime(entry.getTime()));
+      zipEntry.setUnixMode(entry.isDirectory() ? DIRECTORY_MODE : FILE_MODE);
+    } else {
+      zipEntry.setTime(entry.getTime());
+    }
+    return zipEntry;
+  }
+
+  private static CompressedEntry deflated(ZipArchiveEntry zipEntry, byte[] content, int level) {
+    return deflated(zipEntry, content, level, null);
+  }
+
+  /**
+   * @param deflatedContent the content already deflated at this level, if any
+   */
+  private static CompressedEntry deflated(ZipArchiveEntry zipEntry, byte[] content, int level, @Nullable byte[] deflatedContent) {
+    zipEntry.setMethod(ZipEntry.DEFLATED);
+    zipEntry.setSize(content.length);
+    zipEntry.setCrc(crc(content));
+    byte[] deflated = deflatedContent == null ? deflate(content, level) : deflatedContent;
+    zipEntry.setCompressedSize(deflated.length);
+    return new CompressedEntry(zipEntry, deflated);
+  }
+
+  private static CompressedEntry stored(ZipArchiveEntry zipEntry, byte[] content) {
+    zipEntry.setMethod(ZipEntry.STORED);
+    zipEntry.setSize(content.length);
+    zipEntry.setCompressedSize(content.length);
+    zipEntry.setCrc(crc(content));
+    return new CompressedEntry(zipEntry, content);
+  }
+
+  /**
+   * ZIP headers store the local date and time of the default time zone. Returns the time whose local date and time
+   * are the UTC date and time of the given time.
+   */
+  static long toUtcDosTime(long time) {
+    LocalDateTime utc = LocalDateTime.ofInstant(Instant.ofEpochMilli(Math.max(time, MIN_DOS_TIME)), ZoneOffset.UTC);
+    return utc.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
+  static long crc(byte[] content) {
+    CRC32 crc = new CRC32();
+    crc.update(content, 0, content.length);
+    return crc.getValue();
+  }
+
+  static long crc(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    try (InputStream input = Files.newInputStream(file.toPath())) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int count;
+      while ((count = input.read(buffer)) != -1) {
+        crc.update(buffer, 0, count);
+      }
+    }
+    return crc.getValue();
+  }
+
+  static byte[] deflate(byte[] content, int level) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      deflater.setInput(content);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2 + 64);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Metrics of a written JAR file. The pending bytes are the size of the content of the entries being compressed or
+   * waiting to be written, that is to say the memory used by the buffers of the writer. Streamed entries are not
+   * pending.
+   */
+  static class Statistics {
+    private int entries;
+    private long uncompressedBytes;
+    private long compressedBytes;
+    private long peakPendingBytes;
+    private long fileSize;
+    private int reusedEntries;
+    private int adaptivelyStoredEntries;
+    private long adaptivelyStoredBytes;
+    private long samplingNanos;
+    private long estimatedSavedNanos;
+    private long estimatedExtraBytes;
+    private final Map<String, Long> alignedOffsets = new LinkedHashMap<>();
+
+    private void add(ZipArchiveEntry entry, boolean reused, @Nullable CompressionPolicy.Decision decision) {
+      entries++;
+      reusedEntries += reused ? 1 : 0;
+      uncompressedBytes += entry.getSize();
+      compressedBytes += entry.getCompressedSize();
+      if (decision != null) {
+        samplingNanos += decision.getSamplingNanos();
+        if (decision.isAdaptivelyStored()) {
+          adaptivelyStoredEntries++;
+          adaptivelyStoredBytes += entry.getCompressedSize();
+          estimatedSavedNanos += decision.getEstimatedSavedNanos();
+          estimatedExtraBytes += decision.getEstimatedExtraBytes();
+        }
+      }
+    }
+
+    int getEntries() {
+      return entries;
+    }
+
+    /**
+     * @return number of entries copied from the JAR file given to {@link #reuse(File, List)}
+     */
+    int getReusedEntries() {
+      return reusedEntries;
+    }
+
+    /**
+     * @return number of entries stored because their sample was not reduced enough by the compression policy
+     */
+    int getAdaptivelyStoredEntries() {
+      return adaptivelyStoredEntries;
+    }
+
+    long getAdaptivelyStoredBytes() {
+      return adaptivelyStoredBytes;
+    }
+
+    /**
+     * @return CPU time spent deflating the samples of entries
+     */
+    long getSamplingNanos() {
+      return samplingNanos;
+    }
+
+    /**
+     * @return CPU time that deflating the adaptively stored entries would have taken
+     */
+    long getEstimatedSavedNanos() {
+      return estimatedSavedNanos;
+    }
+
+    /**
+     * @return number of bytes that deflating the adaptively stored entries would have saved
+     */
+    long getEstimatedExtraBytes() {
+      return estimatedExtraBytes;
+    }
+
+    long getUncompressedBytes() {
+      return uncompressedBytes;
+    }
+
+    long getCompressedBytes() {
+      return compressedBytes;
+    }
+
+    long getPeakPendingBytes() {
+      return peakPendingBytes;
+    }
+
+    long getFileSize() {
+      return fileSize;
+    }
+
+    /**
+     * @return offsets of the data of the aligned entries, by entry name
+     */
+    Map<String, Long> getAlignedOffsets() {
+      return alignedOffsets;
+    }
+  }
+
+  private static class Pending {
+    private final long size;
+    private final Future<CompressedEntry> future;
+
+    private Pending(long size, Future<CompressedEntry> future) {
+      this.size = size;
+      this.future = future;
+    }
+  }
+
+  private static class CompressedEntry {
+    private final ZipArchiveEntry entry;
+    private final byte[] data;
+    private boolean aligned = false;
+    private boolean reused = false;
+    @Nullable
+    private CompressionPolicy.Decision decision;
+
+    private CompressedEntry(ZipArchiveEntry entry, byte[] data) {
+      this.entry = entry;
+      this.data = data;
+    }
+  }
+}
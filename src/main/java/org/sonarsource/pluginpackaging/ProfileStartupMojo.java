@@ -0,0 +1,85 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import static java.lang.String.format;
+
+/**
+ * Instantiate the entry-point class of the packaged plugin in an isolated classloader, like the server does, and report
+ * the classes loaded, the time spent in static initializers and the classes that are the longest to load. The plugin
+ * API is the only library visible from the plugin, so the goal also detects classes that are missing at runtime.
+ * <p>
+ * The entries read meanwhile are written in {@code sonar-packaging/<jar>.load-order}, which can be given to the
+ * {@code loadOrder} parameter of the packaging to write them first.
+ */
+@Mojo(name = "profile-startup", requiresDependencyResolution = ResolutionScope.RUNTIME, threadSafe = true)
+public class ProfileStartupMojo extends AbstractSonarMojo {
+
+  /**
+   * Number of the classes that are the longest to load to report.
+   */
+  @Parameter(property = "sonar.packaging.profiledClasses", defaultValue = "10")
+  private int profiledClasses;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    File jarFile = SonarPluginMojo.getJarFile(getOutputDirectory(), getFinalName(), getClassifier());
+    if (!jarFile.isFile()) {
+      throw new MojoFailureException(format("Plugin not found: %s. Package it first.", jarFile));
+    }
+    Artifact pluginApi = getNullablePluginApiArtifact();
+    if (pluginApi == null || pluginApi.getFile() == null) {
+      throw new MojoFailureException("The plugin API must be a resolved dependency of the project to profile the plugin startup");
+    }
+    File workDir = new File(getOutputDirectory(), SonarPluginMojo.WORK_DIR + "startup/" + jarFile.getName());
+    File reportFile = new File(getOutputDirectory(), SonarPluginMojo.WORK_DIR + jarFile.getName() + ".startup.json");
+    StartupProfile profile;
+    try {
+      profile = StartupProfile.run(jarFile, workDir, Collections.singletonList(pluginApi.getFile()));
+      PackagingTrace.writeAtomically(reportFile, profile.toJson(profiledClasses));
+      LoadOrder.write(new File(getOutputDirectory(), SonarPluginMojo.WORK_DIR + jarFile.getName() + ".load-order"), profile.getStartupEntries());
+    } catch (IOException e) {
+      throw new MojoExecutionException("Fail to profile the startup of " + jarFile, e);
+    } catch (IllegalStateException e) {
+      throw new MojoFailureException(e.getMessage(), e);
+    }
+
+    getLog().info(format("Startup of %s (%s classloader): %d ms loading %d classes, %d ms in static initializers, %d ms in the constructor. See %s",
+      profile.getPluginClass(), profile.isChildFirst() ? "child-first" : "parent-first", profile.getLoadNanos() / 1_000_000,
+      profile.getLoadedClasses().size(), profile.getStaticInitNanos() / 1_000_000, profile.getConstructorNanos() / 1_000_000, reportFile));
+    for (Map.Entry<String, Integer> entry : profile.getClassesBySource().entrySet()) {
+      getLog().info(format("  %s: %d classes", entry.getKey(), entry.getValue()));
+    }
+    for (StartupProfile.LoadedClass loadedClass : profile.getHeaviestClasses(profiledClasses)) {
+      getLog().info(format("  %s (%s): %s ms", loadedClass.getName(), loadedClass.getSource(), PackagingTrace.millis(loadedClass.getLoadNanos())));
+    }
+  }
+}
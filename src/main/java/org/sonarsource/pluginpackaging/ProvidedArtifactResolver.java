@@ -0,0 +1,147 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+
+/**
+ * Finds the dependencies that are provided at runtime by the legacy SonarQube API, that is to say all the artifacts
+ * that are transitive dependencies of an artifact of group {@value #LEGACY_SONAR_GROUP_ID}.
+ * <p>
+ * The dependency graph is collected only when such an artifact is part of the resolved dependencies. Test and
+ * provided dependencies are pruned before being expanded, and artifacts omitted by conflict resolution are kept,
+ * as they were by the Maven 2 dependency tree used before. Provided artifacts are indexed by groupId and artifactId.
+ */
+class ProvidedArtifactResolver {
+
+  static final String LEGACY_SONAR_GROUP_ID = "org.codehaus.sonar";
+
+  private final RepositorySystem repositorySystem;
+
+  ProvidedArtifactResolver(RepositorySystem repositorySystem) {
+    this.repositorySystem = repositorySystem;
+  }
+
+  /**
+   * @return keys of the provided artifacts, see {@link #key(Artifact)}
+   */
+  Set<String> resolve(MavenProject project, RepositorySystemSession session) throws DependencyCollectionException {
+    if (!dependsOnLegacyApi(project.getArtifacts())) {
+      return Collections.emptySet();
+    }
+    DefaultRepositorySystemSession verboseSession = new DefaultRepositorySystemSession(session);
+    verboseSession.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, true);
+    ArtifactTypeRegistry typeRegistry = session.getArtifactTypeRegistry();
+
+    CollectRequest request = new CollectRequest();
+    request.setRootArtifact(RepositoryUtils.toArtifact(project.getArtifact()));
+    request.setRepositories(project.getRemoteProjectRepositories());
+    for (Dependency dependency : project.getDependencies()) {
+      if (isRuntimeScope(dependency.getScope())) {
+        request.addDependency(RepositoryUtils.toDependency(dependency, typeRegistry));
+      }
+    }
+    if (project.getDependencyManagement() != null) {
+      for (Dependency dependency : project.getDependencyManagement().getDependencies()) {
+        request.addManagedDependency(RepositoryUtils.toDependency(dependency, typeRegistry));
+      }
+    }
+    PackagingEvents.DependencyTree event = new PackagingEvents.DependencyTree();
+    event.begin();
+    DependencyNode root = repositorySystem.collectDependencies(verboseSession, request).getRoot();
+    Set<String> provided = collectProvided(root);
+    if (event.shouldCommit()) {
+      event.project = project.getId();
+      event.providedArtifacts = provided.size();
+      event.commit();
+    }
+    return provided;
+  }
+
+  static boolean dependsOnLegacyApi(Collection<Artifact> artifacts) {
+    for (Artifact artifact : artifacts) {
+      if (LEGACY_SONAR_GROUP_ID.equals(artifact.getGroupId())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static Set<String> collectProvided(DependencyNode root) {
+    Set<String> result = new HashSet<>();
+    Set<DependencyNode> visitedAsProvided = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<DependencyNode> visitedAsNotProvided = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<DependencyNode> nodes = new ArrayDeque<>();
+    Deque<Boolean> parentProvided = new ArrayDeque<>();
+    for (DependencyNode child : root.getChildren()) {
+      nodes.push(child);
+      parentProvided.push(false);
+    }
+    while (!nodes.isEmpty()) {
+      DependencyNode node = nodes.pop();
+      boolean isParentProvided = parentProvided.pop();
+      org.eclipse.aether.artifact.Artifact artifact = node.getArtifact();
+      boolean provided = isParentProvided || LEGACY_SONAR_GROUP_ID.equals(artifact.getGroupId());
+      // nodes can be shared in the graph, but they need to be visited only once in each state
+      Set<DependencyNode> visited = provided ? visitedAsProvided : visitedAsNotProvided;
+      if (isTestScope(node) || !visited.add(node)) {
+        continue;
+      }
+      if (provided) {
+        result.add(artifact.getGroupId() + ":" + artifact.getArtifactId());
+      }
+      for (DependencyNode child : node.getChildren()) {
+        nodes.push(child);
+        parentProvided.push(provided);
+      }
+    }
+    return result;
+  }
+
+  private static boolean isTestScope(DependencyNode node) {
+    return node.getDependency() != null && Artifact.SCOPE_TEST.equals(node.getDependency().getScope());
+  }
+
+  static String key(Artifact artifact) {
+    return artifact.getGroupId() + ":" + artifact.getArtifactId();
+  }
+
+  static boolean isRuntimeScope(String scope) {
+    return scope == null || scope.isEmpty() || Artifact.SCOPE_COMPILE.equals(scope) || Artifact.SCOPE_RUNTIME.equals(scope);
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.plexus.util.SelectorUtils;
+
+import static java.lang.String.format;
+
+/**
+ * Contribution of the plugin classes and of each packaged dependency to the size of a plugin JAR file: compressed and
+ * uncompressed bytes in the plugin JAR, number and size of classes, and an estimate of the metaspace used if all the
+ * classes are loaded. Dependencies are listed with the path of the dependency tree that pulled them in.
+ * <p>
+ * Budgets are maximum compressed sizes, for the whole plugin JAR file and for dependencies. A dependency budget is
+ * {@code groupId:artifactId=size}, where both identifiers may contain {@code *} wildcards, the first matching budget
+ * applies. Sizes are bytes, or a number followed by {@code KB}, {@code MB} or {@code GB}.
+ */
+class SizeReport {
+
+  static final String PLUGIN_ROW = "(plugin)";
+  /**
+   * Rough HotSpot figures: a loaded class uses about one and a half times the size of its class file in metaspace, plus
+   * its fixed-size structures.
+   */
+  private static final double METASPACE_PER_CLASS_BYTE = 1.5;
+  private static final long METASPACE_PER_CLASS = 512L;
+
+  private final String file;
+  private final long fileSize;
+  private final List<Row> rows;
+
+  private SizeReport(String file, long fileSize, List<Row> rows) {
+    this.file = file;
+    this.fileSize = fileSize;
+    this.rows = rows;
+  }
+
+  /**
+   * @param origins origins of the dependencies, by entry name in the plugin JAR file
+   */
+  static SizeReport compute(File pluginJar, Map<String, Origin> origins) throws IOException {
+    List<Row> rows = new ArrayList<>();
+    Row plugin = new Row(PLUGIN_ROW, null);
+    rows.add(plugin);
+    try (ZipFile zipFile = ZipFile.builder().setFile(pluginJar).get()) {
+      for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+        Origin origin = origins.get(entry.getName());
+        if (origin == null) {
+          plugin.add(entry);
+        } else {
+          Row row = new Row(entry.getName(), origin);
+          row.compressedBytes = entry.getCompressedSize();
+          row.uncompressedBytes = entry.getSize();
+          try (InputStream input = zipFile.getInputStream(entry)) {
+            row.addClasses(ByteStreams.toByteArray(input));
+          }
+          rows.add(row);
+        }
+      }
+    }
+    rows.sort(Comparator.comparingLong((Row row) -> row.compressedBytes).reversed().thenComparing(row -> row.name));
+    return new SizeReport(pluginJar.getName(), pluginJar.length(), rows);
+  }
+
+  List<Row> getRows() {
+    return rows;
+  }
+
+  /**
+   * @return the budgets that are exceeded, empty if none
+   */
+  List<String> checkBudgets(@Nullable String pluginBudget, List<String> dependencyBudgets) {
+    List<String> exceeded = new ArrayList<>();
+    if (StringUtils.isNotBlank(pluginBudget) && fileSize > parseSize(pluginBudget)) {
+      exceeded.add(format("%s is %d bytes, more than the budget of %s", file, fileSize, pluginBudget.trim()));
+    }
+    Map<String, String> budgets = new LinkedHashMap<>();
+    for (String budget : dependencyBudgets) {
+      String pattern = StringUtils.trimToEmpty(StringUtils.substringBefore(budget, "="));
+      String size = StringUtils.trimToEmpty(StringUtils.substringAfter(budget, "="));
+      if (!budget.contains("=") || !pattern.contains(":")) {
+        throw new IllegalArgumentException("Invalid dependency budget, expected <groupId>:<artifactId>=<size>: " + budget);
+      }
+      parseSize(size);
+      budgets.putIfAbsent(pattern, size);
+    }
+    for (Row row : rows) {
+      if (row.origin == null) {
+        continue;
+      }
+      String key = row.origin.key;
+      budgets.entrySet().stream()
+        .filter(budget -> SelectorUtils.match(budget.getKey(), key))
+        .findFirst()
+        .filter(budget -> row.compressedBytes > parseSize(budget.getValue()))
+        .ifPresent(budget -> exceeded.add(format("%s contributes %d bytes, more than the budget of %s", key, row.compressedBytes, budget.getValue())));
+    }
+    return exceeded;
+  }
+
+  static long parseSize(String size) {
+    String normalized = size.trim().toUpperCase(Locale.ENGLISH);
+    long unit = 1L;
+    if (normalized.endsWith("KB")) {
+      unit = 1024L;
+    } else if (normalized.endsWith("MB")) {
+      unit = 1024L * 1024;
+    } else if (normalized.endsWith("GB")) {
+      unit = 1024L * 1024 * 1024;
+    }
+    String number = unit == 1L ? normalized : normalized.substring(0, normalized.length() - 2).trim();
+    try {
+      return Long.parseLong(number) * unit;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid size, expected bytes or a number of KB, MB or GB: " + size, e);
+    }
+  }
+
+  String toJson() {
+    StringBuilder json = new StringBuilder()
+      .append("{\"file\":").append(PackagingTrace.quote(file))
+      .append(",\"fileSize\":").append(fileSize)
+      .append(",\"rows\":[");
+    String separator = "";
+    for (Row row : rows) {
+      json.append(separator)
+        .append("{\"name\":").append(PackagingTrace.quote(row.name));
+      if (row.origin != null) {
+        json.append(",\"artifact\":").append(PackagingTrace.quote(row.origin.id))
+          .append(",\"transitive\":").append(row.isTransitive())
+          .append(",\"path\":[");
+        String pathSeparator = "";
+        for (String id : row.origin.path) {
+          json.append(pathSeparator).append(PackagingTrace.quote(id));
+          pathSeparator = ",";
+        }
+        json.append(']');
+      }
+      json.append(",\"compressedBytes\":").append(row.compressedBytes)
+        .append(",\"uncompressedBytes\":").append(row.uncompressedBytes)
+        .append(",\"classes\":").append(row.classes)
+        .append(",\"classBytes\":").append(row.classBytes)
+        .append(",\"estimatedMetaspaceBytes\":").append(row.getEstimatedMetaspaceBytes())
+        .append('}');
+      separator = ",";
+    }
+    return json.append("]}").toString();
+  }
+
+  /**
+   * Where a dependency comes from.
+   */
+  static class Origin {
+    private final String key;
+    private final String id;
+    private final List<String> path;
+
+    /**
+     * @param key {@code groupId:artifactId}, matched by budgets
+     * @param path identifiers of the artifacts of the dependency tree, from a direct dependency of the project to this
+     * dependency
+     */
+    Origin(String key, String id, List<String> path) {
+      this.key = key;
+      this.id = id;
+      this.path = path;
+    }
+  }
+
+  static class Row {
+    private final String name;
+    @Nullable
+    private final Origin origin;
+    private long compressedBytes;
+    private long uncompressedBytes;
+    private int classes;
+    private long classBytes;
+
+    private Row(String name, @Nullable Origin origin) {
+      this.name = name;
+      this.origin = origin;
+    }
+
+    private void add(ZipArchiveEntry entry) {
+      compressedBytes += entry.getCompressedSize();
+      uncompressedBytes += entry.getSize();
+      if (DuplicateClassScanner.isClass(entry.getName())) {
+        classes++;
+        classBytes += entry.getSize();
+      }
+    }
+
+    private void addClasses(byte[] jar) throws IOException {
+      try (ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(jar)).get()) {
+        for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+          if (DuplicateClassScanner.isClass(entry.getName())) {
+            classes++;
+            classBytes += entry.getSize();
+          }
+        }
+      }
+    }
+
+    /**
+     * @return name of the entry of the dependency, or {@value #PLUGIN_ROW} for the other entries of the plugin
+     */
+    String getName() {
+      return name;
+    }
+
+    boolean isTransitive() {
+      return origin != null && origin.path.size() > 1;
+    }
+
+    long getCompressedBytes() {
+      return compressedBytes;
+    }
+
+    long getUncompressedBytes() {
+      return uncompressedBytes;
+    }
+
+    int getClasses() {
+      return classes;
+    }
+
+    long getClassBytes() {
+      return classBytes;
+    }
+
+    long getEstimatedMetaspaceBytes() {
+      return Math.round(classBytes * METASPACE_PER_CLASS_BYTE) + classes * METASPACE_PER_CLASS;
+    }
+  }
+}
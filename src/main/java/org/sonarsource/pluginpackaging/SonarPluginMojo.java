@@ -20,27 +20,43 @@
 package org.sonarsource.pluginpackaging;
 
 import com.google.common.base.Joiner;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Iterables;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.zip.Deflater;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.archiver.MavenArchiver;
 import org.apache.maven.artifact.Artifact;
-import org.apache.maven.artifact.repository.ArtifactRepository;
-import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
-import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
@@ -49,11 +65,11 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
-import org.apache.maven.shared.dependency.tree.DependencyNode;
-import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
-import org.apache.maven.shared.dependency.tree.DependencyTreeBuilderException;
-import org.codehaus.plexus.archiver.jar.JarArchiver;
-import org.codehaus.plexus.util.FileUtils;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.archiver.jar.Manifest;
+import org.codehaus.plexus.archiver.jar.ManifestException;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.collection.DependencyCollectionException;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -67,7 +83,14 @@ public class SonarPluginMojo extends AbstractSonarMojo {
 
   private static final DateTimeFormatter DATETIME_PATTERN = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")
     .withZone(ZoneId.from(ZoneOffset.UTC));
-  private static final String LIB_DIR = "META-INF/lib/";
+  static final String LIB_DIR = "META-INF/lib/";
+  static final String WORK_DIR = "sonar-packaging/";
+  private static final String SUMMARY_FILE = "summary.json";
+  private static final String DUPLICATE_CLASSES_IGNORE = "ignore";
+  private static final String DUPLICATE_CLASSES_WARN = "warn";
+  private static final String DUPLICATE_CLASSES_FAIL = "fail";
+  private static final int MAX_REPORTED_CLASSES = 5;
+  private static final int MAX_REPORTED_SIZES = 5;
   private static final String[] DEFAULT_EXCLUDES = new String[]{"**/package.html"};
   private static final String[] DEFAULT_INCLUDES = new String[]{"**/**"};
 
@@ -76,9 +99,6 @@ public class SonarPluginMojo extends AbstractSonarMojo {
    */
   private static final String REPRODUCIBLE_BUILDS_PROPERTY = "project.build.outputTimestamp";
 
-  @Component(role = org.codehaus.plexus.archiver.Archiver.class, hint = "jar")
-  protected JarArchiver jarArchiver;
-
   /**
    * List of files to include. Specified as fileset patterns which are relative to the input directory whose contents
    * is being packaged into the JAR.
@@ -101,21 +121,191 @@ public class SonarPluginMojo extends AbstractSonarMojo {
   private final MavenArchiveConfiguration archive = new MavenArchiveConfiguration();
 
   @Component
-  private DependencyTreeBuilder dependencyTreeBuilder;
+  private RepositorySystem repositorySystem;
+
+  @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+  private MojoExecution mojoExecution;
+
+  /**
+   * Force creation of the JAR file even if none of its inputs changed since the previous build.
+   */
+  @Parameter(property = "sonar.forceCreation", defaultValue = "false")
+  private boolean forceCreation;
+
+  /**
+   * Number of threads used to compress the entries of the JAR. Defaults to the number of available processors.
+   */
+  @Parameter(property = "sonar.packaging.threads")
+  private Integer threads;
+
+  /**
+   * Copy the packaged dependencies to ${appDirectory}/META-INF/lib. The JAR is always built from the files of the
+   * local repository, so this copy is only useful to inspect the dependencies.
+   */
+  @Parameter(property = "sonar.packaging.stageDependencies", defaultValue = "false")
+  private boolean stageDependencies;
+
+  /**
+   * Content-addressed store of the staged dependencies. Staged dependencies are hard links to the files of this store,
+   * so that they are written only once on disk for all the modules and all the builds.
+   */
+  @Parameter(property = "sonar.packaging.stagingStore", defaultValue = "${settings.localRepository}/.sonar-packaging/store")
+  private File stagingStore;
+
+  /**
+   * Maximum size of the staging store in megabytes. The oldest stored files are evicted when it is exceeded.
+   */
+  @Parameter(property = "sonar.packaging.stagingStoreSize", defaultValue = "1024")
+  private long stagingStoreSize;
+
+  /**
+   * Store the dependencies uncompressed and aligned on 4 KiB in the plugin JAR, and list their locations in the
+   * manifest attribute {@value AlignedDependencies#OFFSETS_ATTRIBUTE}, so that they can be memory-mapped in place.
+   */
+  @Parameter(property = "sonar.packaging.alignDependencies", defaultValue = "false")
+  private boolean alignDependencies;
+
+  /**
+   * Add to the plugin JAR an index of the packages of the plugin and of its dependencies, referenced by the manifest
+   * attribute {@value PackageIndex#MANIFEST_ATTRIBUTE}, so that the classloader can find the JAR of a class without
+   * probing all of them.
+   */
+  @Parameter(property = "sonar.packaging.packageIndex", defaultValue = "false")
+  private boolean packageIndex;
+
+  /**
+   * What to do when several packaged dependencies contain the same class: {@code ignore}, {@code warn} or {@code fail}.
+   */
+  @Parameter(property = "sonar.packaging.duplicateClasses", defaultValue = DUPLICATE_CLASSES_WARN)
+  private String duplicateClasses;
+
+  /**
+   * Remove from the packaged dependencies the classes that can't be reached from the plugin class, the services
+   * declared in {@code META-INF/services} and the classes to keep. The removed classes are listed in a report written
+   * next to the plugin JAR.
+   */
+  @Parameter(property = "sonar.packaging.minimizeDependencies", defaultValue = "false")
+  private boolean minimizeDependencies;
+
+  /**
+   * Classes of dependencies to keep when minimizing dependencies, for example the ones loaded by reflection. Values are
+   * class names, {@code org.foo.*} for the classes of a package or {@code org.foo.**} to include sub-packages.
+   */
+  @Parameter(property = "sonar.packaging.keepClasses")
+  private String[] keepClasses;
+
+  /**
+   * Persistent cache of the summaries of dependencies, their classes and packages, keyed by checksum and shared by all
+   * the modules and all the builds.
+   */
+  @Parameter(property = "sonar.packaging.summaryCache", defaultValue = "${settings.localRepository}/.sonar-packaging/summaries")
+  private File summaryCache;
+
+  /**
+   * Maximum size of the summary cache in megabytes. The least recently used summaries are evicted when it is exceeded.
+   * Set to 0 to disable the cache.
+   */
+  @Parameter(property = "sonar.packaging.summaryCacheSize", defaultValue = "100")
+  private long summaryCacheSize;
+
+  /**
+   * Choose for each entry whether to store or deflate it, from its type and from how much a sample of its content is
+   * reduced, instead of deflating all the entries. Content that is already compressed, like nested JAR files, images or
+   * archives, is stored: it saves the CPU time of deflating it again for a negligible size difference.
+   */
+  @Parameter(property = "sonar.packaging.adaptiveCompression", defaultValue = "false")
+  private boolean adaptiveCompression;
+
+  /**
+   * Compression of the entries matching fileset patterns, whether adaptive compression is enabled or not. Values are
+   * {@code <pattern>=store}, or {@code <pattern>=<level>} with a deflate level from 1 to 9, for example
+   * {@code static/**=9}. The first matching rule applies.
+   */
+  @Parameter(property = "sonar.packaging.compressionRules")
+  private String[] compressionRules;
+
+  /**
+   * Patch the JAR file written by the previous build: the entries that did not change are copied from it without being
+   * compressed again, only the added and modified entries are compressed. The result is the same as a full rebuild.
+   * The keys of the written entries are recorded next to the JAR file, which is not patched if it has been modified
+   * since then, or written with other settings.
+   */
+  @Parameter(property = "sonar.packaging.patch", defaultValue = "false")
+  private boolean patch;
+
+  /**
+   * Write the plugin as a directory instead of a JAR file, for the development loop. The directory is named after the
+   * JAR file, suffixed with {@code -exploded}. Only the files that changed since the previous build are written, dependencies are linked from the
+   * staging store. Use the {@code sync} goal to copy it to a local deployment directory. The directory is the artifact
+   * of the project, so it can't be installed nor deployed.
+   */
+  @Parameter(property = "sonar.packaging.exploded", defaultValue = "false")
+  private boolean exploded;
+
+  /**
+   * Write a report of the contribution of the plugin classes and of each dependency to the size of the plugin JAR: bytes,
+   * classes, estimated metaspace and the path of the dependency tree that pulled the dependency in. The report is
+   * written in {@code sonar-packaging/<jar>.size.json} of the build directory.
+   */
+  @Parameter(property = "sonar.packaging.sizeReport", defaultValue = "false")
+  private boolean sizeReport;
+
+  /**
+   * Maximum size of the plugin JAR file, in bytes or followed by {@code KB}, {@code MB} or {@code GB}. The build fails
+   * when it is exceeded.
+   */
+  @Parameter(property = "sonar.packaging.maxPluginSize")
+  private String maxPluginSize;
+
+  /**
+   * Maximum compressed sizes of dependencies in the plugin JAR, as {@code groupId:artifactId=size}. Identifiers may
+   * contain {@code *} wildcards, for example {@code *:*=5MB} for all the dependencies, and the first matching budget
+   * applies. The build fails when a budget is exceeded.
+   */
+  @Parameter
+  private String[] dependencyBudgets;
+
+  /**
+   * Instantiate the plugin class before packaging, in an isolated classloader like the server does, and write first in
+   * the JAR file the manifest, the package index, then the classes and libraries loaded meanwhile, in load order. Cold
+   * reads of the JAR file at server startup are then sequential. The recorded order is written in
+   * {@code sonar-packaging/<jar>.load-order} of the build directory. Static initializers of the plugin run in the build.
+   */
+  @Parameter(property = "sonar.packaging.recordLoadOrder", defaultValue = "false")
+  private boolean recordLoadOrder;
+
+  /**
+   * File listing the classes or entries to write first in the JAR file, in load order, one per line, for example a
+   * {@code load-order} file written by {@code recordLoadOrder} or by the {@code profile-startup} goal. Takes precedence
+   * over {@code recordLoadOrder}.
+   */
+  @Parameter(property = "sonar.packaging.loadOrder")
+  private File loadOrder;
+
+  /**
+   * Additional JAR files to build and attach with their own classifier, includes, excludes and dependencies. The
+   * entries they share with the main JAR are compressed only once.
+   */
+  @Parameter
+  private List<PackagingVariant> variants;
 
-  @Parameter(defaultValue = "${localRepository}", readonly = true)
-  private ArtifactRepository localRepository;
+  /**
+   * JAR files written by this instance of the mojo, by name. When it runs several times, like with the watch goal, the
+   * entries that did not change since the previous run are copied from the previous JAR file instead of being
+   * compressed again.
+   */
+  private final Map<String, WrittenJar> writtenJars = new HashMap<>();
 
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
     checkPluginClass();
     checkSonarQubeMinVersionIsAbsent();
-    File jarFile = createArchive();
+    File file = createArchive();
     String classifier = getClassifier();
     if (classifier != null) {
-      projectHelper.attachArtifact(getProject(), "jar", classifier, jarFile);
+      projectHelper.attachArtifact(getProject(), "jar", classifier, file);
     } else {
-      getProject().getArtifact().setFile(jarFile);
+      getProject().getArtifact().setFile(file);
     }
   }
 
@@ -133,16 +323,13 @@ public class SonarPluginMojo extends AbstractSonarMojo {
     }
   }
 
+  /**
+   * @return the JAR file, or its directory when the plugin is exploded
+   */
   public File createArchive() {
     File jarFile = getJarFile(getOutputDirectory(), getFinalName(), getClassifier());
-    MavenArchiver archiver = new MavenArchiver();
-    archiver.setArchiver(jarArchiver);
-    archiver.setOutputFile(jarFile);
 
     try {
-      archiver.getArchiver().addDirectory(getClassesDirectory(), getIncludes(), getExcludes());
-      archive.setAddMavenDescriptor(isAddMavenDescriptor());
-
       String logLine = "-------------------------------------------------------";
       getLog().info(logLine);
       getLog().info("Plugin definition in update center");
@@ -172,30 +359,492 @@ public class SonarPluginMojo extends AbstractSonarMojo {
       if (isUseChildFirstClassLoader() != null) {
         getLog().warn("Property 'useChildFirstClassLoader' is deprecated");
       }
+      PackagingTrace trace = new PackagingTrace(getProject().getId(), jarFile.getName());
+      List<Artifact> dependencies = new ArrayList<>();
       if (isSkipDependenciesPackaging()) {
         getLog().info("Skip packaging of dependencies");
 
       } else {
-        List<String> libs = copyDependencies();
-        if (!libs.isEmpty()) {
+        try (PackagingTrace.Span span = trace.start("dependencies")) {
+          dependencies = sortByFileName(getNotProvidedDependencies());
+        }
+        trace.count(PackagingTrace.DEPENDENCIES, dependencies.size());
+        if (!dependencies.isEmpty()) {
           if (isSonarLintSupported()) {
             throw new MojoFailureException(
               "A SonarLint compatible plugin should not package dependencies. "
                 + "Please set property 'skipDependenciesPackaging' to 'true' and use the maven-shade-plugin to shade instead.");
           }
-          archiver.getArchiver().addDirectory(getAppDirectory(), getIncludes(), getExcludes());
-          addManifestProperty(PluginManifestProperty.DEPENDENCIES, StringUtils.join(libs, " "));
+          addManifestProperty(PluginManifestProperty.DEPENDENCIES, StringUtils.join(getLibs(dependencies), " "));
+          try (PackagingTrace.Span span = trace.start("duplicateClasses")) {
+            checkDuplicateClasses(dependencies);
+          }
         }
       }
       getLog().info(logLine);
-      archiver.createArchive(getSession(), getProject(), archive);
-      return jarFile;
+
+      Instant outputTimestamp = getOutputTimestamp();
+      long time = outputTimestamp == null ? System.currentTimeMillis() : outputTimestamp.toEpochMilli();
+      WrittenJar mainJar = packageJar(jarFile, getIncludes(), getExcludes(), dependencies, trace, time, null);
+      checkSize(mainJar.file, dependencies);
+      Set<String> jarNames = new HashSet<>(Collections.singleton(jarFile.getName()));
+      for (PackagingVariant variant : getVariants()) {
+        packageVariant(variant, dependencies, time, mainJar, jarNames);
+      }
+      return mainJar.file;
 
     } catch (Exception e) {
       throw new IllegalStateException("Fail to build SonarQube plugin", e);
     }
   }
 
+  private List<PackagingVariant> getVariants() {
+    return variants == null ? Collections.emptyList() : variants;
+  }
+
+  private void packageVariant(PackagingVariant variant, List<Artifact> dependencies, long time, WrittenJar mainJar, Set<String> jarNames)
+    throws Exception {
+    if (StringUtils.isBlank(variant.getClassifier())) {
+      throw new MojoFailureException("The classifier of a variant must be defined");
+    }
+    File jarFile = getJarFile(getOutputDirectory(), getFinalName(), variant.getClassifier());
+    if (!jarNames.add(jarFile.getName())) {
+      throw new MojoFailureException(format("Variant '%s' has the same classifier as another JAR", variant.getClassifier()));
+    }
+    List<Artifact> variantDependencies = new ArrayList<>();
+    if (!variant.isSkipDependenciesPackaging()) {
+      Set<String> excluded = new HashSet<>(Arrays.asList(firstNonNull(variant.getExcludedDependencies(), new String[0])));
+      for (Artifact dependency : dependencies) {
+        if (!excluded.contains(ProvidedArtifactResolver.key(dependency))) {
+          variantDependencies.add(dependency);
+        }
+      }
+    }
+    getLog().info(format("Variant %s: %d dependencies", variant.getClassifier(), variantDependencies.size()));
+    PackagingTrace trace = new PackagingTrace(getProject().getId(), jarFile.getName());
+    trace.count(PackagingTrace.DEPENDENCIES, variantDependencies.size());
+    String[] variantIncludes = ArrayUtils.isEmpty(variant.getIncludes()) ? getIncludes() : variant.getIncludes();
+    String[] variantExcludes = ArrayUtils.isEmpty(variant.getExcludes()) ? getExcludes() : variant.getExcludes();
+    WrittenJar variantJar = packageJar(jarFile, variantIncludes, variantExcludes, variantDependencies, trace, time, mainJar);
+    checkSize(variantJar.file, variantDependencies);
+    projectHelper.attachArtifact(getProject(), "jar", variant.getClassifier(), variantJar.file);
+  }
+
+  /**
+   * Writes a JAR file, or its exploded directory, unless it is up to date.
+   *
+   * @param mainJar null when packaging the main JAR, whose dependencies are the only ones to be staged. When packaging
+   * a variant, the main JAR written in the same run, so that the entries they share are compressed only once, unless
+   * the variant has already been written by a previous run.
+   */
+  private WrittenJar packageJar(File jarFile, String[] includes, String[] excludes, List<Artifact> dependencies, PackagingTrace trace,
+    long time, @Nullable WrittenJar mainJar) throws Exception {
+    if (dependencies.isEmpty()) {
+      archive.getManifestEntries().remove(PluginManifestProperty.DEPENDENCIES.getKey());
+    } else {
+      archive.addManifestEntry(PluginManifestProperty.DEPENDENCIES.getKey(), StringUtils.join(getLibs(dependencies), " "));
+    }
+    File fingerprintFile = new File(getOutputDirectory(), WORK_DIR + jarFile.getName() + ".fingerprint");
+    String fingerprint;
+    try (PackagingTrace.Span span = trace.start("fingerprint")) {
+      fingerprint = computeFingerprint(includes, excludes, dependencies);
+    }
+    File output = exploded ? getExplodedDirectory(jarFile) : jarFile;
+    if (!forceCreation && output.exists() && fingerprint.equals(ArchiveFingerprint.read(fingerprintFile))) {
+      getLog().info("Plugin is up to date, skip creation of " + output.getName());
+      trace.setUpToDate(true);
+      writeTrace(trace);
+      return new WrittenJar(output, Collections.emptyList());
+    }
+
+    File writtenEntriesFile = new File(getOutputDirectory(), WORK_DIR + jarFile.getName() + ".entries");
+    String writerSettings = computeWriterSettings();
+    Map<String, String> previousEntries = patch ? WrittenEntries.read(writtenEntriesFile, jarFile, writerSettings) : null;
+    Files.deleteIfExists(fingerprintFile.toPath());
+    Files.deleteIfExists(writtenEntriesFile.toPath());
+    Map<String, File> libFiles = new LinkedHashMap<>();
+    for (Artifact dependency : dependencies) {
+      libFiles.put(LIB_DIR + getDefaultFinalName(dependency), dependency.getFile());
+    }
+    if (minimizeDependencies && !libFiles.isEmpty()) {
+      try (PackagingTrace.Span span = trace.start("minimization")) {
+        libFiles = minimizeDependencies(libFiles, jarFile);
+      }
+    }
+    Instant outputTimestamp = getOutputTimestamp();
+    PluginArchive pluginArchive = new PluginArchive(time);
+    boolean aligned = alignDependencies && !exploded && !dependencies.isEmpty();
+    try (PackagingTrace.Span span = trace.start("manifest")) {
+      pluginArchive.addContent(PluginArchive.MANIFEST_NAME, buildManifest(aligned ? AlignedDependencies.placeholder(dependencies.size()) : null), time);
+    }
+    try (PackagingTrace.Span span = trace.start("scan")) {
+      if (isAddMavenDescriptor()) {
+        addMavenDescriptor(pluginArchive, time);
+      }
+      pluginArchive.addDirectory(getClassesDirectory(), "", includes, excludes);
+      for (Map.Entry<String, File> lib : libFiles.entrySet()) {
+        pluginArchive.addFile(lib.getKey(), lib.getValue());
+      }
+      if (!dependencies.isEmpty()) {
+        pluginArchive.addDirectory(getAppDirectory(), "", includes, getAppDirectoryExcludes(excludes));
+      }
+    }
+    if (packageIndex) {
+      try (PackagingTrace.Span span = trace.start("packageIndex")) {
+        pluginArchive.addContent(PackageIndex.ENTRY_NAME, buildPackageIndex(pluginArchive, libFiles, getSummaryCache()).toBytes(), time);
+      }
+    }
+    if (stageDependencies && mainJar == null) {
+      try (PackagingTrace.Span span = trace.start("copyDependencies")) {
+        copyDependencies(dependencies, libFiles, trace);
+      }
+    }
+    List<PackagedEntry> entries;
+    if (outputTimestamp == null) {
+      entries = pluginArchive.getEntries();
+    } else {
+      // reproducible build: the archive must not depend on the file system nor on the machine
+      entries = withTime(pluginArchive.getCanonicalEntries(), time);
+    }
+    if (!exploded && (loadOrder != null || recordLoadOrder)) {
+      try (PackagingTrace.Span span = trace.start("loadOrder")) {
+        entries = LoadOrder.apply(entries, getStartupEntries(jarFile, libFiles));
+      }
+    }
+    if (exploded) {
+      try (PackagingTrace.Span span = trace.start("exploded")) {
+        writeExploded(output, entries, libFiles, trace);
+      }
+      ArchiveFingerprint.write(fingerprintFile, fingerprint);
+      writeTrace(trace);
+      return new WrittenJar(output, Collections.emptyList());
+    }
+    PluginJarWriter writer = new PluginJarWriter(getThreads(), archive.isCompress() ? Deflater.DEFAULT_COMPRESSION : Deflater.NO_COMPRESSION);
+    if (adaptiveCompression || ArrayUtils.isNotEmpty(compressionRules)) {
+      writer.compression(CompressionPolicy.of(Arrays.asList(firstNonNull(compressionRules, new String[0])), adaptiveCompression));
+    }
+    if (outputTimestamp != null) {
+      writer.reproducible();
+    }
+    if (aligned) {
+      writer.store(PluginArchive.MANIFEST_NAME::equals).align(libFiles::containsKey);
+    }
+    WrittenJar reusedJar = writtenJars.getOrDefault(jarFile.getName(), mainJar);
+    if (reusedJar != null && reusedJar.file.isFile()) {
+      writer.reuse(reusedJar.file, reusedJar.entries);
+    } else if (previousEntries != null) {
+      getLog().info("Patch " + jarFile.getName());
+      writer.reuse(jarFile, previousEntries);
+    }
+    PluginJarWriter.Statistics statistics;
+    try (PackagingTrace.Span span = trace.start("archive")) {
+      statistics = writer.write(jarFile, entries);
+    }
+    if (aligned) {
+      try (PackagingTrace.Span span = trace.start("alignment")) {
+        writeDependencyOffsets(writer, jarFile, libFiles, statistics, time);
+      }
+      trace.count(PackagingTrace.BYTES_WRITTEN, jarFile.length());
+    }
+    trace.count(PackagingTrace.ENTRIES, statistics.getEntries())
+      .count(PackagingTrace.BYTES_READ, statistics.getUncompressedBytes())
+      .count(PackagingTrace.BYTES_WRITTEN, statistics.getFileSize())
+      .count(PackagingTrace.UNCOMPRESSED_BYTES, statistics.getUncompressedBytes())
+      .count(PackagingTrace.COMPRESSED_BYTES, statistics.getCompressedBytes())
+      .count(PackagingTrace.REUSED_ENTRIES, statistics.getReusedEntries())
+      .max(PackagingTrace.PEAK_BUFFER_BYTES, statistics.getPeakPendingBytes());
+    if (adaptiveCompression) {
+      reportAdaptiveCompression(statistics, trace);
+    }
+    if (aligned) {
+      // the manifest has been replaced, it does not match its entry anymore
+      entries.removeIf(entry -> PluginArchive.MANIFEST_NAME.equals(entry.getName()));
+    }
+    if (patch) {
+      WrittenEntries.write(writtenEntriesFile, jarFile, writerSettings, entries);
+    }
+    ArchiveFingerprint.write(fingerprintFile, fingerprint);
+    writeTrace(trace);
+    WrittenJar written = new WrittenJar(jarFile, entries);
+    writtenJars.put(jarFile.getName(), written);
+    return written;
+  }
+
+  private List<String> getStartupEntries(File jarFile, Map<String, File> libFiles) throws IOException {
+    if (loadOrder != null) {
+      return LoadOrder.read(loadOrder);
+    }
+    Map<String, File> classpath = new LinkedHashMap<>();
+    classpath.put(StartupProfile.PLUGIN_SOURCE, getClassesDirectory());
+    classpath.putAll(libFiles);
+    Artifact pluginApi = getNullablePluginApiArtifact();
+    List<File> parentClasspath = pluginApi == null || pluginApi.getFile() == null ? Collections.emptyList() : Collections.singletonList(pluginApi.getFile());
+    List<String> startupEntries;
+    try {
+      startupEntries = StartupProfile.run(getPluginClass(), Boolean.TRUE.equals(isUseChildFirstClassLoader()), classpath, parentClasspath).getStartupEntries();
+    } catch (IllegalStateException e) {
+      getLog().warn("Fail to record the load order of the plugin, entries are not reordered: " + e.getMessage());
+      return Collections.emptyList();
+    }
+    LoadOrder.write(new File(getOutputDirectory(), WORK_DIR + jarFile.getName() + ".load-order"), startupEntries);
+    return startupEntries;
+  }
+
+  private void writeExploded(File dir, List<PackagedEntry> entries, Map<String, File> libFiles, PackagingTrace trace) throws IOException {
+    ExplodedPlugin.Statistics statistics = ExplodedPlugin.write(dir, entries, libFiles::containsKey, getStagingStore());
+    trace.count(PackagingTrace.ENTRIES, entries.size())
+      .count(PackagingTrace.BYTES_WRITTEN, statistics.getWrittenBytes())
+      .count(PackagingTrace.UNCHANGED_FILES, statistics.getUnchangedFiles())
+      .count(PackagingTrace.DELETED_FILES, statistics.getDeletedFiles());
+    getLog().info(format("Exploded plugin %s: %d files written (%d KB), %d unchanged, %d deleted", dir.getName(),
+      statistics.getWrittenFiles(), statistics.getWrittenBytes() / 1024, statistics.getUnchangedFiles(), statistics.getDeletedFiles()));
+  }
+
+  /**
+   * Reports the size of the JAR file and checks it against the budgets. Up-to-date JAR files are checked too, as the
+   * budgets may have changed.
+   */
+  private void checkSize(File jarFile, List<Artifact> dependencies) throws IOException, MojoFailureException {
+    if (exploded || (!sizeReport && StringUtils.isBlank(maxPluginSize) && ArrayUtils.isEmpty(dependencyBudgets))) {
+      return;
+    }
+    Map<String, SizeReport.Origin> origins = new HashMap<>();
+    for (Artifact dependency : dependencies) {
+      List<String> trail = dependency.getDependencyTrail();
+      // the first element of the trail is the project itself
+      List<String> path = trail == null || trail.size() < 2 ? Collections.singletonList(dependency.getId()) : trail.subList(1, trail.size());
+      origins.put(LIB_DIR + getDefaultFinalName(dependency), new SizeReport.Origin(ProvidedArtifactResolver.key(dependency), dependency.getId(), path));
+    }
+    SizeReport report = SizeReport.compute(jarFile, origins);
+    if (sizeReport) {
+      File reportFile = new File(getOutputDirectory(), WORK_DIR + jarFile.getName() + ".size.json");
+      PackagingTrace.writeAtomically(reportFile, report.toJson());
+      getLog().info(format("Size of %s: %d KB. See %s", jarFile.getName(), jarFile.length() / 1024, reportFile));
+      for (SizeReport.Row row : Iterables.limit(report.getRows(), MAX_REPORTED_SIZES)) {
+        getLog().info(format("  %s: %d KB compressed, %d KB uncompressed, %d classes, about %d KB of metaspace%s", row.getName(),
+          row.getCompressedBytes() / 1024, row.getUncompressedBytes() / 1024, row.getClasses(), row.getEstimatedMetaspaceBytes() / 1024,
+          row.isTransitive() ? ", transitive" : ""));
+      }
+    }
+    List<String> exceeded = report.checkBudgets(maxPluginSize, Arrays.asList(firstNonNull(dependencyBudgets, new String[0])));
+    if (!exceeded.isEmpty()) {
+      exceeded.forEach(getLog()::error);
+      throw new MojoFailureException("Size budgets of the plugin are exceeded: " + String.join(", ", exceeded));
+    }
+  }
+
+  private void reportAdaptiveCompression(PluginJarWriter.Statistics statistics, PackagingTrace trace) {
+    trace.count(PackagingTrace.ADAPTIVELY_STORED_ENTRIES, statistics.getAdaptivelyStoredEntries())
+      .count(PackagingTrace.SAMPLING_CPU_NANOS, statistics.getSamplingNanos())
+      .count(PackagingTrace.ESTIMATED_SAVED_CPU_NANOS, statistics.getEstimatedSavedNanos())
+      .count(PackagingTrace.ESTIMATED_EXTRA_BYTES, statistics.getEstimatedExtraBytes());
+    getLog().info(format("Adaptive compression: %d entries stored (%d KB), about %d ms of CPU saved for %d KB more, %d ms spent sampling",
+      statistics.getAdaptivelyStoredEntries(), statistics.getAdaptivelyStoredBytes() / 1024, statistics.getEstimatedSavedNanos() / 1_000_000,
+      statistics.getEstimatedExtraBytes() / 1024, statistics.getSamplingNanos() / 1_000_000));
+  }
+
+  /**
+   * The build date is not part of the fingerprint, otherwise archives built without
+   * {@link #REPRODUCIBLE_BUILDS_PROPERTY} would never be up to date. The value of this property is, as it fixes the
+   * time and the order of entries.
+   */
+  private String computeFingerprint(String[] includes, String[] excludes, List<Artifact> dependencies) throws Exception {
+    ArchiveFingerprint fingerprint = new ArchiveFingerprint()
+      .put("plugin.version", mojoExecution == null ? null : mojoExecution.getVersion())
+      .put("includes", StringUtils.join(includes, ","))
+      .put("excludes", StringUtils.join(excludes, ","))
+      .put("compress", archive.isCompress())
+      .put("addMavenDescriptor", isAddMavenDescriptor())
+      .put("alignDependencies", alignDependencies)
+      .put("packageIndex", packageIndex)
+      .put("outputTimestamp", getProject().getProperties().getProperty(REPRODUCIBLE_BUILDS_PROPERTY))
+      .put("minimizeDependencies", minimizeDependencies)
+      .put("keepClasses", keepClasses == null ? null : StringUtils.join(keepClasses, ","))
+      .put("adaptiveCompression", adaptiveCompression)
+      .put("exploded", exploded)
+      // the dependencies are staged only when the JAR is not up to date
+      .put("stageDependencies", stageDependencies)
+      .put("compressionRules", compressionRules == null ? null : StringUtils.join(compressionRules, ","))
+      .put("recordLoadOrder", recordLoadOrder)
+      .putDirectory("classes", getClassesDirectory(), includes, excludes);
+    if (!dependencies.isEmpty()) {
+      fingerprint.putDirectory("app", getAppDirectory(), includes, getAppDirectoryExcludes(excludes));
+    }
+    if (isAddMavenDescriptor() && getProject().getFile() != null) {
+      fingerprint.putFile("pom", getProject().getFile());
+    }
+    if (loadOrder != null) {
+      fingerprint.putFile("loadOrder", loadOrder);
+    }
+    // the manifest as written, including the manifest file and the manifest sections, but without the build date
+    java.util.jar.Manifest manifest = new java.util.jar.Manifest(new ByteArrayInputStream(buildManifest(null)));
+    manifest.getMainAttributes().remove(new Attributes.Name(PluginManifestProperty.BUILD_DATE.getKey()));
+    ByteArrayOutputStream manifestContent = new ByteArrayOutputStream();
+    manifest.write(manifestContent);
+    fingerprint.put("manifest", new String(manifestContent.toByteArray(), StandardCharsets.UTF_8));
+    Path localRepository = getSession().getRepositorySession().getLocalRepository().getBasedir().toPath().toAbsolutePath();
+    for (Artifact dependency : dependencies) {
+      File file = dependency.getFile();
+      if (file.toPath().toAbsolutePath().startsWith(localRepository)) {
+        fingerprint.putArtifact("dependency/" + dependency.getId(), file);
+      } else {
+        // artifact of the reactor, rebuilt in place
+        fingerprint.putFile("dependency/" + dependency.getId(), file);
+      }
+    }
+    return fingerprint.compute();
+  }
+
+  /**
+   * Options that change how entries are written. Entries of a JAR file written with other options can't be reused.
+   */
+  private String computeWriterSettings() {
+    return new ArchiveFingerprint()
+      .put("plugin.version", mojoExecution == null ? null : mojoExecution.getVersion())
+      .put("compress", archive.isCompress())
+      .put("adaptiveCompression", adaptiveCompression)
+      .put("compressionRules", compressionRules == null ? null : StringUtils.join(compressionRules, ","))
+      .put("alignDependencies", alignDependencies)
+      .put("outputTimestamp", getProject().getProperties().getProperty(REPRODUCIBLE_BUILDS_PROPERTY))
+      .put("java.version", System.getProperty("java.version"))
+      .compute();
+  }
+
+  /**
+   * Writes the trace of this run, then rewrites the summary of the session in the build directory of the top-level
+   * project. Metrics are informative, so failing to write them does not fail the build.
+   */
+  private void writeTrace(PackagingTrace trace) {
+    trace.finish();
+    PackagingSummary summary = PackagingSummary.forSession(getSession().getRepositorySession());
+    summary.add(trace);
+    Map<String, CacheStats> cacheStatistics = getDependencyClassificationCache().getStatistics();
+    cacheStatistics.put("residentSummaries", ArtifactSummaryCache.getResidentStatistics());
+    summary.setCacheStatistics(cacheStatistics);
+    if (getLog().isDebugEnabled()) {
+      cacheStatistics.forEach((name, stats) -> getLog().debug(format("Cache %s: %d hits, %d misses", name, stats.hitCount(), stats.missCount())));
+    }
+    try {
+      trace.write(new File(getOutputDirectory(), WORK_DIR + trace.getFile() + ".trace.json"));
+      MavenProject topLevelProject = getSession().getTopLevelProject() == null ? getProject() : getSession().getTopLevelProject();
+      summary.write(new File(topLevelProject.getBuild().getDirectory(), WORK_DIR + SUMMARY_FILE));
+    } catch (IOException e) {
+      getLog().warn("Fail to write packaging trace: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Dependencies are read from the local repository, so the ones staged or left in ${appDirectory}/META-INF/lib by
+   * previous builds are not packaged.
+   */
+  private static String[] getAppDirectoryExcludes(String[] excludes) {
+    return ArrayUtils.add(excludes, LIB_DIR + "**");
+  }
+
+  private DependencyStagingStore getStagingStore() {
+    return new DependencyStagingStore(stagingStore, stagingStoreSize * 1024 * 1024);
+  }
+
+  private ArtifactSummaryCache getSummaryCache() {
+    return new ArtifactSummaryCache(summaryCache, summaryCacheSize * 1024 * 1024);
+  }
+
+  private int getThreads() {
+    return threads == null ? Runtime.getRuntime().availableProcessors() : threads;
+  }
+
+  /**
+   * The offsets of the aligned dependencies are known only once the JAR is written. As the manifest is stored and
+   * the offsets have a fixed width, replacing the manifest does not move the other entries.
+   */
+  private void writeDependencyOffsets(PluginJarWriter writer, File jarFile, Map<String, File> libFiles, PluginJarWriter.Statistics statistics,
+    long time) throws IOException, ManifestException, DependencyResolutionRequiredException {
+    Map<String, Long> lengths = new HashMap<>();
+    for (Map.Entry<String, File> lib : libFiles.entrySet()) {
+      lengths.put(lib.getKey(), lib.getValue().length());
+    }
+    String offsets = AlignedDependencies.format(new ArrayList<>(libFiles.keySet()), statistics.getAlignedOffsets(), lengths);
+    PluginJarWriter.Statistics replaced = writer.replace(jarFile, PackagedEntry.content(PluginArchive.MANIFEST_NAME, buildManifest(offsets), time));
+    if (!replaced.getAlignedOffsets().equals(statistics.getAlignedOffsets())) {
+      throw new IllegalStateException("Aligned dependencies have been moved when writing their offsets in the manifest");
+    }
+  }
+
+  private byte[] buildManifest(@Nullable String dependencyOffsets) throws IOException, ManifestException, DependencyResolutionRequiredException {
+    PackagingEvents.Manifest event = new PackagingEvents.Manifest();
+    event.begin();
+    Manifest manifest = new MavenArchiver().getManifest(getSession(), getProject(), archive);
+    File manifestFile = archive.getManifestFile();
+    if (manifestFile != null) {
+      try (InputStream input = Files.newInputStream(manifestFile.toPath())) {
+        java.util.jar.Manifest userManifest = new java.util.jar.Manifest(input);
+        for (Map.Entry<Object, Object> attribute : userManifest.getMainAttributes().entrySet()) {
+          manifest.getMainAttributes().putIfAbsent(attribute.getKey(), attribute.getValue());
+        }
+        manifest.getEntries().putAll(userManifest.getEntries());
+      }
+    }
+    manifest.getMainAttributes().putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (packageIndex) {
+      manifest.getMainAttributes().putValue(PackageIndex.MANIFEST_ATTRIBUTE, PackageIndex.ENTRY_NAME);
+    }
+    if (dependencyOffsets != null) {
+      manifest.getMainAttributes().putValue(AlignedDependencies.OFFSETS_ATTRIBUTE, dependencyOffsets);
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    manifest.write(output);
+    if (event.shouldCommit()) {
+      event.project = getProject().getId();
+      event.bytes = output.size();
+      event.commit();
+    }
+    return output.toByteArray();
+  }
+
+  private static PackageIndex buildPackageIndex(PluginArchive pluginArchive, Map<String, File> libFiles, ArtifactSummaryCache summaries)
+    throws IOException {
+    PackageIndex.Builder builder = new PackageIndex.Builder();
+    for (PackagedEntry entry : pluginArchive.getEntries()) {
+      builder.addPluginEntry(entry.getName());
+    }
+    for (Map.Entry<String, File> lib : libFiles.entrySet()) {
+      builder.addJar(lib.getKey(), summaries.get(lib.getValue()));
+    }
+    return builder.build();
+  }
+
+  private Map<String, File> minimizeDependencies(Map<String, File> libFiles, File jarFile) throws IOException {
+    File workDir = new File(getOutputDirectory(), WORK_DIR);
+    List<String> keepRules = keepClasses == null ? Collections.emptyList() : Arrays.asList(keepClasses);
+    DependencyMinimizer.Result result = new DependencyMinimizer(new File(workDir, "minimized/" + jarFile.getName()), keepRules)
+      .minimize(getPluginClass(), getClassesDirectory(), libFiles);
+    File report = new File(workDir, jarFile.getName() + ".minimization.txt");
+    PackagingTrace.writeAtomically(report, result.toReport());
+    getLog().info(format("Minimization removed %d classes of dependencies, %d bytes saved. See %s",
+      result.getRemovedClasses(), result.getSavedBytes(), report));
+    return result.getMinimizedFiles();
+  }
+
+  private void addMavenDescriptor(PluginArchive pluginArchive, long time) {
+    String dir = "META-INF/maven/" + getProject().getGroupId() + "/" + getProject().getArtifactId() + "/";
+    File pomFile = getProject().getFile();
+    if (pomFile != null && pomFile.isFile()) {
+      pluginArchive.addFile(dir + "pom.xml", pomFile);
+    }
+    String properties = "artifactId=" + getProject().getArtifactId() + "\n"
+      + "groupId=" + getProject().getGroupId() + "\n"
+      + "version=" + getProject().getVersion() + "\n";
+    pluginArchive.addContent(dir + "pom.properties", properties.getBytes(StandardCharsets.UTF_8), time);
+  }
+
+  private static List<PackagedEntry> withTime(List<PackagedEntry> entries, long time) {
+    List<PackagedEntry> result = new ArrayList<>(entries.size());
+    for (PackagedEntry entry : entries) {
+      result.add(entry.withTime(time));
+    }
+    return result;
+  }
+
   /**
    * Compute build date.
    *
@@ -204,19 +853,28 @@ public class SonarPluginMojo extends AbstractSonarMojo {
    * @return Date of the build.
    */
   private Instant getBuildDate() {
+    Instant outputTimestamp = getOutputTimestamp();
+    return outputTimestamp == null ? Instant.now() : outputTimestamp;
+  }
+
+  /**
+   * @return value of {@link #REPRODUCIBLE_BUILDS_PROPERTY} property, or null if not set or invalid.
+   */
+  @CheckForNull
+  private Instant getOutputTimestamp() {
     final String outputTimestamp = getProject().getProperties().getProperty(REPRODUCIBLE_BUILDS_PROPERTY);
     final Log log = getLog();
     if (outputTimestamp == null) {
       if (log.isDebugEnabled()) {
         log.debug(format("property '%s' is not set. Will take current date for the build date.", REPRODUCIBLE_BUILDS_PROPERTY));
       }
-      return Instant.now();
+      return null;
     }
     try {
       return Instant.from(DateTimeFormatter.ISO_INSTANT.parse(outputTimestamp));
     } catch (DateTimeParseException e) {
       log.warn(format("Unable to parse value of property '%s': %s.  Will take current date for the build date.", REPRODUCIBLE_BUILDS_PROPERTY, outputTimestamp), e);
-      return Instant.now();
+      return null;
     }
   }
 
@@ -236,91 +894,91 @@ public class SonarPluginMojo extends AbstractSonarMojo {
     return null;
   }
 
-  private List<String> copyDependencies() throws IOException, DependencyTreeBuilderException {
+  private static List<Artifact> sortByFileName(Set<Artifact> artifacts) {
+    List<Artifact> result = new ArrayList<>(artifacts);
+    result.sort(Comparator.comparing(SonarPluginMojo::getDefaultFinalName));
+    return result;
+  }
+
+  private static List<String> getLibs(List<Artifact> artifacts) {
     List<String> libs = new ArrayList<>();
-    File libDirectory = new File(getAppDirectory(), LIB_DIR);
-    Set<Artifact> artifacts = getNotProvidedDependencies();
     for (Artifact artifact : artifacts) {
-      String targetFileName = getDefaultFinalName(artifact);
-      FileUtils.copyFileIfModified(artifact.getFile(), new File(libDirectory, targetFileName));
-      libs.add(LIB_DIR + targetFileName);
+      libs.add(LIB_DIR + getDefaultFinalName(artifact));
     }
     return libs;
   }
 
-  private static String getDefaultFinalName(Artifact artifact) {
-    return artifact.getFile().getName();
+  private void checkDuplicateClasses(List<Artifact> dependencies) throws IOException, MojoFailureException {
+    String mode = StringUtils.defaultString(duplicateClasses, DUPLICATE_CLASSES_WARN).toLowerCase(Locale.ROOT);
+    if (DUPLICATE_CLASSES_IGNORE.equals(mode)) {
+      return;
+    }
+    if (!DUPLICATE_CLASSES_WARN.equals(mode) && !DUPLICATE_CLASSES_FAIL.equals(mode)) {
+      throw new MojoFailureException(format("Invalid value of 'duplicateClasses': %s. Expected one of %s, %s or %s.",
+        duplicateClasses, DUPLICATE_CLASSES_IGNORE, DUPLICATE_CLASSES_WARN, DUPLICATE_CLASSES_FAIL));
+    }
+    Map<String, File> jars = new LinkedHashMap<>();
+    for (Artifact dependency : dependencies) {
+      jars.put(getDefaultFinalName(dependency), dependency.getFile());
+    }
+    List<DuplicateClassScanner.Conflict> conflicts = new DuplicateClassScanner(getThreads(), getSummaryCache()).scan(jars);
+    for (DuplicateClassScanner.Conflict conflict : conflicts) {
+      List<String> classes = conflict.getClasses();
+      String examples = StringUtils.join(classes.subList(0, Math.min(classes.size(), MAX_REPORTED_CLASSES)), ", ")
+        + (classes.size() > MAX_REPORTED_CLASSES ? ", ..." : "");
+      getLog().warn(format("%s and %s contain the same %d classes, %d bytes wasted: %s",
+        conflict.getFirstJar(), conflict.getSecondJar(), classes.size(), conflict.getWastedBytes(), examples));
+    }
+    if (!conflicts.isEmpty() && DUPLICATE_CLASSES_FAIL.equals(mode)) {
+      throw new MojoFailureException("Packaged dependencies contain duplicate classes. "
+        + "Please exclude the duplicated dependencies, or set property 'sonar.packaging.duplicateClasses' to 'warn'.");
+    }
   }
 
-  private Set<Artifact> getNotProvidedDependencies() throws DependencyTreeBuilderException {
-    Set<Artifact> result = new HashSet<>();
-    Set<Artifact> providedArtifacts = getSonarProvidedArtifacts();
-    for (Artifact artifact : getIncludedArtifacts()) {
-      boolean include = true;
-      if (isSonarPlugin(artifact) || isScopeProvidedOrTest(artifact)) {
-        include = false;
-      }
-      if (containsArtifact(providedArtifacts, artifact)) {
-        getLog().warn(artifact + " is provided by SonarQube plugin API and will not be packaged in your plugin");
-        include = false;
+  private void copyDependencies(List<Artifact> artifacts, Map<String, File> libFiles, PackagingTrace trace) throws IOException {
+    File libDirectory = new File(getAppDirectory(), LIB_DIR);
+    DependencyStagingStore store = getStagingStore();
+    for (Artifact artifact : artifacts) {
+      PackagingEvents.DependencyCopy event = new PackagingEvents.DependencyCopy();
+      event.begin();
+      File file = libFiles.get(LIB_DIR + getDefaultFinalName(artifact));
+      boolean staged = store.stage(file, new File(libDirectory, getDefaultFinalName(artifact)));
+      if (staged) {
+        trace.count(PackagingTrace.STAGED_DEPENDENCIES, 1)
+          .count(PackagingTrace.BYTES_WRITTEN, file.length());
       }
-      if (include) {
-        result.add(artifact);
+      if (event.shouldCommit()) {
+        event.artifact = artifact.getId();
+        event.bytes = file.length();
+        event.staged = staged;
+        event.commit();
       }
     }
-    return result;
-  }
-
-  private static boolean isScopeProvidedOrTest(Artifact artifact) {
-    return Artifact.SCOPE_PROVIDED.equals(artifact.getScope()) || Artifact.SCOPE_TEST.equals(artifact.getScope());
   }
 
-  private static boolean isSonarPlugin(Artifact artifact) {
-    return "sonar-plugin".equals(artifact.getType());
+  private static String getDefaultFinalName(Artifact artifact) {
+    return artifact.getFile().getName();
   }
 
-  private static boolean containsArtifact(Set<Artifact> artifacts, Artifact artifact) {
-    for (Artifact a : artifacts) {
-      if (StringUtils.equals(a.getGroupId(), artifact.getGroupId()) &&
-        StringUtils.equals(a.getArtifactId(), artifact.getArtifactId())) {
-        return true;
-      }
+  private Set<Artifact> getNotProvidedDependencies() throws DependencyCollectionException {
+    PackagingEvents.Classification event = new PackagingEvents.Classification();
+    event.begin();
+    DependencyClassification classification = getDependencyClassification();
+    DependencyClassification.ProvidedArtifactsLoader loader = () -> getDependencyClassificationCache()
+      .getProvidedArtifacts(getProject(), new ProvidedArtifactResolver(repositorySystem), getSession().getRepositorySession());
+    Set<Artifact> providedByApi = classification.getProvidedByApi(loader);
+    for (Artifact artifact : providedByApi) {
+      getLog().warn(artifact + " is provided by SonarQube plugin API and will not be packaged in your plugin");
     }
-    return false;
-  }
-
-  private Set<Artifact> getSonarProvidedArtifacts() throws DependencyTreeBuilderException {
-    Set<Artifact> result = new HashSet<>();
-    ArtifactFilter artifactFilter = new ScopeArtifactFilter(Artifact.SCOPE_RUNTIME);
-    // We need to use Maven 2 dependency tree in order to get omitted dependencies
-    DependencyNode rootNode = dependencyTreeBuilder.buildDependencyTree(getProject(),
-      localRepository,
-      artifactFilter);
-    searchForSonarProvidedArtifacts(rootNode, result, false);
-    return result;
-  }
-
-  private static void searchForSonarProvidedArtifacts(@Nullable DependencyNode dependency, Set<Artifact> sonarArtifacts, boolean isParentProvided) {
-    if (dependency != null) {
-      boolean provided;
-      if (dependency.getParent() != null) {
-        // - Skip check on root node - see SONAR-1815
-        provided = isParentProvided ||
-          ("org.codehaus.sonar".equals(dependency.getArtifact().getGroupId()) && !Artifact.SCOPE_TEST.equals(dependency.getArtifact().getScope()));
-      } else {
-        provided = isParentProvided;
-      }
-
-      if (provided) {
-        sonarArtifacts.add(dependency.getArtifact());
-      }
-
-      if (!Artifact.SCOPE_TEST.equals(dependency.getArtifact().getScope())) {
-        for (Object childDep : dependency.getChildren()) {
-          searchForSonarProvidedArtifacts((DependencyNode) childDep, sonarArtifacts, provided);
-        }
-      }
+    Set<Artifact> packaged = classification.getPackaged(loader);
+    if (event.shouldCommit()) {
+      event.project = getProject().getId();
+      event.includedArtifacts = classification.getIncluded().size();
+      event.providedArtifacts = providedByApi.size();
+      event.packagedArtifacts = packaged.size();
+      event.commit();
     }
+    return packaged;
   }
 
   private String[] getIncludes() {
@@ -337,6 +995,24 @@ public class SonarPluginMojo extends AbstractSonarMojo {
     return DEFAULT_EXCLUDES;
   }
 
+  private static final class WrittenJar {
+    private final File file;
+    private final List<PackagedEntry> entries;
+
+    private WrittenJar(File file, List<PackagedEntry> entries) {
+      this.file = file;
+      this.entries = entries;
+    }
+  }
+
+  /**
+   * Directory of the exploded plugin, next to its JAR file. It is suffixed so that it is not the default
+   * {@code appDirectory}, whose other files would be deleted.
+   */
+  static File getExplodedDirectory(File jarFile) {
+    return new File(jarFile.getParentFile(), StringUtils.removeEnd(jarFile.getName(), ".jar") + "-exploded");
+  }
+
   protected static File getJarFile(File basedir, String finalName, String classifier) {
     String suffix;
     if (StringUtils.isBlank(classifier)) {
@@ -0,0 +1,367 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Loads a packaged plugin like the server does and measures the instantiation of its entry-point class: the classes it
+ * loads, where they come from, how long each one takes to be loaded and defined, and the time spent in static
+ * initializers and in the constructor.
+ * <p>
+ * The plugin JAR file and the libraries listed in {@code Plugin-Dependencies} are loaded in an isolated classloader,
+ * parent-first or child-first depending on {@code Plugin-ChildFirstClassLoader}. Its parent only sees the given
+ * classpath, usually the plugin API, and the platform classes of the JVM. Static initializers run lazily, so their
+ * time is measured as a whole, without the loading of the classes they trigger.
+ */
+class StartupProfile {
+
+  static final String PLUGIN_SOURCE = "(plugin)";
+  static final String PARENT_SOURCE = "(parent)";
+
+  private final String pluginClass;
+  private final boolean childFirst;
+  private final List<LoadedClass> loadedClasses;
+  private final Map<String, Integer> classesBySource;
+  private final long staticInitNanos;
+  private final long constructorNanos;
+
+  private StartupProfile(String pluginClass, boolean childFirst, List<LoadedClass> loadedClasses, Map<String, Integer> classesBySource,
+    long staticInitNanos, long constructorNanos) {
+    this.pluginClass = pluginClass;
+    this.childFirst = childFirst;
+    this.loadedClasses = loadedClasses;
+    this.classesBySource = classesBySource;
+    this.staticInitNanos = staticInitNanos;
+    this.constructorNanos = constructorNanos;
+  }
+
+  /**
+   * @param workDir directory where the libraries embedded in the plugin are extracted
+   * @param parentClasspath the classpath visible from the plugin classloader, usually the plugin API
+   * @throws IllegalStateException if the plugin class can not be instantiated
+   */
+  static StartupProfile run(File pluginJar, File workDir, List<File> parentClasspath) throws IOException {
+    String pluginClass;
+    boolean childFirst;
+    Map<String, File> classpath = new LinkedHashMap<>();
+    classpath.put(PLUGIN_SOURCE, pluginJar);
+    try (JarFile jar = new JarFile(pluginJar)) {
+      Attributes attributes = jar.getManifest() == null ? new Attributes() : jar.getManifest().getMainAttributes();
+      pluginClass = attributes.getValue(PluginManifestProperty.MAIN_CLASS.getKey());
+      if (StringUtils.isBlank(pluginClass)) {
+        throw new IllegalStateException("The manifest of " + pluginJar + " does not declare " + PluginManifestProperty.MAIN_CLASS.getKey());
+      }
+      childFirst = Boolean.parseBoolean(attributes.getValue(PluginManifestProperty.USE_CHILD_FIRST_CLASSLOADER.getKey()));
+      for (String dependency : StringUtils.split(StringUtils.defaultString(attributes.getValue(PluginManifestProperty.DEPENDENCIES.getKey())))) {
+        classpath.put(dependency, extract(jar, dependency, workDir));
+      }
+    }
+    return run(pluginClass, childFirst, classpath, parentClasspath);
+  }
+
+  /**
+   * Profiles a plugin that is not packaged yet.
+   *
+   * @param classpath the plugin classes, as {@link #PLUGIN_SOURCE}, then its libraries by path in the plugin JAR file
+   * @throws IllegalStateException if the plugin class can not be instantiated
+   */
+  static StartupProfile run(String pluginClass, boolean childFirst, Map<String, File> classpath, List<File> parentClasspath) throws IOException {
+    List<URL> urls = new ArrayList<>();
+    Map<String, String> sources = new HashMap<>();
+    for (Map.Entry<String, File> entry : classpath.entrySet()) {
+      URL url = entry.getValue().toURI().toURL();
+      urls.add(url);
+      sources.put(url.toExternalForm(), entry.getKey());
+    }
+    List<URL> parentUrls = new ArrayList<>();
+    for (File file : parentClasspath) {
+      parentUrls.add(file.toURI().toURL());
+    }
+
+    // the extension class loader on Java 8, the platform class loader from Java 9
+    ClassLoader platformLoader = ClassLoader.getSystemClassLoader().getParent();
+    Thread thread = Thread.currentThread();
+    ClassLoader initialContextLoader = thread.getContextClassLoader();
+    try (URLClassLoader parent = new URLClassLoader(parentUrls.toArray(new URL[0]), platformLoader);
+      ProfilingClassLoader loader = new ProfilingClassLoader(urls.toArray(new URL[0]), parent, childFirst, sources)) {
+      thread.setContextClassLoader(loader);
+      Class<?> type = Class.forName(pluginClass, false, loader);
+
+      long loadNanos = loader.totalLoadNanos;
+      long start = System.nanoTime();
+      Class.forName(pluginClass, true, loader);
+      long staticInitNanos = System.nanoTime() - start - (loader.totalLoadNanos - loadNanos);
+
+      loadNanos = loader.totalLoadNanos;
+      start = System.nanoTime();
+      type.getDeclaredConstructor().newInstance();
+      long constructorNanos = System.nanoTime() - start - (loader.totalLoadNanos - loadNanos);
+
+      Map<String, Integer> classesBySource = new LinkedHashMap<>();
+      for (LoadedClass loadedClass : loader.loadedClasses) {
+        classesBySource.merge(loadedClass.source, 1, Integer::sum);
+      }
+      if (!loader.parentClasses.isEmpty()) {
+        classesBySource.put(PARENT_SOURCE, loader.parentClasses.size());
+      }
+      return new StartupProfile(pluginClass, childFirst, loader.loadedClasses, classesBySource, staticInitNanos, constructorNanos);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      throw new IllegalStateException("Fail to instantiate the plugin class " + pluginClass + ": " + e, e);
+    } finally {
+      thread.setContextClassLoader(initialContextLoader);
+    }
+  }
+
+  private static File extract(JarFile jar, String name, File workDir) throws IOException {
+    ZipEntry entry = jar.getEntry(name);
+    if (entry == null) {
+      throw new IllegalStateException("Dependency " + name + " is declared in the manifest but is not packaged");
+    }
+    Path target = workDir.toPath().resolve(name).normalize();
+    if (!target.startsWith(workDir.toPath().normalize())) {
+      throw new IllegalStateException("Invalid dependency path: " + name);
+    }
+    Files.createDirectories(target.getParent());
+    try (InputStream input = jar.getInputStream(entry)) {
+      Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return target.toFile();
+  }
+
+  String getPluginClass() {
+    return pluginClass;
+  }
+
+  boolean isChildFirst() {
+    return childFirst;
+  }
+
+  /**
+   * Classes loaded from the plugin and from its libraries, in load order. Classes of the parent are only counted.
+   */
+  List<LoadedClass> getLoadedClasses() {
+    return Collections.unmodifiableList(loadedClasses);
+  }
+
+  /**
+   * Entries of the plugin JAR file read to load the classes, in load order: the class files of the plugin and the
+   * libraries the other classes come from.
+   */
+  List<String> getStartupEntries() {
+    Set<String> result = new LinkedHashSet<>();
+    for (LoadedClass loadedClass : loadedClasses) {
+      result.add(PLUGIN_SOURCE.equals(loadedClass.source) ? (loadedClass.name.replace('.', '/') + ".class") : loadedClass.source);
+    }
+    return new ArrayList<>(result);
+  }
+
+  /**
+   * Number of loaded classes per source: {@link #PLUGIN_SOURCE}, the path of a library in the plugin JAR file, or
+   * {@link #PARENT_SOURCE}.
+   */
+  Map<String, Integer> getClassesBySource() {
+    return Collections.unmodifiableMap(classesBySource);
+  }
+
+  long getLoadNanos() {
+    return loadedClasses.stream().mapToLong(LoadedClass::getLoadNanos).sum();
+  }
+
+  long getStaticInitNanos() {
+    return staticInitNanos;
+  }
+
+  long getConstructorNanos() {
+    return constructorNanos;
+  }
+
+  List<LoadedClass> getHeaviestClasses(int max) {
+    List<LoadedClass> sorted = new ArrayList<>(loadedClasses);
+    sorted.sort(Comparator.comparingLong(LoadedClass::getLoadNanos).reversed());
+    return sorted.subList(0, Math.min(max, sorted.size()));
+  }
+
+  String toJson(int maxClasses) {
+    StringBuilder json = new StringBuilder()
+      .append("{\"pluginClass\":").append(PackagingTrace.quote(pluginClass))
+      .append(",\"childFirst\":").append(childFirst)
+      .append(",\"loadedClasses\":").append(loadedClasses.size() + classesBySource.getOrDefault(PARENT_SOURCE, 0))
+      .append(",\"classesBySource\":{");
+    String separator = "";
+    for (Map.Entry<String, Integer> entry : classesBySource.entrySet()) {
+      json.append(separator).append(PackagingTrace.quote(entry.getKey())).append(':').append(entry.getValue());
+      separator = ",";
+    }
+    json.append("},\"loadMs\":").append(PackagingTrace.millis(getLoadNanos()))
+      .append(",\"staticInitMs\":").append(PackagingTrace.millis(staticInitNanos))
+      .append(",\"constructorMs\":").append(PackagingTrace.millis(constructorNanos))
+      .append(",\"heaviestClasses\":[");
+    separator = "";
+    for (LoadedClass loadedClass : getHeaviestClasses(maxClasses)) {
+      json.append(separator)
+        .append("{\"name\":").append(PackagingTrace.quote(loadedClass.name))
+        .append(",\"source\":").append(PackagingTrace.quote(loadedClass.source))
+        .append(",\"loadMs\":").append(PackagingTrace.millis(loadedClass.loadNanos))
+        .append('}');
+      separator = ",";
+    }
+    return json.append("]}").toString();
+  }
+
+  static class LoadedClass {
+    private final String name;
+    private final String source;
+    private final long loadNanos;
+
+    private LoadedClass(String name, String source, long loadNanos) {
+      this.name = name;
+      this.source = source;
+      this.loadNanos = loadNanos;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    String getSource() {
+      return source;
+    }
+
+    /**
+     * Time spent reading and defining the class, without the classes loaded meanwhile, like its super-types.
+     */
+    long getLoadNanos() {
+      return loadNanos;
+    }
+  }
+
+  /**
+   * Records the classes it defines. The classes of the JVM are always loaded by the parent, as the server does.
+   */
+  private static class ProfilingClassLoader extends URLClassLoader {
+    static {
+      registerAsParallelCapable();
+    }
+
+    private final boolean childFirst;
+    private final Map<String, String> sources;
+    private final ThreadLocal<Deque<long[]>> frames = ThreadLocal.withInitial(ArrayDeque::new);
+    private final List<LoadedClass> loadedClasses = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> parentClasses = ConcurrentHashMap.newKeySet();
+    private volatile long totalLoadNanos;
+
+    ProfilingClassLoader(URL[] urls, ClassLoader parent, boolean childFirst, Map<String, String> sources) {
+      super(urls, parent);
+      this.childFirst = childFirst;
+      this.sources = sources;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> result = findLoadedClass(name);
+        if (result == null) {
+          if (childFirst && !name.startsWith("java.")) {
+            try {
+              result = findClass(name);
+            } catch (ClassNotFoundException e) {
+              result = loadFromParent(name);
+            }
+          } else {
+            try {
+              result = loadFromParent(name);
+            } catch (ClassNotFoundException e) {
+              result = findClass(name);
+            }
+          }
+        }
+        if (resolve) {
+          resolveClass(result);
+        }
+        return result;
+      }
+    }
+
+    private Class<?> loadFromParent(String name) throws ClassNotFoundException {
+      Class<?> result = getParent().loadClass(name);
+      if (result.getClassLoader() == getParent()) {
+        parentClasses.add(name);
+      }
+      return result;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      Deque<long[]> stack = frames.get();
+      long[] nestedNanos = {0L};
+      stack.push(nestedNanos);
+      long start = System.nanoTime();
+      Class<?> result = null;
+      try {
+        result = super.findClass(name);
+        return result;
+      } finally {
+        long elapsed = System.nanoTime() - start;
+        stack.pop();
+        if (stack.isEmpty()) {
+          synchronized (this) {
+            totalLoadNanos += elapsed;
+          }
+        } else {
+          stack.peek()[0] += elapsed;
+        }
+        if (result != null) {
+          loadedClasses.add(new LoadedClass(name, sourceOf(result), elapsed - nestedNanos[0]));
+        }
+      }
+    }
+
+    private String sourceOf(Class<?> type) {
+      CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+      URL location = codeSource == null ? null : codeSource.getLocation();
+      return location == null ? PLUGIN_SOURCE : sources.getOrDefault(location.toExternalForm(), location.toExternalForm());
+    }
+  }
+}
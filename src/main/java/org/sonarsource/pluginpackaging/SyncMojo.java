@@ -0,0 +1,63 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import static java.lang.String.format;
+
+/**
+ * Copy the exploded plugin to a local deployment directory, for example the one of a development server. Only the
+ * files that changed since the previous synchronization are copied, and the files that are not part of the plugin
+ * anymore are deleted. The plugin must have been packaged with {@code sonar.packaging.exploded}.
+ */
+@Mojo(name = "sync", threadSafe = true)
+public class SyncMojo extends AbstractSonarMojo {
+
+  /**
+   * Directory to copy the exploded plugin to. The plugin is copied in a sub-directory named after its JAR file.
+   */
+  @Parameter(property = "sonar.packaging.deployDirectory", required = true)
+  private File deployDirectory;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    File jarFile = SonarPluginMojo.getJarFile(getOutputDirectory(), getFinalName(), getClassifier());
+    File explodedDir = SonarPluginMojo.getExplodedDirectory(jarFile);
+    if (!new File(explodedDir, PluginArchive.MANIFEST_NAME).isFile()) {
+      throw new MojoFailureException(format("Exploded plugin not found: %s. Package it with -Dsonar.packaging.exploded=true first.", explodedDir));
+    }
+    File targetDir = new File(deployDirectory, StringUtils.removeEnd(jarFile.getName(), ".jar"));
+    ExplodedPlugin.Statistics statistics;
+    try {
+      statistics = ExplodedPlugin.sync(explodedDir, targetDir);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Fail to synchronize " + targetDir, e);
+    }
+    getLog().info(format("Synchronized %s: %d files copied (%d KB), %d unchanged, %d deleted", targetDir,
+      statistics.getWrittenFiles(), statistics.getWrittenBytes() / 1024, statistics.getUnchangedFiles(), statistics.getDeletedFiles()));
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import static java.lang.String.format;
+
+/**
+ * Package the plugin, then package it again each time its classes or its dependencies change, until the build is
+ * interrupted. Bursts of changes, like the classes written by an IDE, are coalesced into a single packaging. Entries
+ * that did not change are copied from the previous JAR file instead of being compressed again. With
+ * {@code sonar.packaging.exploded}, only the changed files of the plugin directory are written.
+ */
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.RUNTIME)
+public class WatchMojo extends SonarPluginMojo {
+
+  /**
+   * Time in milliseconds without any change after which the plugin is packaged again.
+   */
+  @Parameter(property = "sonar.packaging.quietPeriod", defaultValue = "300")
+  private long quietPeriod;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    super.execute();
+    List<Path> trees = new ArrayList<>(Collections.singletonList(getClassesDirectory().toPath()));
+    List<Path> files = new ArrayList<>();
+    for (Artifact artifact : getProject().getArtifacts()) {
+      File file = artifact.getFile();
+      if (file == null) {
+        continue;
+      }
+      // dependencies on modules of the reactor may be resolved to their classes directory
+      if (file.isDirectory()) {
+        trees.add(file.toPath());
+      } else {
+        files.add(file.toPath());
+      }
+    }
+    try (ChangeWatcher watcher = new ChangeWatcher(trees, files)) {
+      getLog().info("Watching " + getClassesDirectory() + " and dependencies, interrupt the build to stop");
+      while (true) {
+        Set<Path> changes = watcher.awaitChanges(quietPeriod);
+        long start = System.nanoTime();
+        try {
+          createArchive();
+          getLog().info(format("%d changes, plugin packaged in %d ms", changes.size(), (System.nanoTime() - start) / 1_000_000));
+        } catch (IllegalStateException e) {
+          // for example a class deleted while being packaged, the next changes will fix it
+          getLog().error(e.getMessage() + ": " + e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      throw new MojoExecutionException("Fail to watch changes", e);
+    }
+  }
+}
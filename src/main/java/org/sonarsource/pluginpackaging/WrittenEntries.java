@@ -0,0 +1,90 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Keys of the entries of a JAR file, written next to it so that a later build can patch it: the entries whose key did
+ * not change are copied from the JAR file without being compressed again.
+ * <p>
+ * The keys are valid only for the JAR file written with the same settings, and only as long as the JAR file is not
+ * modified, for example by another plugin shading it. Both are recorded, as well as the length and time of the JAR
+ * file.
+ */
+class WrittenEntries {
+
+  private static final String SETTINGS = "settings=";
+  private static final String JAR = "jar=";
+
+  private WrittenEntries() {
+    // only static methods
+  }
+
+  static void write(File indexFile, File jarFile, String settings, List<PackagedEntry> entries) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add(SETTINGS + settings);
+    lines.add(JAR + describe(jarFile));
+    for (PackagedEntry entry : entries) {
+      lines.add(entry.getKey() + " " + entry.getName());
+    }
+    Files.createDirectories(indexFile.getParentFile().toPath());
+    Files.write(indexFile.toPath(), lines, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return keys of the entries of the JAR file by entry name, or null if they are unknown, were written with other
+   * settings, or if the JAR file has been modified since then
+   */
+  @CheckForNull
+  static Map<String, String> read(File indexFile, File jarFile, String settings) {
+    if (!indexFile.isFile() || !jarFile.isFile()) {
+      return null;
+    }
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      // an unreadable index only means that all the entries must be compressed again
+      return null;
+    }
+    if (lines.size() < 2 || !lines.get(0).equals(SETTINGS + settings) || !lines.get(1).equals(JAR + describe(jarFile))) {
+      return null;
+    }
+    Map<String, String> keys = new HashMap<>();
+    for (String line : lines.subList(2, lines.size())) {
+      keys.put(StringUtils.substringAfter(line, " "), StringUtils.substringBefore(line, " "));
+    }
+    return keys;
+  }
+
+  private static String describe(File jarFile) {
+    return jarFile.length() + "|" + jarFile.lastModified();
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records the {@link PackagingEvents} as Java Flight Recorder events. Loaded by name, and only when the runtime provides
+ * the {@code jdk.jfr} module.
+ */
+final class JfrPackagingEvents implements PackagingEvents.Recorder {
+
+  private static final String CATEGORY = "SonarQube";
+  private static final String SUBCATEGORY = "Packaging";
+
+  @Override
+  public Object begin(PackagingEvents.PackagingEvent event) {
+    RecordedEvent<?> recorded = create(event);
+    recorded.begin();
+    return recorded;
+  }
+
+  private static RecordedEvent<?> create(PackagingEvents.PackagingEvent event) {
+    if (event instanceof PackagingEvents.DependencyTree) {
+      return new DependencyTree();
+    } else if (event instanceof PackagingEvents.Classification) {
+      return new Classification();
+    } else if (event instanceof PackagingEvents.DependencyCopy) {
+      return new DependencyCopy();
+    } else if (event instanceof PackagingEvents.DirectoryScan) {
+      return new DirectoryScan();
+    } else if (event instanceof PackagingEvents.Manifest) {
+      return new Manifest();
+    } else if (event instanceof PackagingEvents.Archive) {
+      return new Archive();
+    }
+    throw new IllegalArgumentException("Unknown packaging event: " + event.getClass().getName());
+  }
+
+  @Override
+  public boolean shouldCommit(Object recorded) {
+    return ((Event) recorded).shouldCommit();
+  }
+
+  @Override
+  public void commit(Object recorded, PackagingEvents.PackagingEvent event) {
+    ((RecordedEvent<?>) recorded).commit(event);
+  }
+
+  abstract static class RecordedEvent<E extends PackagingEvents.PackagingEvent> extends Event {
+    abstract void copy(E event);
+
+    @SuppressWarnings("unchecked")
+    void commit(PackagingEvents.PackagingEvent event) {
+      copy((E) event);
+      commit();
+    }
+  }
+
+  @Name("org.sonarsource.pluginpackaging.DependencyTree")
+  @Label("Dependency Tree")
+  @Description("Collection of the dependency graph, to find the artifacts provided by the legacy SonarQube API")
+  @Category({CATEGORY, SUBCATEGORY})
+  @StackTrace(false)
+  static final class DependencyTree extends RecordedEvent<PackagingEvents.DependencyTree> {
+    @Label("Project")
+    String project;
+
+    @Label("Provided Artifacts")
+    int providedArtifacts;
+
+    @Override
+    void copy(PackagingEvents.DependencyTree event) {
+      project = event.project;
+      providedArtifacts = event.providedArtifacts;
+    }
+  }
+
+  @Name("org.sonarsource.pluginpackaging.Classification")
+  @Label("Dependency Classification")
+  @Description("Classification of the dependencies of a project: packaged, provided by SonarQube or excluded")
+  @Category({CATEGORY, SUBCATEGORY})
+  @StackTrace(false)
+  static final class Classification extends RecordedEvent<PackagingEvents.Classification> {
+    @Label("Project")
+    String project;
+
+    @Label("Included Artifacts")
+    int includedArtifacts;
+
+    @Label("Provided Artifacts")
+    int providedArtifacts;
+
+    @Label("Packaged Artifacts")
+    int packagedArtifacts;
+
+    @Override
+    void copy(PackagingEvents.Classification event) {
+      project = event.project;
+      includedArtifacts = event.includedArtifacts;
+      providedArtifacts = event.providedArtifacts;
+      packagedArtifacts = event.packagedArtifacts;
+    }
+  }
+
+  @Name("org.sonarsource.pluginpackaging.DependencyCopy")
+  @Label("Dependency Copy")
+  @Description("Copy of a packaged dependency to the META-INF/lib directory of the app directory, through the staging store")
+  @Category({CATEGORY, SUBCATEGORY})
+  @StackTrace(false)
+  static final class DependencyCopy extends RecordedEvent<PackagingEvents.DependencyCopy> {
+    @Label("Artifact")
+    String artifact;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Staged")
+    @Description("False when the copy in META-INF/lib was already up-to-date")
+    boolean staged;
+
+    @Override
+    void copy(PackagingEvents.DependencyCopy event) {
+      artifact = event.artifact;
+      bytes = event.bytes;
+      staged = event.staged;
+    }
+  }
+
+  @Name("org.sonarsource.pluginpackaging.DirectoryScan")
+  @Label("Directory Scan")
+  @Description("Scan of a directory whose files are packaged")
+  @Category({CATEGORY, SUBCATEGORY})
+  @StackTrace(false)
+  static final class DirectoryScan extends RecordedEvent<PackagingEvents.DirectoryScan> {
+    @Label("Directory")
+    String directory;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Override
+    void copy(PackagingEvents.DirectoryScan event) {
+      directory = event.directory;
+      entries = event.entries;
+      bytes = event.bytes;
+    }
+  }
+
+  @Name("org.sonarsource.pluginpackaging.Manifest")
+  @Label("Manifest Assembly")
+  @Category({CATEGORY, SUBCATEGORY})
+  @StackTrace(false)
+  static final class Manifest extends RecordedEvent<PackagingEvents.Manifest> {
+    @Label("Project")
+    String project;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Override
+    void copy(PackagingEvents.Manifest event) {
+      project = event.project;
+      bytes = event.bytes;
+    }
+  }
+
+  @Name("org.sonarsource.pluginpackaging.Archive")
+  @Label("Archive Finalization")
+  @Description("Compression and writing of the entries of a plugin archive")
+  @Category({CATEGORY, SUBCATEGORY})
+  @StackTrace(false)
+  static final class Archive extends RecordedEvent<PackagingEvents.Archive> {
+    @Label("File")
+    String file;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Uncompressed Size")
+    @DataAmount
+    long uncompressedBytes;
+
+    @Label("Compressed Size")
+    @DataAmount
+    long compressedBytes;
+
+    @Label("File Size")
+    @DataAmount
+    long fileSize;
+
+    @Override
+    void copy(PackagingEvents.Archive event) {
+      file = event.file;
+      threads = event.threads;
+      entries = event.entries;
+      uncompressedBytes = event.uncompressedBytes;
+      compressedBytes = event.compressedBytes;
+      fileSize = event.fileSize;
+    }
+  }
+}
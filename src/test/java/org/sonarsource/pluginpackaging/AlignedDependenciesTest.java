@@ -0,0 +1,59 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AlignedDependenciesTest {
+
+  private static final List<String> LIBS = Arrays.asList("META-INF/lib/a.jar", "META-INF/lib/b.jar");
+
+  @Test
+  public void shouldFormatLocationsInOrderOfDependencies() {
+    Map<String, Long> offsets = new HashMap<>();
+    offsets.put("META-INF/lib/b.jar", 8192L);
+    offsets.put("META-INF/lib/a.jar", 4096L);
+    Map<String, Long> lengths = new HashMap<>();
+    lengths.put("META-INF/lib/a.jar", 10L);
+    lengths.put("META-INF/lib/b.jar", 20L);
+
+    String value = AlignedDependencies.format(LIBS, offsets, lengths);
+
+    assertThat(value).isEqualTo("000000004096:000000000010 000000008192:000000000020");
+    assertThat(value.length()).isEqualTo(AlignedDependencies.placeholder(2).length());
+    List<long[]> locations = AlignedDependencies.parse(value);
+    assertThat(locations.get(0)).containsExactly(4096L, 10L);
+    assertThat(locations.get(1)).containsExactly(8192L, 20L);
+  }
+
+  @Test
+  public void shouldFailIfDependencyIsNotAligned() {
+    assertThatThrownBy(() -> AlignedDependencies.format(LIBS, new HashMap<>(), new HashMap<>()))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("Dependency is not aligned: META-INF/lib/a.jar");
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ArchiveFingerprintTest {
+
+  private static final String[] INCLUDES = {"**/**"};
+  private static final String[] EXCLUDES = {"**/package.html"};
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldBeStableWhenInputsDoNotChange() throws IOException {
+    File classes = temp.newFolder();
+    write(new File(classes, "org/foo/Bar.class"), "bar");
+
+    assertThat(fingerprint(classes).compute()).isEqualTo(fingerprint(classes).compute());
+  }
+
+  @Test
+  public void shouldChangeWhenFileIsModified() throws IOException {
+    File classes = temp.newFolder();
+    File file = new File(classes, "org/foo/Bar.class");
+    write(file, "bar");
+    String before = fingerprint(classes).compute();
+
+    write(file, "barbar");
+
+    assertThat(fingerprint(classes).compute()).isNotEqualTo(before);
+  }
+
+  @Test
+  public void shouldChangeWhenContentChangesWithSameSizeAndTime() throws IOException {
+    File classes = temp.newFolder();
+    File file = new File(classes, "org/foo/Bar.class");
+    write(file, "bar");
+    long modified = file.lastModified();
+    String before = fingerprint(classes).compute();
+
+    write(file, "baz");
+    file.setLastModified(modified);
+
+    assertThat(fingerprint(classes).compute()).isNotEqualTo(before);
+  }
+
+  @Test
+  public void shouldChangeWhenFileIsAdded() throws IOException {
+    File classes = temp.newFolder();
+    write(new File(classes, "org/foo/Bar.class"), "bar");
+    String before = fingerprint(classes).compute();
+
+    write(new File(classes, "org/foo/Baz.class"), "baz");
+
+    assertThat(fingerprint(classes).compute()).isNotEqualTo(before);
+  }
+
+  @Test
+  public void shouldIgnoreExcludedFiles() throws IOException {
+    File classes = temp.newFolder();
+    write(new File(classes, "org/foo/Bar.class"), "bar");
+    String before = fingerprint(classes).compute();
+
+    write(new File(classes, "org/foo/package.html"), "doc");
+
+    assertThat(fingerprint(classes).compute()).isEqualTo(before);
+  }
+
+  @Test
+  public void shouldChangeWhenValueChanges() throws IOException {
+    File classes = temp.newFolder();
+
+    assertThat(fingerprint(classes).put("Plugin-Key", "foo").compute())
+      .isNotEqualTo(fingerprint(classes).put("Plugin-Key", "bar").compute());
+  }
+
+  @Test
+  public void shouldWriteAndReadFingerprint() throws IOException {
+    File file = new File(temp.getRoot(), "sonar-packaging/test.jar.fingerprint");
+    assertThat(ArchiveFingerprint.read(file)).isNull();
+
+    ArchiveFingerprint.write(file, "abc");
+
+    assertThat(ArchiveFingerprint.read(file)).isEqualTo("abc");
+  }
+
+  private static ArchiveFingerprint fingerprint(File classes) throws IOException {
+    return new ArchiveFingerprint().putDirectory("classes", classes, INCLUDES, EXCLUDES);
+  }
+
+  private static void write(File file, String content) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
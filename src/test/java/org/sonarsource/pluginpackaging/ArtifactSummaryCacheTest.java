@@ -0,0 +1,189 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ArtifactSummaryCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldSummarizeClassesAndPackages() throws IOException {
+    File jar = jar("a.jar", "org/a/A.class", "org/a/b/B.class", "Root.class", "org/a/rules.xml", "META-INF/MANIFEST.MF", "module-info.class");
+
+    ArtifactSummary summary = ArtifactSummary.compute(jar);
+
+    assertThat(summary.getFileSize()).isEqualTo(jar.length());
+    assertThat(summary.getClasses().keySet()).containsExactly("Root", "org.a.A", "org.a.b.B");
+    assertThat(summary.getPackages()).containsExactly("", "org/a", "org/a/b");
+  }
+
+  @Test
+  public void shouldReadWrittenSummary() throws IOException {
+    ArtifactSummary summary = ArtifactSummary.compute(jar("a.jar", "org/a/A.class", "org/a/b/B.class", "org/é/C.class"));
+
+    ArtifactSummary read = ArtifactSummary.read(ByteBuffer.wrap(summary.toBytes()));
+
+    assertThat(read.getFileSize()).isEqualTo(summary.getFileSize());
+    assertThat(read.getClasses()).isEqualTo(summary.getClasses());
+    assertThat(read.getPackages()).isEqualTo(summary.getPackages());
+  }
+
+  @Test
+  public void shouldFailToReadTruncatedSummary() throws IOException {
+    byte[] bytes = ArtifactSummary.compute(jar("a.jar", "org/a/A.class")).toBytes();
+    ByteBuffer truncated = ByteBuffer.wrap(bytes, 0, bytes.length - 3);
+
+    assertThatThrownBy(() -> ArtifactSummary.read(truncated))
+      .isInstanceOf(IOException.class)
+      .hasMessage("Truncated or corrupted artifact summary");
+  }
+
+  @Test
+  public void shouldFailToReadSummaryWithCorruptedCounts() throws IOException {
+    byte[] bytes = ArtifactSummary.compute(jar("a.jar", "org/a/A.class")).toBytes();
+    // the number of classes follows the magic number, the version and the file size, the length of the pool of class
+    // names follows the size and the two offsets of the name of the class
+    for (int position : new int[] {16, 36}) {
+      for (int count : new int[] {-1, Integer.MAX_VALUE}) {
+        ByteBuffer corrupted = ByteBuffer.wrap(bytes.clone());
+        corrupted.putInt(position, count);
+
+        assertThatThrownBy(() -> ArtifactSummary.read(corrupted))
+          .isInstanceOf(IOException.class)
+          .hasMessage("Truncated or corrupted artifact summary");
+      }
+    }
+  }
+
+  @Test
+  public void shouldReplaceRecordsWithCorruptedCounts() throws IOException {
+    File jar = jar("a.jar", "org/a/A.class");
+    File cacheDir = temp.newFolder("cache");
+    ArtifactSummaryCache cache = new ArtifactSummaryCache(cacheDir, 1024 * 1024);
+    cache.loadPersistent(jar);
+    Path record = record(cacheDir, jar);
+    byte[] bytes = Files.readAllBytes(record);
+    ByteBuffer.wrap(bytes).putInt(16, Integer.MAX_VALUE);
+    Files.write(record, bytes);
+
+    assertThat(cache.loadPersistent(jar).getClasses()).containsKey("org.a.A");
+    assertThat(Files.readAllBytes(record)).isEqualTo(ArtifactSummary.compute(jar).toBytes());
+  }
+
+  @Test
+  public void shouldStoreSummariesByChecksum() throws IOException {
+    File jar = jar("a.jar", "org/a/A.class");
+    File other = jar("b.jar", "org/b/B.class");
+    File cacheDir = temp.newFolder("cache");
+    ArtifactSummaryCache cache = new ArtifactSummaryCache(cacheDir, 1024 * 1024);
+
+    assertThat(cache.loadPersistent(jar).getClasses()).containsKey("org.a.A");
+
+    Path record = record(cacheDir, jar);
+    assertThat(record).exists();
+    // the summary is read from the record, not computed again
+    Files.write(record, ArtifactSummary.compute(other).toBytes());
+    assertThat(cache.loadPersistent(jar).getClasses()).containsKey("org.b.B");
+  }
+
+  @Test
+  public void shouldReplaceCorruptedRecords() throws IOException {
+    File jar = jar("a.jar", "org/a/A.class");
+    File cacheDir = temp.newFolder("cache");
+    ArtifactSummaryCache cache = new ArtifactSummaryCache(cacheDir, 1024 * 1024);
+    cache.loadPersistent(jar);
+    Path record = record(cacheDir, jar);
+    Files.write(record, "corrupted".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(cache.loadPersistent(jar).getClasses()).containsKey("org.a.A");
+    assertThat(Files.readAllBytes(record)).isEqualTo(ArtifactSummary.compute(jar).toBytes());
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedRecords() throws IOException {
+    File a = jar("a.jar", "org/a/A.class");
+    File b = jar("b.jar", "org/b/B.class");
+    File c = jar("c.jar", "org/c/C.class");
+    File cacheDir = temp.newFolder("cache");
+    int recordSize = ArtifactSummary.compute(a).toBytes().length;
+    ArtifactSummaryCache cache = new ArtifactSummaryCache(cacheDir, 3L * recordSize - 1);
+    cache.loadPersistent(a);
+    cache.loadPersistent(b);
+    Files.setLastModifiedTime(record(cacheDir, a), FileTime.fromMillis(1_000L));
+    Files.setLastModifiedTime(record(cacheDir, b), FileTime.fromMillis(2_000L));
+
+    // a becomes the most recently used, then adding c exceeds the maximum size
+    cache.loadPersistent(a);
+    cache.loadPersistent(c);
+
+    assertThat(record(cacheDir, a)).exists();
+    assertThat(record(cacheDir, b)).doesNotExist();
+    assertThat(record(cacheDir, c)).exists();
+  }
+
+  @Test
+  public void shouldKeepSummariesInMemoryUntilJarChanges() throws IOException {
+    File jar = jar("a.jar", "org/a/A.class");
+    ArtifactSummaryCache cache = new ArtifactSummaryCache(temp.newFolder("cache"), 1024 * 1024);
+    long hits = ArtifactSummaryCache.getResidentStatistics().hitCount();
+
+    ArtifactSummary summary = cache.get(jar);
+
+    assertThat(cache.get(jar)).isSameAs(summary);
+    assertThat(ArtifactSummaryCache.getResidentStatistics().hitCount()).isEqualTo(hits + 1);
+    jar("a.jar", "org/a/A.class", "org/a/B.class");
+    jar.setLastModified(jar.lastModified() + 10_000L);
+    assertThat(cache.get(jar).getClasses()).containsKey("org.a.B");
+  }
+
+  @Test
+  public void shouldNotStoreSummariesWhenDisabled() throws IOException {
+    File jar = jar("a.jar", "org/a/A.class");
+    File cacheDir = temp.newFolder("cache");
+
+    assertThat(new ArtifactSummaryCache(cacheDir, 0L).get(jar).getClasses()).containsKey("org.a.A");
+    assertThat(ArtifactSummaryCache.disabled().get(jar).getClasses()).containsKey("org.a.A");
+    assertThat(cacheDir.list()).isEmpty();
+  }
+
+  private static Path record(File cacheDir, File jar) throws IOException {
+    String checksum = DependencyStagingStore.checksum(jar);
+    return cacheDir.toPath().resolve(checksum.substring(0, 2)).resolve(checksum + ".v" + ArtifactSummary.VERSION + ".summary");
+  }
+
+  private File jar(String name, String... entries) throws IOException {
+    return TestJars.jar(temp.getRoot(), name, entries);
+  }
+}
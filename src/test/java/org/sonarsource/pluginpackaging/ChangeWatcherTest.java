@@ -0,0 +1,125 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChangeWatcherTest {
+
+  private static final long QUIET_PERIOD = 200L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldCoalesceBurstOfChanges() throws Exception {
+    Path classes = temp.newFolder("classes").toPath();
+    Files.createDirectories(classes.resolve("org/foo"));
+    try (ChangeWatcher watcher = new ChangeWatcher(Collections.singletonList(classes), Collections.emptyList())) {
+      Thread writer = new Thread(() -> {
+        try {
+          for (int i = 0; i < 5; i++) {
+            Files.write(classes.resolve("org/foo/Class" + i + ".class"), new byte[] {(byte) i});
+            Thread.sleep(20L);
+          }
+        } catch (IOException | InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      writer.start();
+
+      Set<Path> changes = watcher.awaitChanges(QUIET_PERIOD);
+
+      writer.join();
+      assertThat(changes).contains(classes.resolve("org/foo/Class0.class"), classes.resolve("org/foo/Class4.class"));
+    }
+  }
+
+  @Test
+  public void shouldWatchCreatedDirectories() throws Exception {
+    Path classes = temp.newFolder("classes").toPath();
+    try (ChangeWatcher watcher = new ChangeWatcher(Collections.singletonList(classes), Collections.emptyList())) {
+      Files.createDirectories(classes.resolve("org/foo"));
+      Files.write(classes.resolve("org/foo/Bar.class"), new byte[] {1});
+
+      Set<Path> changes = watcher.awaitChanges(QUIET_PERIOD);
+      assertThat(changes).contains(classes.resolve("org"), classes.resolve("org/foo/Bar.class"));
+
+      Files.write(classes.resolve("org/foo/Bar.class"), new byte[] {2});
+      assertThat(watcher.awaitChanges(QUIET_PERIOD)).containsExactly(classes.resolve("org/foo/Bar.class"));
+    }
+  }
+
+  @Test
+  public void shouldWatchTreeCreatedAfterStart() throws Exception {
+    Path classes = temp.getRoot().toPath().resolve("target/classes");
+    try (ChangeWatcher watcher = new ChangeWatcher(Collections.singletonList(classes), Collections.emptyList())) {
+      Files.createDirectories(classes.resolve("org/foo"));
+      Files.write(classes.resolve("org/foo/Bar.class"), new byte[] {1});
+
+      assertThat(watcher.awaitChanges(QUIET_PERIOD)).contains(classes.resolve("org/foo/Bar.class"));
+
+      Files.write(classes.resolve("org/foo/Bar.class"), new byte[] {2});
+      assertThat(watcher.awaitChanges(QUIET_PERIOD)).containsExactly(classes.resolve("org/foo/Bar.class"));
+    }
+  }
+
+  @Test
+  public void shouldWatchTreeDeletedAndCreatedAgain() throws Exception {
+    Path classes = temp.newFolder("classes").toPath();
+    Files.write(classes.resolve("Foo.class"), new byte[] {1});
+    try (ChangeWatcher watcher = new ChangeWatcher(Collections.singletonList(classes), Collections.emptyList())) {
+      Files.delete(classes.resolve("Foo.class"));
+      Files.delete(classes);
+
+      assertThat(watcher.awaitChanges(QUIET_PERIOD)).contains(classes);
+
+      Files.createDirectories(classes);
+      Files.write(classes.resolve("Foo.class"), new byte[] {2});
+      assertThat(watcher.awaitChanges(QUIET_PERIOD)).contains(classes.resolve("Foo.class"));
+
+      Files.write(classes.resolve("Foo.class"), new byte[] {3});
+      assertThat(watcher.awaitChanges(QUIET_PERIOD)).containsExactly(classes.resolve("Foo.class"));
+    }
+  }
+
+  @Test
+  public void shouldWatchOnlyGivenFilesOutsideOfTrees() throws Exception {
+    File repository = temp.newFolder("repository");
+    Path dependency = new File(repository, "foo-1.0.jar").toPath();
+    Files.write(dependency, new byte[] {1});
+    try (ChangeWatcher watcher = new ChangeWatcher(Collections.emptyList(), Collections.singletonList(dependency))) {
+      Files.write(new File(repository, "foo-1.0.pom").toPath(), new byte[] {1});
+      Files.write(dependency, new byte[] {2});
+
+      assertThat(watcher.awaitChanges(QUIET_PERIOD)).containsExactly(dependency);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompressionPolicyTest {
+
+  private static final byte[] TEXT = StringUtils.repeat("function foo() { return 42; }\n", 2_000).getBytes(StandardCharsets.UTF_8);
+  private static final byte[] RANDOM = random(200_000);
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldDeflateCompressibleEntries() {
+    CompressionPolicy.Decision decision = CompressionPolicy.of(Collections.emptyList(), true).decide("static/foo.js", TEXT, Deflater.DEFAULT_COMPRESSION);
+
+    assertThat(decision.getLevel()).isEqualTo(Deflater.DEFAULT_COMPRESSION);
+    assertThat(decision.isAdaptivelyStored()).isFalse();
+    assertThat(decision.getEstimatedExtraBytes()).isZero();
+  }
+
+  @Test
+  public void shouldKeepDeflatedContentWhenWholeEntryIsSampled() {
+    CompressionPolicy policy = CompressionPolicy.of(Collections.emptyList(), true);
+    byte[] large = StringUtils.repeat("function foo() { return 42; }\n", 10_000).getBytes(StandardCharsets.UTF_8);
+
+    assertThat(policy.decide("static/foo.js", TEXT, Deflater.BEST_SPEED).getDeflatedContent()).isEqualTo(PluginJarWriter.deflate(TEXT, Deflater.BEST_SPEED));
+    assertThat(policy.decide("static/large.js", large, Deflater.BEST_SPEED).getDeflatedContent()).isNull();
+    assertThat(policy.decide("bin/analyzer", RANDOM, Deflater.BEST_SPEED).getDeflatedContent()).isNull();
+  }
+
+  @Test
+  public void shouldStoreIncompressibleEntries() {
+    CompressionPolicy.Decision decision = CompressionPolicy.of(Collections.emptyList(), true).decide("bin/analyzer", RANDOM, Deflater.DEFAULT_COMPRESSION);
+
+    assertThat(decision.getLevel()).isEqualTo(Deflater.NO_COMPRESSION);
+    assertThat(decision.isAdaptivelyStored()).isTrue();
+    assertThat(decision.getEstimatedSavedNanos()).isGreaterThanOrEqualTo(decision.getSamplingNanos());
+    assertThat(decision.getEstimatedExtraBytes()).isLessThan(RANDOM.length / 100L);
+  }
+
+  @Test
+  public void shouldDeflateCompressedTypesOnlyIfSampleIsReducedEnough() {
+    byte[] slightlyCompressible = random(200_000);
+    // about 6% of the sample
+    Arrays.fill(slightlyCompressible, 0, 4_000, (byte) 0);
+    CompressionPolicy policy = CompressionPolicy.of(Collections.emptyList(), true);
+
+    assertThat(policy.decide("data/foo.bin", slightlyCompressible, Deflater.DEFAULT_COMPRESSION).isAdaptivelyStored()).isFalse();
+    assertThat(policy.decide("META-INF/lib/foo.jar", slightlyCompressible, Deflater.DEFAULT_COMPRESSION).isAdaptivelyStored()).isTrue();
+    assertThat(policy.decide("META-INF/lib/stored.jar", TEXT, Deflater.DEFAULT_COMPRESSION).isAdaptivelyStored()).isFalse();
+  }
+
+  @Test
+  public void shouldNotSampleSmallEntries() {
+    byte[] small = random(CompressionPolicy.MIN_SAMPLED_SIZE - 1);
+
+    CompressionPolicy.Decision decision = CompressionPolicy.of(Collections.emptyList(), true).decide("icon.png", small, Deflater.BEST_SPEED);
+
+    assertThat(decision.getLevel()).isEqualTo(Deflater.BEST_SPEED);
+    assertThat(decision.getSamplingNanos()).isZero();
+  }
+
+  @Test
+  public void shouldApplyFirstMatchingRule() {
+    CompressionPolicy policy = CompressionPolicy.of(Arrays.asList("static/**=9", "**/*.js=store", "**/*.png = STORE"), false);
+
+    assertThat(policy.decide("static/foo.js", TEXT, Deflater.DEFAULT_COMPRESSION).getLevel()).isEqualTo(Deflater.BEST_COMPRESSION);
+    assertThat(policy.decide("org/foo/bar.js", TEXT, Deflater.DEFAULT_COMPRESSION).getLevel()).isEqualTo(Deflater.NO_COMPRESSION);
+    assertThat(policy.decide("icons/foo.png", TEXT, Deflater.DEFAULT_COMPRESSION).getLevel()).isEqualTo(Deflater.NO_COMPRESSION);
+    assertThat(policy.decide("data.bin", RANDOM, Deflater.DEFAULT_COMPRESSION).getLevel()).isEqualTo(Deflater.DEFAULT_COMPRESSION);
+    assertThat(policy.decide("org/foo/bar.js", TEXT, Deflater.DEFAULT_COMPRESSION).isAdaptivelyStored()).isFalse();
+  }
+
+  @Test
+  public void shouldRejectInvalidRules() {
+    assertThatThrownBy(() -> CompressionPolicy.of(Collections.singletonList("**/*.js"), false))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Invalid compression rule, expected <pattern>=store or <pattern>=<level>: **/*.js");
+    assertThatThrownBy(() -> CompressionPolicy.of(Collections.singletonList("=store"), false))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> CompressionPolicy.of(Collections.singletonList("**/*.js=fast"), false))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Invalid level of compression rule, expected store or a level from 1 to 9: **/*.js=fast");
+    assertThatThrownBy(() -> CompressionPolicy.of(Collections.singletonList("**/*.js=10"), false))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void shouldRecognizeCompressedTypes() {
+    assertThat(CompressionPolicy.isCompressedType("META-INF/lib/foo-1.0.jar")).isTrue();
+    assertThat(CompressionPolicy.isCompressedType("icons/Foo.PNG")).isTrue();
+    assertThat(CompressionPolicy.isCompressedType("data.tar.gz")).isTrue();
+    assertThat(CompressionPolicy.isCompressedType("org/foo/Bar.class")).isFalse();
+    assertThat(CompressionPolicy.isCompressedType("jar")).isFalse();
+    assertThat(CompressionPolicy.isCompressedType("jar.d/README")).isFalse();
+  }
+
+  @Test
+  public void shouldSampleSlicesSpreadOverContent() {
+    byte[] content = new byte[1_000_000];
+    content[content.length - 1] = 1;
+
+    byte[] sample = CompressionPolicy.sample(content);
+
+    assertThat(sample.length).isEqualTo(64 * 1024);
+    assertThat(sample[sample.length - 1]).isEqualTo((byte) 1);
+    assertThat(CompressionPolicy.sample(TEXT)).isSameAs(TEXT);
+  }
+
+  @Test
+  public void shouldSampleFileWithoutReadingItInMemory() throws IOException {
+    byte[] content = random(1_000_000);
+    File file = temp.newFile("data.bin");
+    Files.write(file.toPath(), content);
+    File small = temp.newFile("small.bin");
+    Files.write(small.toPath(), TEXT);
+
+    assertThat(CompressionPolicy.sample(file)).isEqualTo(CompressionPolicy.sample(content));
+    assertThat(CompressionPolicy.sample(small)).isEqualTo(TEXT);
+    CompressionPolicy.Decision decision = CompressionPolicy.of(Collections.emptyList(), true).decide("bin/analyzer", file, Deflater.DEFAULT_COMPRESSION);
+    assertThat(decision.isAdaptivelyStored()).isTrue();
+    assertThat(decision.getEstimatedExtraBytes()).isLessThan(10_000L);
+  }
+
+  private static byte[] random(int size) {
+    byte[] data = new byte[size];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+}
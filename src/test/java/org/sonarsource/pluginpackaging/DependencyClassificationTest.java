@@ -0,0 +1,168 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DependencyClassificationTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final Artifact api = artifact("org.sonarsource.api.plugin", "sonar-plugin-api", "provided", "jar");
+  private final Artifact guava = artifact("com.google.guava", "guava", "compile", "jar");
+  private final Artifact commonsLang = artifact("commons-lang", "commons-lang", "runtime", "jar");
+  private final Artifact javaPlugin = artifact("org.sonarsource.java", "sonar-java-plugin", "compile", "sonar-plugin");
+  private final Artifact junit = artifact("junit", "junit", "test", "jar");
+
+  @Test
+  public void shouldClassifyDependencies() {
+    DependencyClassification classification = DependencyClassification.classify(project());
+
+    assertThat(classification.getPluginApi()).isSameAs(api);
+    assertThat(classification.getIncluded()).containsOnly(guava, commonsLang, javaPlugin);
+    assertThat(classification.getSonarPlugins()).containsOnly(javaPlugin);
+    assertThat(classification.getCandidates()).containsOnly(guava, commonsLang);
+  }
+
+  @Test
+  public void shouldExcludeArtifactsProvidedByApi() throws DependencyCollectionException {
+    DependencyClassification classification = DependencyClassification.classify(project());
+    AtomicInteger loads = new AtomicInteger();
+    DependencyClassification.ProvidedArtifactsLoader loader = () -> {
+      loads.incrementAndGet();
+      return Collections.singleton("commons-lang:commons-lang");
+    };
+
+    assertThat(classification.getProvidedByApi(loader)).containsOnly(commonsLang);
+    assertThat(classification.getPackaged(loader)).containsOnly(guava);
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldShareClassificationInSession() {
+    DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+    MavenProject project = project();
+
+    DependencyClassificationCache cache = DependencyClassificationCache.forSession(session);
+
+    assertThat(DependencyClassificationCache.forSession(session)).isSameAs(cache);
+    assertThat(cache.classify(project)).isSameAs(cache.classify(project));
+    assertThat(DependencyClassificationCache.forSession(new DefaultRepositorySystemSession())).isNotSameAs(cache);
+  }
+
+  @Test
+  public void shouldNotResolveProvidedArtifactsWithoutLegacyApi() throws DependencyCollectionException {
+    DependencyClassificationCache cache = DependencyClassificationCache.forSession(new DefaultRepositorySystemSession());
+
+    assertThat(cache.getProvidedArtifacts(project(), new ProvidedArtifactResolver(null), new DefaultRepositorySystemSession())).isEmpty();
+  }
+
+  @Test
+  public void shouldKeepProvidedArtifactsForNextSessionsUntilLegacyApiChanges() throws IOException, DependencyCollectionException {
+    File apiFile = temp.newFile("sonar-plugin-api.jar");
+    Artifact legacyApi = new DefaultArtifact(ProvidedArtifactResolver.LEGACY_SONAR_GROUP_ID, "sonar-plugin-api", "resident-" + System.nanoTime(),
+      "provided", "jar", null, new DefaultArtifactHandler("jar"));
+    legacyApi.setFile(apiFile);
+    MavenProject project = project();
+    project.getArtifacts().add(legacyApi);
+    AtomicInteger resolutions = new AtomicInteger();
+    ProvidedArtifactResolver resolver = new ProvidedArtifactResolver(null) {
+      @Override
+      Set<String> resolve(MavenProject project, RepositorySystemSession session) {
+        resolutions.incrementAndGet();
+        return Collections.singleton("commons-lang:commons-lang");
+      }
+    };
+
+    Set<String> provided = DependencyClassificationCache.forSession(new DefaultRepositorySystemSession())
+      .getProvidedArtifacts(project, resolver, new DefaultRepositorySystemSession());
+    DependencyClassificationCache nextSession = DependencyClassificationCache.forSession(new DefaultRepositorySystemSession());
+
+    assertThat(nextSession.getProvidedArtifacts(project, resolver, new DefaultRepositorySystemSession())).isSameAs(provided);
+    assertThat(resolutions.get()).isEqualTo(1);
+    assertThat(nextSession.getStatistics().get("residentProvidedArtifacts").hitCount()).isGreaterThan(0L);
+
+    apiFile.setLastModified(apiFile.lastModified() - 10_000L);
+    DependencyClassificationCache.forSession(new DefaultRepositorySystemSession())
+      .getProvidedArtifacts(project, resolver, new DefaultRepositorySystemSession());
+    assertThat(resolutions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldNotShareProvidedArtifactsBetweenModulesWithOtherRuntimeDependencies() {
+    MavenProject project = project();
+    project.getDependencies().add(dependency("com.google.guava", "guava", "33.0.0-jre", "compile"));
+    project.getDependencies().add(dependency("junit", "junit", "4.13", "test"));
+    MavenProject sameRuntimeDependencies = project();
+    sameRuntimeDependencies.getDependencies().add(dependency("com.google.guava", "guava", "33.0.0-jre", null));
+    MavenProject otherRuntimeDependencies = project();
+    otherRuntimeDependencies.getDependencies().add(dependency("com.google.guava", "guava", "32.0.0-jre", "compile"));
+
+    String key = DependencyClassificationCache.providedArtifactsKey(project);
+
+    // test dependencies are not part of the collected tree
+    assertThat(DependencyClassificationCache.providedArtifactsKey(sameRuntimeDependencies)).isEqualTo(key);
+    assertThat(DependencyClassificationCache.providedArtifactsKey(otherRuntimeDependencies)).isNotEqualTo(key);
+    assertThat(DependencyClassificationCache.providedArtifactsKey(project())).isNotEqualTo(key);
+  }
+
+  private static Dependency dependency(String groupId, String artifactId, String version, String scope) {
+    Dependency dependency = new Dependency();
+    dependency.setGroupId(groupId);
+    dependency.setArtifactId(artifactId);
+    dependency.setVersion(version);
+    dependency.setScope(scope);
+    return dependency;
+  }
+
+  private MavenProject project() {
+    MavenProject project = new MavenProject();
+    project.setGroupId("org.foo");
+    project.setArtifactId("sonar-foo-plugin");
+    project.setVersion("1.0");
+    project.setArtifacts(new HashSet<>(Arrays.asList(guava, commonsLang, javaPlugin, junit)));
+    project.setDependencyArtifacts(new HashSet<>(Arrays.asList(api, guava, javaPlugin, junit)));
+    return project;
+  }
+
+  private static Artifact artifact(String groupId, String artifactId, String scope, String type) {
+    return new DefaultArtifact(groupId, artifactId, "1.0", scope, type, null, new DefaultArtifactHandler(type));
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DependencyMinimizerTest {
+
+  private static final String PACKAGE_DIR = "org/sonarsource/pluginpackaging/";
+  private static final String PREFIX = "org.sonarsource.pluginpackaging.DependencyMinimizerTest$";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldRemoveUnreachableClassesOfDependencies() throws IOException {
+    File classesDir = temp.newFolder("classes");
+    copyClass(EntryPoint.class, new File(classesDir, entryName(EntryPoint.class)));
+    File lib = jar("lib.jar", Used.class, UsedTransitively.class, LoadedByName.class, Service.class, Kept.class, Unused.class);
+    Map<String, File> libs = new LinkedHashMap<>();
+    libs.put("META-INF/lib/lib.jar", lib);
+
+    DependencyMinimizer.Result result = new DependencyMinimizer(new File(temp.getRoot(), "minimized"), Collections.singletonList(PREFIX + "Kept"))
+      .minimize(EntryPoint.class.getName(), classesDir, libs);
+
+    File minimized = result.getMinimizedFiles().get("META-INF/lib/lib.jar");
+    assertThat(minimized).isEqualTo(new File(temp.getRoot(), "minimized/META-INF/lib/lib.jar"));
+    assertThat(entries(minimized)).containsExactly(
+      "META-INF/services/org.foo.Api",
+      "readme.txt",
+      entryName(Used.class),
+      entryName(UsedTransitively.class),
+      entryName(LoadedByName.class),
+      entryName(Service.class),
+      entryName(Kept.class));
+    assertThat(result.getRemovedClasses()).isEqualTo(1);
+    assertThat(result.getSavedBytes()).isEqualTo(lib.length() - minimized.length());
+    assertThat(result.toReport()).contains("META-INF/lib/lib.jar: 1 classes removed", "  " + entryName(Unused.class) + "\n");
+  }
+
+  @Test
+  public void shouldNotRewriteUnchangedMinimizedDependencies() throws IOException {
+    File classesDir = temp.newFolder("classes");
+    copyClass(EntryPoint.class, new File(classesDir, entryName(EntryPoint.class)));
+    Map<String, File> libs = new LinkedHashMap<>();
+    libs.put("META-INF/lib/lib.jar", jar("lib.jar", Used.class, UsedTransitively.class, LoadedByName.class, Service.class, Unused.class));
+    DependencyMinimizer minimizer = new DependencyMinimizer(new File(temp.getRoot(), "minimized"), Collections.emptyList());
+    File minimized = minimizer.minimize(EntryPoint.class.getName(), classesDir, libs).getMinimizedFiles().get("META-INF/lib/lib.jar");
+    assertThat(minimized.setLastModified(1_000_000L)).isTrue();
+
+    minimizer.minimize(EntryPoint.class.getName(), classesDir, libs);
+    assertThat(minimized.lastModified()).isEqualTo(1_000_000L);
+
+    libs.put("META-INF/lib/lib.jar", jar("lib.jar", Used.class, UsedTransitively.class, LoadedByName.class, Service.class, Kept.class));
+    minimizer.minimize(EntryPoint.class.getName(), classesDir, libs);
+    assertThat(minimized.lastModified()).isNotEqualTo(1_000_000L);
+    assertThat(entries(minimized)).doesNotContain(entryName(Unused.class), entryName(Kept.class));
+  }
+
+  @Test
+  public void shouldNotWriteDependenciesWithSameFileNameAtSamePath() throws IOException {
+    File classesDir = temp.newFolder("classes");
+    copyClass(EntryPoint.class, new File(classesDir, entryName(EntryPoint.class)));
+    Map<String, File> libs = new LinkedHashMap<>();
+    libs.put("META-INF/lib/foo-lib.jar", jar("foo/lib.jar", Used.class, Unused.class));
+    libs.put("META-INF/lib/bar-lib.jar", jar("bar/lib.jar", UsedTransitively.class, Unused.class));
+
+    Map<String, File> minimized = new DependencyMinimizer(new File(temp.getRoot(), "minimized"), Collections.emptyList())
+      .minimize(EntryPoint.class.getName(), classesDir, libs).getMinimizedFiles();
+
+    assertThat(minimized.get("META-INF/lib/foo-lib.jar")).isNotEqualTo(minimized.get("META-INF/lib/bar-lib.jar"));
+    assertThat(entries(minimized.get("META-INF/lib/foo-lib.jar"))).contains(entryName(Used.class));
+    assertThat(entries(minimized.get("META-INF/lib/bar-lib.jar"))).contains(entryName(UsedTransitively.class));
+  }
+
+  @Test
+  public void shouldNotRewriteDependenciesWithoutUnreachableClasses() throws IOException {
+    File classesDir = temp.newFolder("classes");
+    copyClass(EntryPoint.class, new File(classesDir, entryName(EntryPoint.class)));
+    File lib = jar("lib.jar", Used.class, UsedTransitively.class, LoadedByName.class, Service.class);
+    Map<String, File> libs = new LinkedHashMap<>();
+    libs.put("META-INF/lib/lib.jar", lib);
+
+    DependencyMinimizer.Result result = new DependencyMinimizer(new File(temp.getRoot(), "minimized"), Collections.emptyList())
+      .minimize(EntryPoint.class.getName(), classesDir, libs);
+
+    assertThat(result.getMinimizedFiles().get("META-INF/lib/lib.jar")).isSameAs(lib);
+    assertThat(result.getRemovedClasses()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldExtractReferencedNames() {
+    assertThat(DependencyMinimizer.referencedNames("(Lorg/foo/Bar;[Lorg/foo/Baz;I)V")).contains("org/foo/Bar", "org/foo/Baz");
+    assertThat(DependencyMinimizer.referencedNames("Ljava/util/List<Lorg/foo/Bar;>;")).contains("java/util/List", "org/foo/Bar");
+    assertThat(DependencyMinimizer.referencedNames("org.foo.Bar$Inner")).contains("org/foo/Bar$Inner");
+  }
+
+  @Test
+  public void shouldMatchKeepRules() {
+    assertThat(DependencyMinimizer.matches("org.foo.Bar", "org.foo.Bar")).isTrue();
+    assertThat(DependencyMinimizer.matches("org.foo.*", "org.foo.Bar")).isTrue();
+    assertThat(DependencyMinimizer.matches("org.foo.*", "org.foo.bar.Baz")).isFalse();
+    assertThat(DependencyMinimizer.matches("org.foo.**", "org.foo.bar.Baz")).isTrue();
+    assertThat(DependencyMinimizer.matches("org.foo.**", "org.foobar.Baz")).isFalse();
+  }
+
+  @Test
+  public void shouldIgnoreEntriesThatAreNotClasses() {
+    assertThat(DependencyMinimizer.classNameOf("org/foo/Bar.class")).isEqualTo("org/foo/Bar");
+    assertThat(DependencyMinimizer.classNameOf("META-INF/versions/11/org/foo/Bar.class")).isEqualTo("org/foo/Bar");
+    assertThat(DependencyMinimizer.classNameOf("module-info.class")).isNull();
+    assertThat(DependencyMinimizer.classNameOf("org/foo/package-info.class")).isNull();
+    assertThat(DependencyMinimizer.classNameOf("org/foo/rules.xml")).isNull();
+  }
+
+  @Test
+  public void shouldReadConstantPool() throws IOException {
+    List<String> strings = ConstantPool.readStrings(classBytes(Used.class));
+
+    assertThat(strings).contains(PACKAGE_DIR + "DependencyMinimizerTest$Used", "L" + PACKAGE_DIR + "DependencyMinimizerTest$UsedTransitively;");
+  }
+
+  private File jar(String name, Class<?>... classes) throws IOException {
+    File file = new File(temp.getRoot(), name);
+    Files.createDirectories(file.getParentFile().toPath());
+    try (OutputStream output = Files.newOutputStream(file.toPath()); ZipOutputStream zip = new ZipOutputStream(output)) {
+      zip.putNextEntry(new ZipEntry("META-INF/services/org.foo.Api"));
+      zip.write(("# implementations\n" + Service.class.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+      zip.putNextEntry(new ZipEntry("readme.txt"));
+      zip.write("readme".getBytes(StandardCharsets.UTF_8));
+      for (Class<?> c : classes) {
+        zip.putNextEntry(new ZipEntry(entryName(c)));
+        zip.write(classBytes(c));
+      }
+    }
+    return file;
+  }
+
+  private static List<String> entries(File file) throws IOException {
+    List<String> names = new ArrayList<>();
+    try (ZipFile zipFile = new ZipFile(file)) {
+      for (ZipEntry entry : Collections.list(zipFile.entries())) {
+        names.add(entry.getName());
+      }
+    }
+    return names;
+  }
+
+  private static void copyClass(Class<?> c, File target) throws IOException {
+    Files.createDirectories(target.getParentFile().toPath());
+    Files.write(target.toPath(), classBytes(c));
+  }
+
+  private static byte[] classBytes(Class<?> c) throws IOException {
+    try (InputStream input = c.getResourceAsStream(c.getName().substring(c.getName().lastIndexOf('.') + 1) + ".class")) {
+      return ByteStreams.toByteArray(input);
+    }
+  }
+
+  private static String entryName(Class<?> c) {
+    return c.getName().replace('.', '/') + ".class";
+  }
+
+  static class EntryPoint {
+    static final String LOADED_BY_NAME = "org.sonarsource.pluginpackaging.DependencyMinimizerTest$LoadedByName";
+    final Used used = new Used();
+    final List<String> names = Arrays.asList(LOADED_BY_NAME);
+  }
+
+  static class Used {
+    UsedTransitively next;
+  }
+
+  static class UsedTransitively {
+  }
+
+  static class LoadedByName {
+  }
+
+  static class Service {
+  }
+
+  static class Kept {
+  }
+
+  static class Unused {
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DependencyStagingStoreTest {
+
+  private static final long MAX_SIZE = 1024L * 1024L;
+  private static final long DAY = 24L * 60L * 60L * 1000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldStageFile() throws IOException {
+    File source = write(new File(temp.getRoot(), "repo/foo-1.0.jar"), "foo");
+    File target = new File(temp.getRoot(), "app/META-INF/lib/foo-1.0.jar");
+    DependencyStagingStore store = new DependencyStagingStore(new File(temp.getRoot(), "store"), MAX_SIZE);
+
+    assertThat(store.stage(source, target)).isTrue();
+
+    assertThat(new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8)).isEqualTo("foo");
+  }
+
+  @Test
+  public void shouldNotStageUnchangedFileTwice() throws IOException {
+    File source = write(new File(temp.getRoot(), "repo/foo-1.0.jar"), "foo");
+    File target = new File(temp.getRoot(), "app/META-INF/lib/foo-1.0.jar");
+    DependencyStagingStore store = new DependencyStagingStore(new File(temp.getRoot(), "store"), MAX_SIZE);
+    store.stage(source, target);
+
+    assertThat(store.stage(source, target)).isFalse();
+  }
+
+  @Test
+  public void shouldShareStoredFileBetweenTargets() throws IOException {
+    File source = write(new File(temp.getRoot(), "repo/foo-1.0.jar"), "foo");
+    File target1 = new File(temp.getRoot(), "module1/META-INF/lib/foo-1.0.jar");
+    File target2 = new File(temp.getRoot(), "module2/META-INF/lib/foo-1.0.jar");
+    File storeDir = new File(temp.getRoot(), "store");
+    DependencyStagingStore store = new DependencyStagingStore(storeDir, MAX_SIZE);
+
+    store.stage(source, target1);
+    store.stage(source, target2);
+
+    File stored = new File(storeDir, DependencyStagingStore.checksum(source).substring(0, 2));
+    assertThat(stored.list()).hasSize(1);
+    assertThat(Files.isSameFile(target1.toPath(), target2.toPath())).isTrue();
+  }
+
+  @Test
+  public void shouldReplaceTargetWhenContentChanges() throws IOException {
+    File source = write(new File(temp.getRoot(), "repo/foo-1.0.jar"), "foo");
+    File target = new File(temp.getRoot(), "app/META-INF/lib/foo-1.0.jar");
+    DependencyStagingStore store = new DependencyStagingStore(new File(temp.getRoot(), "store"), MAX_SIZE);
+    store.stage(source, target);
+
+    write(source, "new content");
+
+    assertThat(store.stage(source, target)).isTrue();
+    assertThat(new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8)).isEqualTo("new content");
+  }
+
+  @Test
+  public void shouldKeepStoredFilesWritable() throws IOException {
+    File source = write(new File(temp.getRoot(), "repo/foo-1.0.jar"), "foo");
+    File target = new File(temp.getRoot(), "app/META-INF/lib/foo-1.0.jar");
+    DependencyStagingStore store = new DependencyStagingStore(new File(temp.getRoot(), "store"), MAX_SIZE);
+
+    store.stage(source, target);
+
+    assertThat(target.canWrite()).isTrue();
+  }
+
+  @Test
+  public void shouldEvictOldestStoredFilesWhenStoreIsFull() throws IOException {
+    File storeDir = new File(temp.getRoot(), "store");
+    DependencyStagingStore store = new DependencyStagingStore(storeDir, 10L);
+    File old = write(new File(temp.getRoot(), "repo/old-1.0.jar"), "old file");
+    File target = new File(temp.getRoot(), "app/META-INF/lib/old-1.0.jar");
+    store.stage(old, target);
+    File stored = new File(storeDir, DependencyStagingStore.checksum(old).substring(0, 2) + "/" + DependencyStagingStore.checksum(old));
+    assertThat(stored.setLastModified(stored.lastModified() - 60_000L)).isTrue();
+
+    store.stage(write(new File(temp.getRoot(), "repo/new-1.0.jar"), "new file"), new File(temp.getRoot(), "app/META-INF/lib/new-1.0.jar"));
+
+    assertThat(stored).doesNotExist();
+    // staged files are still valid
+    assertThat(new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8)).isEqualTo("old file");
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyStagedFiles() throws IOException {
+    File storeDir = new File(temp.getRoot(), "store");
+    DependencyStagingStore store = new DependencyStagingStore(storeDir, 24L);
+    File used = write(new File(temp.getRoot(), "repo/used-1.0.jar"), "used file");
+    File unused = write(new File(temp.getRoot(), "repo/unused-1.0.jar"), "other one");
+    File usedTarget = new File(temp.getRoot(), "app/META-INF/lib/used-1.0.jar");
+    store.stage(used, usedTarget);
+    store.stage(unused, new File(temp.getRoot(), "app/META-INF/lib/unused-1.0.jar"));
+    File storedUsed = stored(storeDir, used);
+    File storedUnused = stored(storeDir, unused);
+    assertThat(storedUsed.setLastModified(storedUsed.lastModified() - 3 * DAY)).isTrue();
+    assertThat(storedUnused.setLastModified(storedUnused.lastModified() - 2 * DAY)).isTrue();
+
+    // staged by the next build, although it is up-to-date
+    assertThat(store.stage(used, usedTarget)).isFalse();
+    store.stage(write(new File(temp.getRoot(), "repo/new-1.0.jar"), "new file!"), new File(temp.getRoot(), "app/META-INF/lib/new-1.0.jar"));
+
+    assertThat(storedUsed).exists();
+    assertThat(storedUnused).doesNotExist();
+  }
+
+  @Test
+  public void shouldNotChangeTimeOfRecentlyStagedFiles() throws IOException {
+    File storeDir = new File(temp.getRoot(), "store");
+    DependencyStagingStore store = new DependencyStagingStore(storeDir, MAX_SIZE);
+    File source = write(new File(temp.getRoot(), "repo/foo-1.0.jar"), "foo");
+    File target = new File(temp.getRoot(), "app/META-INF/lib/foo-1.0.jar");
+    store.stage(source, target);
+    File stored = stored(storeDir, source);
+    long time = stored.lastModified() - 60_000L;
+    assertThat(stored.setLastModified(time)).isTrue();
+
+    store.stage(source, target);
+
+    // staged files are synced by time
+    assertThat(stored.lastModified()).isEqualTo(time);
+  }
+
+  private static File stored(File storeDir, File source) throws IOException {
+    String checksum = DependencyStagingStore.checksum(source);
+    return new File(storeDir, checksum.substring(0, 2) + "/" + checksum);
+  }
+
+  private static File write(File file, String content) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DirectorySizeLimitTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldWalkDirectoryOnlyWhenTrackedSizeExceedsLimit() throws IOException {
+    File dir = temp.newFolder("cache");
+    DirectorySizeLimit limit = new DirectorySizeLimit(dir.toPath(), 100L, file -> true);
+    limit.reserve(10L);
+    // written by another process, not tracked
+    File other = write(new File(dir, "other"), 200);
+    other.setLastModified(1_000L);
+
+    limit.reserve(10L);
+    assertThat(other).exists();
+
+    limit.reserve(90L);
+    assertThat(other).doesNotExist();
+  }
+
+  @Test
+  public void shouldDeleteOldestFilesFirst() throws IOException {
+    File dir = temp.newFolder("cache");
+    File oldest = write(new File(dir, "a/oldest"), 40);
+    oldest.setLastModified(1_000L);
+    File newest = write(new File(dir, "b/newest"), 40);
+    newest.setLastModified(2_000L);
+    File ignored = write(new File(dir, "b/ignored.tmp"), 40);
+    ignored.setLastModified(500L);
+
+    new DirectorySizeLimit(dir.toPath(), 100L, file -> !file.getFileName().toString().endsWith(".tmp")).reserve(30L);
+
+    assertThat(oldest).doesNotExist();
+    assertThat(newest).exists();
+    assertThat(ignored).exists();
+  }
+
+  private static File write(File file, int size) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), new byte[size]);
+    return file;
+  }
+}
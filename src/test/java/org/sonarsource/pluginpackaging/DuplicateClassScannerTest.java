@@ -0,0 +1,101 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DuplicateClassScannerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldReportConflictsByPairOfJars() throws IOException {
+    Map<String, File> jars = new LinkedHashMap<>();
+    jars.put("a.jar", jar("a.jar", "org/a/A.class", "org/shared/S.class", "org/shared/T.class", "module-info.class"));
+    jars.put("b.jar", jar("b.jar", "org/b/B.class", "org/shared/S.class", "org/shared/T.class", "module-info.class"));
+    jars.put("c.jar", jar("c.jar", "org/shared/T.class", "META-INF/versions/11/org/a/A.class", "org/c/"));
+
+    List<DuplicateClassScanner.Conflict> conflicts = new DuplicateClassScanner(2).scan(jars);
+
+    assertThat(conflicts).hasSize(2);
+    assertThat(conflicts.get(0).getFirstJar()).isEqualTo("a.jar");
+    assertThat(conflicts.get(0).getSecondJar()).isEqualTo("b.jar");
+    assertThat(conflicts.get(0).getClasses()).containsExactly("org.shared.S", "org.shared.T");
+    assertThat(conflicts.get(0).getWastedBytes()).isGreaterThan(0L);
+    assertThat(conflicts.get(1).getFirstJar()).isEqualTo("a.jar");
+    assertThat(conflicts.get(1).getSecondJar()).isEqualTo("c.jar");
+    assertThat(conflicts.get(1).getClasses()).containsExactly("org.shared.T");
+  }
+
+  @Test
+  public void shouldNotReportJarsWithoutConflicts() throws IOException {
+    Map<String, File> jars = new LinkedHashMap<>();
+    jars.put("a.jar", jar("a.jar", "org/a/A.class"));
+    jars.put("b.jar", jar("b.jar", "org/b/A.class"));
+
+    assertThat(new DuplicateClassScanner(4).scan(jars)).isEmpty();
+  }
+
+  @Test
+  public void shouldReadZip64CentralDirectory() throws IOException {
+    File file = new File(temp.getRoot(), "zip64.jar");
+    try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(file)) {
+      output.setUseZip64(Zip64Mode.Always);
+      output.putArchiveEntry(new ZipArchiveEntry("org/foo/Foo.class"));
+      output.write("foo".getBytes(StandardCharsets.UTF_8));
+      output.closeArchiveEntry();
+    }
+
+    Map<String, Long> classes = DuplicateClassScanner.readClasses(file);
+
+    assertThat(classes).containsOnlyKeys("org.foo.Foo");
+    assertThat(classes.get("org.foo.Foo")).isGreaterThan(0L);
+  }
+
+  @Test
+  public void shouldFailIfNotAJar() throws IOException {
+    File file = temp.newFile("not-a.jar");
+    Files.write(file.toPath(), new byte[100]);
+
+    assertThatThrownBy(() -> DuplicateClassScanner.readClasses(file))
+      .isInstanceOf(IOException.class)
+      .hasMessageContaining("end of central directory not found");
+  }
+
+  private File jar(String name, String... entries) throws IOException {
+    return TestJars.jar(temp.getRoot(), name, entries);
+  }
+}
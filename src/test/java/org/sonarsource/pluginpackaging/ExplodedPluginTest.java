@@ -0,0 +1,166 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExplodedPluginTest {
+
+  private static final long TIME = 1_600_000_000_000L;
+  private static final String LIB = "META-INF/lib/foo-1.0.jar";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteAllFilesOfNewDirectory() throws IOException {
+    File dir = new File(temp.getRoot(), "plugin");
+
+    ExplodedPlugin.Statistics statistics = write(dir, entries());
+
+    assertThat(statistics.getWrittenFiles()).isEqualTo(3);
+    assertThat(statistics.getUnchangedFiles()).isZero();
+    assertThat(read(new File(dir, PluginArchive.MANIFEST_NAME))).isEqualTo("Manifest-Version: 1.0\r\n\r\n");
+    assertThat(read(new File(dir, "org/foo/Bar.class"))).isEqualTo("bar");
+    assertThat(read(new File(dir, LIB))).isEqualTo("lib");
+    assertThat(new File(dir, "org/foo/Bar.class").lastModified()).isEqualTo(new File(temp.getRoot(), "classes/org/foo/Bar.class").lastModified());
+  }
+
+  @Test
+  public void shouldWriteOnlyChangedFiles() throws IOException {
+    File dir = new File(temp.getRoot(), "plugin");
+    write(dir, entries());
+    File barClass = source("classes/org/foo/Bar.class", "bar v2");
+    barClass.setLastModified(TIME + 1_000L);
+
+    ExplodedPlugin.Statistics statistics = write(dir, entries());
+
+    assertThat(statistics.getWrittenFiles()).isEqualTo(1);
+    assertThat(statistics.getWrittenBytes()).isEqualTo(6L);
+    assertThat(statistics.getUnchangedFiles()).isEqualTo(2);
+    assertThat(read(new File(dir, "org/foo/Bar.class"))).isEqualTo("bar v2");
+  }
+
+  @Test
+  public void shouldDeleteFilesThatAreNotEntriesAnymore() throws IOException {
+    File dir = new File(temp.getRoot(), "plugin");
+    write(dir, entries());
+    List<PackagedEntry> entries = entries();
+    entries.removeIf(entry -> entry.getName().startsWith("org/"));
+
+    ExplodedPlugin.Statistics statistics = write(dir, entries);
+
+    assertThat(statistics.getDeletedFiles()).isEqualTo(1);
+    assertThat(new File(dir, "org")).doesNotExist();
+    assertThat(new File(dir, LIB)).exists();
+  }
+
+  @Test
+  public void shouldLinkDependenciesFromStagingStore() throws IOException {
+    File dir1 = new File(temp.getRoot(), "plugin1");
+    File dir2 = new File(temp.getRoot(), "plugin2");
+
+    write(dir1, entries());
+    write(dir2, entries());
+
+    assertThat(Files.isSameFile(new File(dir1, LIB).toPath(), new File(dir2, LIB).toPath())).isTrue();
+    assertThat(Files.isSameFile(new File(dir1, "org/foo/Bar.class").toPath(), new File(dir2, "org/foo/Bar.class").toPath())).isFalse();
+  }
+
+  @Test
+  public void shouldNotChangeTimeOfStoredDependencies() throws IOException {
+    File dir = new File(temp.getRoot(), "plugin");
+    write(dir, entries());
+    File stored = new File(temp.getRoot(), "store/" + DependencyStagingStore.checksum(new File(temp.getRoot(), "repo/foo-1.0.jar")).substring(0, 2)).listFiles()[0];
+    long storedTime = stored.lastModified();
+
+    ExplodedPlugin.Statistics statistics = write(dir, entries());
+
+    assertThat(statistics.getUnchangedFiles()).isEqualTo(3);
+    assertThat(Files.isSameFile(new File(dir, LIB).toPath(), stored.toPath())).isTrue();
+    assertThat(stored.lastModified()).isEqualTo(storedTime).isNotEqualTo(TIME);
+  }
+
+  @Test
+  public void shouldSyncChangedFiles() throws IOException {
+    File dir = new File(temp.getRoot(), "plugin");
+    File deployed = new File(temp.getRoot(), "server/plugins/plugin");
+    write(dir, entries());
+
+    ExplodedPlugin.Statistics first = ExplodedPlugin.sync(dir, deployed);
+    ExplodedPlugin.Statistics second = ExplodedPlugin.sync(dir, deployed);
+    Files.write(new File(dir, PluginArchive.MANIFEST_NAME).toPath(), "Manifest-Version: 2.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(deployed, "org/foo/Stale.class").toPath(), new byte[] {1});
+    ExplodedPlugin.Statistics third = ExplodedPlugin.sync(dir, deployed);
+
+    assertThat(first.getWrittenFiles()).isEqualTo(3);
+    assertThat(second.getWrittenFiles()).isZero();
+    assertThat(second.getUnchangedFiles()).isEqualTo(3);
+    assertThat(third.getWrittenFiles()).isEqualTo(1);
+    assertThat(third.getDeletedFiles()).isEqualTo(1);
+    assertThat(read(new File(deployed, PluginArchive.MANIFEST_NAME))).isEqualTo("Manifest-Version: 2.0\r\n\r\n");
+    assertThat(new File(deployed, "org/foo/Stale.class")).doesNotExist();
+    assertThat(Files.isSameFile(new File(dir, LIB).toPath(), new File(deployed, LIB).toPath())).isFalse();
+  }
+
+  private ExplodedPlugin.Statistics write(File dir, List<PackagedEntry> entries) throws IOException {
+    return ExplodedPlugin.write(dir, entries, LIB::equals, new DependencyStagingStore(new File(temp.getRoot(), "store"), 1024L * 1024L));
+  }
+
+  private List<PackagedEntry> entries() throws IOException {
+    File barClass = new File(temp.getRoot(), "classes/org/foo/Bar.class");
+    if (!barClass.exists()) {
+      source("classes/org/foo/Bar.class", "bar").setLastModified(TIME);
+    }
+    File lib = new File(temp.getRoot(), "repo/foo-1.0.jar");
+    if (!lib.exists()) {
+      source("repo/foo-1.0.jar", "lib").setLastModified(TIME);
+    }
+    return new ArrayList<>(Arrays.asList(
+      PackagedEntry.directory("META-INF/", TIME),
+      PackagedEntry.content(PluginArchive.MANIFEST_NAME, "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8), TIME),
+      PackagedEntry.directory("org/", TIME),
+      PackagedEntry.directory("org/foo/", TIME),
+      PackagedEntry.file("org/foo/Bar.class", barClass),
+      PackagedEntry.file(LIB, lib)));
+  }
+
+  private File source(String path, String content) throws IOException {
+    File file = new File(temp.getRoot(), path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}
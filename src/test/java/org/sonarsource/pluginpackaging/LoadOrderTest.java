@@ -0,0 +1,89 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadOrderTest {
+
+  private static final long TIME = 1_600_000_000_000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteStartupEntriesFirst() {
+    List<PackagedEntry> entries = Arrays.asList(
+      PackagedEntry.directory("META-INF/", TIME),
+      PackagedEntry.directory("META-INF/lib/", TIME),
+      PackagedEntry.content("META-INF/lib/a-1.0.jar", new byte[1], TIME),
+      PackagedEntry.content("META-INF/lib/b-1.0.jar", new byte[1], TIME),
+      PackagedEntry.content(PackageIndex.ENTRY_NAME, new byte[1], TIME),
+      PackagedEntry.directory("org/", TIME),
+      PackagedEntry.directory("org/foo/", TIME),
+      PackagedEntry.content("org/foo/Other.class", new byte[1], TIME),
+      PackagedEntry.content("org/foo/Plugin.class", new byte[1], TIME),
+      PackagedEntry.content(PluginArchive.MANIFEST_NAME, new byte[1], TIME));
+
+    List<PackagedEntry> ordered = LoadOrder.apply(entries, Arrays.asList("org/foo/Plugin.class", "META-INF/lib/b-1.0.jar", "org/foo/Unknown.class"));
+
+    assertThat(ordered.stream().map(PackagedEntry::getName).collect(Collectors.toList())).containsExactly(
+      "META-INF/",
+      PluginArchive.MANIFEST_NAME,
+      PackageIndex.ENTRY_NAME,
+      "org/",
+      "org/foo/",
+      "org/foo/Plugin.class",
+      "META-INF/lib/",
+      "META-INF/lib/b-1.0.jar",
+      "META-INF/lib/a-1.0.jar",
+      "org/foo/Other.class");
+  }
+
+  @Test
+  public void shouldReadClassAndEntryNames() throws IOException {
+    File file = temp.newFile("load-order.txt");
+    Files.write(file.toPath(), Arrays.asList("# comment", "", " org.foo.Plugin ", "org.foo.Plugin$Inner", "org/foo/Bar.class", "META-INF/lib/a-1.0.jar"),
+      StandardCharsets.UTF_8);
+
+    assertThat(LoadOrder.read(file)).containsExactly("org/foo/Plugin.class", "org/foo/Plugin$Inner.class", "org/foo/Bar.class", "META-INF/lib/a-1.0.jar");
+  }
+
+  @Test
+  public void shouldReadWrittenOrder() throws IOException {
+    File file = new File(temp.getRoot(), "plugin.jar.load-order");
+    List<String> names = Arrays.asList("org/foo/Plugin.class", "META-INF/lib/a-1.0.jar");
+
+    LoadOrder.write(file, names);
+
+    assertThat(LoadOrder.read(file)).isEqualTo(names);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PackageIndexTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldFindJarsOfPackages() throws IOException {
+    PackageIndex index = new PackageIndex.Builder()
+      .addPluginEntry("META-INF/MANIFEST.MF")
+      .addPluginEntry("org/")
+      .addPluginEntry("org/foo/FooPlugin.class")
+      .addPluginEntry("org/foo/rules.xml")
+      .addPluginEntry("Default.class")
+      .addJar("META-INF/lib/a.jar", jar("a.jar", "org/a/A.class", "org/shared/A.class", "META-INF/maven/a/pom.xml"))
+      .addJar("META-INF/lib/b.jar", jar("b.jar", "org/b/B.class", "org/shared/B.class", "META-INF/versions/11/org/b11/B.class"))
+      .build();
+
+    PackageIndex read = PackageIndex.read(new ByteArrayInputStream(index.toBytes()));
+
+    assertThat(read.getPackageCount()).isEqualTo(6);
+    assertThat(read.findJars("org.foo.FooPlugin")).containsExactly(PackageIndex.PLUGIN_JAR);
+    assertThat(read.findJars("Default")).containsExactly(PackageIndex.PLUGIN_JAR);
+    assertThat(read.findJars("org.a.A$Inner")).containsExactly(1);
+    assertThat(read.findJars("org.shared.C")).containsExactly(1, 2);
+    assertThat(read.findJars("org.b11.B")).containsExactly(2);
+    assertThat(read.findJars("org.unknown.C")).isEmpty();
+    assertThat(read.findJarsOfPackage("META-INF/maven/a")).isEmpty();
+    assertThat(read.getJar(2)).isEqualTo("META-INF/lib/b.jar");
+  }
+
+  @Test
+  public void shouldIgnoreDirectoriesAndMetaInf() {
+    assertThat(PackageIndex.packageOf("org/foo/")).isNull();
+    assertThat(PackageIndex.packageOf("META-INF/services/org.foo.Api")).isNull();
+    assertThat(PackageIndex.packageOf("META-INF/versions/9/org/foo/Bar.class")).isEqualTo("org/foo");
+    assertThat(PackageIndex.packageOf("org/foo/Bar.class")).isEqualTo("org/foo");
+    assertThat(PackageIndex.packageOf("Bar.class")).isEqualTo("");
+  }
+
+  @Test
+  public void shouldFailToReadUnknownFormat() {
+    assertThatThrownBy(() -> PackageIndex.read(new ByteArrayInputStream(new byte[8])))
+      .isInstanceOf(IOException.class)
+      .hasMessage("Not a package index of version 1");
+  }
+
+  private File jar(String name, String... entries) throws IOException {
+    return TestJars.jar(temp.getRoot(), name, entries);
+  }
+}
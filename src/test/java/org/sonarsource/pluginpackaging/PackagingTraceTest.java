@@ -0,0 +1,99 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.cache.CacheStats;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PackagingTraceTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteSpansAndCounters() throws IOException {
+    PackagingTrace trace = new PackagingTrace("org.foo:sonar-foo-plugin:jar:1.0", "sonar-foo-plugin-1.0.jar");
+    try (PackagingTrace.Span span = trace.start("scan")) {
+      trace.count(PackagingTrace.ENTRIES, 2).count(PackagingTrace.ENTRIES, 3);
+    }
+    trace.count(PackagingTrace.UNCOMPRESSED_BYTES, 1000).count(PackagingTrace.COMPRESSED_BYTES, 250)
+      .max(PackagingTrace.PEAK_BUFFER_BYTES, 10).max(PackagingTrace.PEAK_BUFFER_BYTES, 5);
+    trace.finish();
+    File file = new File(temp.getRoot(), "target/trace.json");
+
+    trace.write(file);
+
+    String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertThat(json)
+      .startsWith("{\"module\":\"org.foo:sonar-foo-plugin:jar:1.0\",\"file\":\"sonar-foo-plugin-1.0.jar\",\"upToDate\":false,\"durationMs\":")
+      .contains("\"compressionRatio\":0.2500", "\"spans\":[{\"name\":\"scan\",\"startMs\":")
+      .endsWith("\"counters\":{\"entries\":5,\"uncompressedBytes\":1000,\"compressedBytes\":250,\"peakBufferBytes\":10}}");
+  }
+
+  @Test
+  public void shouldHaveNoCompressionWithoutContent() {
+    assertThat(new PackagingTrace("module", "file").getCompressionRatio()).isEqualTo(1.0);
+  }
+
+  @Test
+  public void shouldEscapeStrings() {
+    assertThat(PackagingTrace.quote("a\"b\\c\n")).isEqualTo("\"a\\\"b\\\\c\\u000a\"");
+  }
+
+  @Test
+  public void shouldAggregateTracesOfModules() {
+    PackagingSummary summary = new PackagingSummary();
+    summary.add(trace("foo", 10));
+    summary.add(trace("bar", 20));
+    // packaged again by another execution
+    summary.add(trace("foo", 15));
+
+    assertThat(summary.toJson())
+      .startsWith("{\"modules\":2,\"upToDate\":0,\"durationMs\":")
+      .contains("\"entries\":35,\"bytesRead\":0", "\"peakBufferBytes\":20,\"caches\":{},\"traces\":[{\"module\":\"bar\"");
+  }
+
+  @Test
+  public void shouldAddCacheStatisticsToSummary() {
+    PackagingSummary summary = new PackagingSummary();
+    Map<String, CacheStats> statistics = new LinkedHashMap<>();
+    statistics.put("classifications", new CacheStats(3, 1, 1, 0, 10, 0));
+    summary.setCacheStatistics(statistics);
+
+    assertThat(summary.toJson()).contains("\"caches\":{\"classifications\":{\"hits\":3,\"misses\":1,\"hitRate\":0.750,\"evictions\":0}}");
+  }
+
+  private static PackagingTrace trace(String module, int entries) {
+    PackagingTrace trace = new PackagingTrace(module, module + ".jar");
+    trace.count(PackagingTrace.ENTRIES, entries).max(PackagingTrace.PEAK_BUFFER_BYTES, entries);
+    trace.finish();
+    return trace;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PluginArchiveTest {
+
+  private static final long TIME = 1_600_000_000_000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldAddParentDirectories() {
+    PluginArchive archive = new PluginArchive(TIME);
+    archive.addContent("org/foo/Bar.class", new byte[0], TIME);
+
+    assertThat(names(archive.getEntries())).containsExactly("org/", "org/foo/", "org/foo/Bar.class");
+  }
+
+  @Test
+  public void shouldKeepFirstEntryWithSameName() {
+    PluginArchive archive = new PluginArchive(TIME);
+    archive.addContent("a.txt", "first".getBytes(StandardCharsets.UTF_8), TIME);
+    archive.addContent("a.txt", "second".getBytes(StandardCharsets.UTF_8), TIME);
+
+    assertThat(archive.getEntries()).hasSize(1);
+    assertThat(archive.getEntries().get(0).getSize()).isEqualTo(5L);
+  }
+
+  @Test
+  public void shouldSortCanonicalEntriesWithManifestFirst() throws IOException {
+    File dir = temp.newFolder();
+    Files.createDirectories(dir.toPath().resolve("org/foo-bar"));
+    Files.write(dir.toPath().resolve("org/foo-bar/B.class"), new byte[0]);
+    Files.createDirectories(dir.toPath().resolve("org/foo"));
+    Files.write(dir.toPath().resolve("org/foo/A.class"), new byte[0]);
+    PluginArchive archive = new PluginArchive(TIME);
+    archive.addContent("META-INF/sonar-package-index.bin", new byte[0], TIME);
+    archive.addDirectory(dir, "", new String[] {"**/*"}, new String[0]);
+    archive.addContent(PluginArchive.MANIFEST_NAME, new byte[0], TIME);
+    archive.addContent("META-INF/lib/a.jar", new byte[0], TIME);
+
+    assertThat(names(archive.getCanonicalEntries())).containsExactly(
+      "META-INF/",
+      PluginArchive.MANIFEST_NAME,
+      "META-INF/lib/",
+      "META-INF/lib/a.jar",
+      "META-INF/sonar-package-index.bin",
+      "org/",
+      "org/foo-bar/",
+      "org/foo-bar/B.class",
+      "org/foo/",
+      "org/foo/A.class");
+  }
+
+  private static List<String> names(List<PackagedEntry> entries) {
+    List<String> names = new ArrayList<>();
+    for (PackagedEntry entry : entries) {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PluginDeltaTest {
+
+  private static final long TIME = 1_600_000_000_000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldRebuildNewVersionFromPrevious() throws IOException {
+    byte[] previous = pluginJar("1.0", "old", TIME, ZipEntry.DEFLATED);
+    byte[] current = pluginJar("1.1", "new", TIME + 60_000L, ZipEntry.DEFLATED);
+
+    PluginDelta delta = PluginDelta.compute(previous, current);
+
+    assertThat(apply(previous, delta)).isEqualTo(current);
+    // manifest, unchanged class, changed class, added class and library
+    assertThat(delta.getUnchangedEntries() + delta.getChangedEntries()).isEqualTo(5);
+    assertThat(delta.getDiffedLibraries()).isEqualTo(1);
+    assertThat(delta.getBytes().length).isLessThan(current.length / 4);
+  }
+
+  @Test
+  public void shouldDiffStoredLibraries() throws IOException {
+    byte[] previous = pluginJar("1.0", "old", TIME, ZipEntry.STORED);
+    byte[] current = pluginJar("1.1", "new", TIME, ZipEntry.STORED);
+
+    PluginDelta delta = PluginDelta.compute(previous, current);
+
+    assertThat(apply(previous, delta)).isEqualTo(current);
+    assertThat(delta.getDiffedLibraries()).isEqualTo(1);
+    assertThat(delta.getBytes().length).isLessThan(current.length / 4);
+  }
+
+  @Test
+  public void shouldCopyUnchangedFile() throws IOException {
+    byte[] jar = pluginJar("1.0", "old", TIME, ZipEntry.DEFLATED);
+
+    PluginDelta delta = PluginDelta.compute(jar, jar);
+
+    assertThat(apply(jar, delta)).isEqualTo(jar);
+    assertThat(delta.getChangedEntries()).isZero();
+    assertThat(delta.getBytes().length).isLessThan(1_000);
+  }
+
+  @Test
+  public void shouldRejectOtherPreviousVersion() throws IOException {
+    byte[] previous = pluginJar("1.0", "old", TIME, ZipEntry.DEFLATED);
+    byte[] current = pluginJar("1.1", "new", TIME, ZipEntry.DEFLATED);
+    PluginDelta delta = PluginDelta.compute(previous, current);
+
+    assertThatThrownBy(() -> apply(current, delta))
+      .isInstanceOf(IOException.class)
+      .hasMessage("The delta does not apply to this version of the plugin");
+  }
+
+  @Test
+  public void shouldRejectOtherDeflaterWhenLibrariesAreRecompressed() throws IOException {
+    byte[] previous = pluginJar("1.0", "old", TIME, ZipEntry.DEFLATED);
+    byte[] current = pluginJar("1.1", "new", TIME, ZipEntry.DEFLATED);
+    byte[] bytes = PluginDelta.compute(previous, current).getBytes();
+    // first byte of the signature of the Deflater, after the magic number, the version, both hashes and the flag
+    bytes[4 + 1 + 32 + 32 + 1] ^= 1;
+
+    assertThatThrownBy(() -> DeltaApplier.apply(previous, new ByteArrayInputStream(bytes), new ByteArrayOutputStream()))
+      .isInstanceOf(IOException.class)
+      .hasMessageStartingWith("The delta recompresses libraries with the Deflater of ");
+  }
+
+  @Test
+  public void shouldNotRecompressLibrariesIfDisabled() throws IOException {
+    byte[] previous = pluginJar("1.0", "old", TIME, ZipEntry.DEFLATED);
+    byte[] current = pluginJar("1.1", "new", TIME, ZipEntry.DEFLATED);
+
+    PluginDelta delta = PluginDelta.compute(previous, current, false);
+
+    assertThat(apply(previous, delta)).isEqualTo(current);
+    assertThat(delta.getDiffedLibraries()).isZero();
+    // no signature of the Deflater
+    assertThat(delta.getBytes()[4 + 1 + 32 + 32]).isZero();
+  }
+
+  @Test
+  public void shouldDiffStoredLibrariesEvenIfRecompressionIsDisabled() throws IOException {
+    byte[] previous = pluginJar("1.0", "old", TIME, ZipEntry.STORED);
+    byte[] current = pluginJar("1.1", "new", TIME, ZipEntry.STORED);
+
+    PluginDelta delta = PluginDelta.compute(previous, current, false);
+
+    assertThat(apply(previous, delta)).isEqualTo(current);
+    assertThat(delta.getDiffedLibraries()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldFailIfNotZipFile() {
+    byte[] notZip = "not a zip file".getBytes(StandardCharsets.UTF_8);
+
+    assertThatThrownBy(() -> PluginDelta.compute(notZip, notZip))
+      .isInstanceOf(IOException.class)
+      .hasMessage("Not a ZIP file");
+  }
+
+  @Test
+  public void shouldWriteExecutableArchive() throws IOException {
+    PluginDelta delta = PluginDelta.compute(pluginJar("1.0", "old", TIME, ZipEntry.DEFLATED), pluginJar("1.1", "new", TIME, ZipEntry.DEFLATED));
+    File file = new File(temp.getRoot(), "plugin-delta.jar");
+
+    delta.writeArchive(file);
+
+    try (JarFile jar = new JarFile(file)) {
+      assertThat(jar.getManifest().getMainAttributes().getValue("Main-Class")).isEqualTo(DeltaApplier.class.getName());
+      assertThat(jar.getEntry(DeltaApplier.class.getName().replace('.', '/') + ".class")).isNotNull();
+      assertThat(ByteStreams.toByteArray(jar.getInputStream(jar.getEntry(DeltaApplier.DELTA_ENTRY)))).isEqualTo(delta.getBytes());
+    }
+  }
+
+  @Test
+  public void shouldRemoveVersionFromLibraryName() {
+    assertThat(PluginDelta.libraryStem("META-INF/lib/commons-email-1.5.jar")).isEqualTo("META-INF/lib/commons-email");
+    assertThat(PluginDelta.libraryStem("META-INF/lib/guava-33.0.0-jre.jar")).isEqualTo("META-INF/lib/guava");
+    assertThat(PluginDelta.libraryStem("META-INF/lib/unversioned.jar")).isEqualTo("META-INF/lib/unversioned.jar");
+  }
+
+  private static byte[] apply(byte[] previous, PluginDelta delta) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    DeltaApplier.apply(previous, new ByteArrayInputStream(delta.getBytes()), output);
+    return output.toByteArray();
+  }
+
+  /**
+   * A plugin with a large unchanged class, a class that depends on the version and a library where one of the large
+   * classes depends on the version.
+   */
+  private static byte[] pluginJar(String version, String changed, long time, int libraryMethod) throws IOException {
+    Map<String, byte[]> libraryEntries = new LinkedHashMap<>();
+    libraryEntries.put("org/lib/Unchanged.class", classContent(1, 100_000));
+    libraryEntries.put("org/lib/Changed.class", ("changed " + changed).getBytes(StandardCharsets.UTF_8));
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put(PluginArchive.MANIFEST_NAME, ("Manifest-Version: 1.0\nPlugin-Version: " + version + "\n").getBytes(StandardCharsets.UTF_8));
+    entries.put("org/foo/Unchanged.class", classContent(2, 100_000));
+    entries.put("org/foo/Changed.class", ("changed " + changed).getBytes(StandardCharsets.UTF_8));
+    if ("new".equals(changed)) {
+      entries.put("org/foo/Added.class", classContent(3, 1_000));
+    }
+    ByteArrayOutputStream plugin = new ByteArrayOutputStream();
+    try (ZipOutputStream output = new ZipOutputStream(plugin)) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        write(output, entry.getKey(), entry.getValue(), time, ZipEntry.DEFLATED);
+      }
+      write(output, "META-INF/lib/lib-" + version + ".jar", zip(libraryEntries, time), time, libraryMethod);
+    }
+    return plugin.toByteArray();
+  }
+
+  private static byte[] zip(Map<String, byte[]> entries, long time) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        write(output, entry.getKey(), entry.getValue(), time, ZipEntry.DEFLATED);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void write(ZipOutputStream output, String name, byte[] content, long time, int method) throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setTime(time);
+    entry.setMethod(method);
+    if (method == ZipEntry.STORED) {
+      CRC32 crc = new CRC32();
+      crc.update(content);
+      entry.setSize(content.length);
+      entry.setCompressedSize(content.length);
+      entry.setCrc(crc.getValue());
+    }
+    output.putNextEntry(entry);
+    output.write(content);
+    output.closeEntry();
+  }
+
+  /**
+   * Pseudo-random content, different for each seed.
+   */
+  private static byte[] classContent(int seed, int size) {
+    byte[] content = new byte[size];
+    Random random = new Random(seed);
+    for (int i = 0; i < size; i++) {
+      content[i] = (byte) ('a' + random.nextInt(16));
+    }
+    return content;
+  }
+}
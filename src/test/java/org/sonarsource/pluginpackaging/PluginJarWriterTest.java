@@ -0,0 +1,425 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PluginJarWriterTest {
+
+  private static final long TIME = 1_600_000_000_000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteEntriesInOrder() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+
+    new PluginJarWriter(4, Deflater.DEFAULT_COMPRESSION).write(jar, entries());
+
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      List<String> names = new ArrayList<>();
+      for (ZipEntry entry : Collections.list(zipFile.entries())) {
+        names.add(entry.getName());
+      }
+      assertThat(names).containsExactly("META-INF/", "META-INF/MANIFEST.MF", "org/", "org/foo/", "org/foo/Bar.class", "data.bin");
+      assertThat(zipFile.getEntry("org/foo/Bar.class").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(new String(readAll(zipFile, "META-INF/MANIFEST.MF"), StandardCharsets.UTF_8)).isEqualTo("Manifest-Version: 1.0\r\n\r\n");
+    }
+  }
+
+  @Test
+  public void shouldProduceSameBytesWhateverTheNumberOfThreads() throws IOException {
+    File singleThreaded = new File(temp.getRoot(), "single.jar");
+    File multiThreaded = new File(temp.getRoot(), "multi.jar");
+
+    new PluginJarWriter(1, Deflater.DEFAULT_COMPRESSION).write(singleThreaded, entries());
+    new PluginJarWriter(8, Deflater.DEFAULT_COMPRESSION).write(multiThreaded, entries());
+
+    assertThat(Files.readAllBytes(multiThreaded.toPath())).isEqualTo(Files.readAllBytes(singleThreaded.toPath()));
+  }
+
+  @Test
+  public void shouldStoreEntriesWhenCompressionIsDisabled() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+
+    new PluginJarWriter(2, Deflater.NO_COMPRESSION).write(jar, entries());
+
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(zipFile.getEntry("data.bin").getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(readAll(zipFile, "org/foo/Bar.class")).isEqualTo("class content".getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void shouldNotLeaveTemporaryFileOnFailure() {
+    File jar = new File(temp.getRoot(), "test.jar");
+    List<PackagedEntry> entries = Collections.singletonList(PackagedEntry.file("missing.txt", new File(temp.getRoot(), "missing.txt")));
+
+    assertThatThrownBy(() -> new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).write(jar, entries)).isInstanceOf(IOException.class);
+    assertThat(temp.getRoot().list()).isEmpty();
+  }
+
+  @Test
+  public void shouldReturnStatistics() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+
+    PluginJarWriter.Statistics statistics = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).write(jar, entries());
+
+    assertThat(statistics.getEntries()).isEqualTo(6);
+    assertThat(statistics.getUncompressedBytes()).isEqualTo(300_000L + 25 + 13);
+    assertThat(statistics.getCompressedBytes()).isGreaterThan(0L);
+    assertThat(statistics.getPeakPendingBytes()).isGreaterThanOrEqualTo(300_000L);
+    assertThat(statistics.getFileSize()).isEqualTo(jar.length());
+  }
+
+  @Test
+  public void shouldAlignStoredEntries() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+
+    PluginJarWriter.Statistics statistics = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION)
+      .store(PluginArchive.MANIFEST_NAME::equals)
+      .align("data.bin"::equals)
+      .write(jar, entries());
+
+    long offset = statistics.getAlignedOffsets().get("data.bin");
+    assertThat(offset % PluginJarWriter.ALIGNMENT).isEqualTo(0L);
+    assertThat(readAt(jar, offset, 300_000)).isEqualTo(Files.readAllBytes(new File(temp.getRoot(), "data.bin").toPath()));
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(zipFile.getEntry("data.bin").getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(zipFile.getEntry(PluginArchive.MANIFEST_NAME).getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(zipFile.getEntry("org/foo/Bar.class").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(readAll(zipFile, "data.bin")).hasSize(300_000);
+    }
+  }
+
+  @Test
+  public void shouldReplaceEntryWithoutMovingOtherEntries() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+    PluginJarWriter writer = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION)
+      .store(PluginArchive.MANIFEST_NAME::equals)
+      .align("data.bin"::equals);
+    PluginJarWriter.Statistics written = writer.write(jar, entries());
+
+    PluginJarWriter.Statistics replaced = writer.replace(jar,
+      PackagedEntry.content(PluginArchive.MANIFEST_NAME, "Manifest-Version: 2.0\r\n\r\n".getBytes(StandardCharsets.UTF_8), TIME));
+
+    assertThat(replaced.getAlignedOffsets()).isEqualTo(written.getAlignedOffsets());
+    assertThat(replaced.getFileSize()).isEqualTo(written.getFileSize());
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(new String(readAll(zipFile, "META-INF/MANIFEST.MF"), StandardCharsets.UTF_8)).isEqualTo("Manifest-Version: 2.0\r\n\r\n");
+      assertThat(new String(readAll(zipFile, "org/foo/Bar.class"), StandardCharsets.UTF_8)).isEqualTo("class content");
+    }
+  }
+
+  @Test
+  public void shouldProduceSameBytesWhateverTheTimeZoneWhenReproducible() throws IOException {
+    File utc = new File(temp.getRoot(), "utc.jar");
+    File tokyo = new File(temp.getRoot(), "tokyo.jar");
+    TimeZone defaultTimeZone = TimeZone.getDefault();
+    try {
+      TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+      new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).reproducible().write(utc, entries());
+      TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+      new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).reproducible().write(tokyo, entries());
+    } finally {
+      TimeZone.setDefault(defaultTimeZone);
+    }
+
+    assertThat(Files.readAllBytes(tokyo.toPath())).isEqualTo(Files.readAllBytes(utc.toPath()));
+  }
+
+  @Test
+  public void shouldNormalizePermissionsAndTimesWhenReproducible() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+    List<PackagedEntry> entries = new ArrayList<>();
+    for (PackagedEntry entry : entries()) {
+      entries.add(entry.withTime(0L));
+    }
+
+    new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).reproducible().write(jar, entries);
+
+    try (org.apache.commons.compress.archivers.zip.ZipFile zipFile = org.apache.commons.compress.archivers.zip.ZipFile.builder().setFile(jar).get()) {
+      ZipArchiveEntry directory = zipFile.getEntry("org/");
+      assertThat(directory.getUnixMode()).isEqualTo(040755);
+      assertThat(directory.getExtraFields()).isEmpty();
+      ZipArchiveEntry file = zipFile.getEntry("org/foo/Bar.class");
+      assertThat(file.getUnixMode()).isEqualTo(0100644);
+      assertThat(file.getExtraFields()).isEmpty();
+    }
+  }
+
+  @Test
+  public void shouldConvertTimesToUtcDosTimes() {
+    TimeZone defaultTimeZone = TimeZone.getDefault();
+    try {
+      TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+      assertThat(PluginJarWriter.toUtcDosTime(TIME)).isEqualTo(TIME - 9 * 3600_000L);
+      assertThat(PluginJarWriter.toUtcDosTime(0L)).isEqualTo(315_532_800_000L - 9 * 3600_000L);
+    } finally {
+      TimeZone.setDefault(defaultTimeZone);
+    }
+  }
+
+  @Test
+  public void shouldCopyEntriesSharedWithReusedJar() throws IOException {
+    File main = new File(temp.getRoot(), "main.jar");
+    File variant = new File(temp.getRoot(), "variant.jar");
+    List<PackagedEntry> mainEntries = entries();
+    PluginJarWriter writer = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION);
+    writer.write(main, mainEntries);
+    List<PackagedEntry> variantEntries = new ArrayList<>(mainEntries);
+    variantEntries.set(4, PackagedEntry.content("org/foo/Bar.class", "other content".getBytes(StandardCharsets.UTF_8), TIME));
+
+    PluginJarWriter.Statistics statistics = writer.reuse(main, mainEntries).write(variant, variantEntries);
+
+    assertThat(statistics.getReusedEntries()).isEqualTo(5);
+    try (ZipFile zipFile = new ZipFile(variant)) {
+      assertThat(new String(readAll(zipFile, "org/foo/Bar.class"), StandardCharsets.UTF_8)).isEqualTo("other content");
+      assertThat(readAll(zipFile, "data.bin")).isEqualTo(Files.readAllBytes(new File(temp.getRoot(), "data.bin").toPath()));
+    }
+  }
+
+  @Test
+  public void shouldProduceSameBytesWhenAllEntriesAreReused() throws IOException {
+    File main = new File(temp.getRoot(), "main.jar");
+    File copy = new File(temp.getRoot(), "copy.jar");
+    PluginJarWriter writer = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).reproducible().align("data.bin"::equals);
+    writer.write(main, entries());
+
+    PluginJarWriter.Statistics statistics = writer.reuse(main, entries()).write(copy, entries());
+
+    assertThat(statistics.getReusedEntries()).isEqualTo(6);
+    assertThat(Files.readAllBytes(copy.toPath())).isEqualTo(Files.readAllBytes(main.toPath()));
+  }
+
+  @Test
+  public void shouldRewriteJarReusingEntriesWhoseFileDidNotChange() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+    PluginJarWriter writer = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION);
+    List<PackagedEntry> entries = entries();
+    writer.write(jar, entries);
+    File dataFile = new File(temp.getRoot(), "data.bin");
+    Files.write(dataFile.toPath(), "new data".getBytes(StandardCharsets.UTF_8));
+    dataFile.setLastModified(TIME);
+
+    PluginJarWriter.Statistics statistics = writer.reuse(jar, entries).write(jar, entries());
+
+    assertThat(statistics.getReusedEntries()).isEqualTo(5);
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(new String(readAll(zipFile, "data.bin"), StandardCharsets.UTF_8)).isEqualTo("new data");
+    }
+  }
+
+  @Test
+  public void shouldNotReuseEntryWhoseFileChangedWithSameLengthAndTime() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+    PluginJarWriter writer = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION);
+    List<PackagedEntry> entries = entries();
+    writer.write(jar, entries);
+    File dataFile = new File(temp.getRoot(), "data.bin");
+    long modified = dataFile.lastModified();
+    byte[] data = Files.readAllBytes(dataFile.toPath());
+    data[0]++;
+    Files.write(dataFile.toPath(), data);
+    dataFile.setLastModified(modified);
+
+    PluginJarWriter.Statistics statistics = writer.reuse(jar, entries).write(jar, entries());
+
+    assertThat(statistics.getReusedEntries()).isEqualTo(5);
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(readAll(zipFile, "data.bin")).isEqualTo(data);
+    }
+  }
+
+  @Test
+  public void shouldPatchJarLikeFullRebuildWhenReproducible() throws IOException {
+    File patched = new File(temp.getRoot(), "patched.jar");
+    File rebuilt = new File(temp.getRoot(), "rebuilt.jar");
+    List<PackagedEntry> entries = entries();
+    new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).reproducible().write(patched, entries);
+    Map<String, String> keys = new HashMap<>();
+    for (PackagedEntry entry : entries) {
+      keys.put(entry.getName(), entry.getKey());
+    }
+    List<PackagedEntry> modified = new ArrayList<>(entries);
+    modified.set(4, PackagedEntry.content("org/foo/Bar.class", "other content".getBytes(StandardCharsets.UTF_8), TIME));
+    modified.add(PackagedEntry.content("org/foo/Baz.class", "new class".getBytes(StandardCharsets.UTF_8), TIME));
+
+    PluginJarWriter.Statistics statistics = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).reproducible().reuse(patched, keys).write(patched, modified);
+    new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).reproducible().write(rebuilt, modified);
+
+    assertThat(statistics.getReusedEntries()).isEqualTo(5);
+    assertThat(Files.readAllBytes(patched.toPath())).isEqualTo(Files.readAllBytes(rebuilt.toPath()));
+  }
+
+  @Test
+  public void shouldStoreIncompressibleEntriesWithAdaptiveCompression() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+
+    PluginJarWriter.Statistics statistics = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION)
+      .compression(CompressionPolicy.of(Collections.emptyList(), true))
+      .write(jar, entries());
+
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(zipFile.getEntry("data.bin").getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(zipFile.getEntry("org/foo/Bar.class").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(readAll(zipFile, "data.bin")).isEqualTo(Files.readAllBytes(new File(temp.getRoot(), "data.bin").toPath()));
+    }
+    assertThat(statistics.getAdaptivelyStoredEntries()).isEqualTo(1);
+    assertThat(statistics.getAdaptivelyStoredBytes()).isEqualTo(300_000L);
+    assertThat(statistics.getEstimatedSavedNanos()).isGreaterThanOrEqualTo(0L);
+    assertThat(statistics.getEstimatedExtraBytes()).isLessThan(3_000L);
+  }
+
+  @Test
+  public void shouldApplyCompressionRules() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+
+    PluginJarWriter.Statistics statistics = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION)
+      .compression(CompressionPolicy.of(Collections.singletonList("org/**=store"), false))
+      .write(jar, entries());
+
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(zipFile.getEntry("org/foo/Bar.class").getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(zipFile.getEntry("data.bin").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+    }
+    assertThat(statistics.getAdaptivelyStoredEntries()).isZero();
+  }
+
+  @Test
+  public void shouldStreamEntriesBackedByBigFiles() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+    List<PackagedEntry> entries = new ArrayList<>(entries());
+    entries.add(PackagedEntry.content("last.txt", "last".getBytes(StandardCharsets.UTF_8), TIME));
+
+    PluginJarWriter.Statistics statistics = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).streamAbove(100_000L).write(jar, entries);
+
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      List<String> names = new ArrayList<>();
+      for (ZipEntry entry : Collections.list(zipFile.entries())) {
+        names.add(entry.getName());
+      }
+      assertThat(names).containsExactly("META-INF/", "META-INF/MANIFEST.MF", "org/", "org/foo/", "org/foo/Bar.class", "data.bin", "last.txt");
+      assertThat(zipFile.getEntry("data.bin").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(readAll(zipFile, "data.bin")).isEqualTo(Files.readAllBytes(new File(temp.getRoot(), "data.bin").toPath()));
+    }
+    assertThat(statistics.getEntries()).isEqualTo(7);
+    assertThat(statistics.getUncompressedBytes()).isEqualTo(300_000L + 25 + 13 + 4);
+    assertThat(statistics.getPeakPendingBytes()).isLessThan(300_000L);
+  }
+
+  @Test
+  public void shouldStoreAndAlignStreamedEntries() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+
+    PluginJarWriter.Statistics statistics = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION)
+      .streamAbove(100_000L)
+      .align("data.bin"::equals)
+      .write(jar, entries());
+
+    long offset = statistics.getAlignedOffsets().get("data.bin");
+    assertThat(offset % PluginJarWriter.ALIGNMENT).isEqualTo(0L);
+    assertThat(readAt(jar, offset, 300_000)).isEqualTo(Files.readAllBytes(new File(temp.getRoot(), "data.bin").toPath()));
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(zipFile.getEntry("data.bin").getMethod()).isEqualTo(ZipEntry.STORED);
+    }
+  }
+
+  @Test
+  public void shouldSampleAndReuseStreamedEntries() throws IOException {
+    File jar = new File(temp.getRoot(), "test.jar");
+    PluginJarWriter writer = new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION)
+      .streamAbove(100_000L)
+      .compression(CompressionPolicy.of(Collections.emptyList(), true));
+    List<PackagedEntry> entries = entries();
+
+    PluginJarWriter.Statistics written = writer.write(jar, entries);
+    PluginJarWriter.Statistics rewritten = writer.reuse(jar, entries).write(jar, entries);
+
+    assertThat(written.getAdaptivelyStoredEntries()).isEqualTo(1);
+    assertThat(written.getAdaptivelyStoredBytes()).isEqualTo(300_000L);
+    assertThat(rewritten.getReusedEntries()).isEqualTo(6);
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      assertThat(zipFile.getEntry("data.bin").getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(readAll(zipFile, "data.bin")).isEqualTo(Files.readAllBytes(new File(temp.getRoot(), "data.bin").toPath()));
+    }
+  }
+
+  @Test
+  public void shouldRequireAtLeastOneThread() {
+    assertThatThrownBy(() -> new PluginJarWriter(0, Deflater.DEFAULT_COMPRESSION))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Number of packaging threads must be positive: 0");
+  }
+
+  private List<PackagedEntry> entries() throws IOException {
+    byte[] data = new byte[300_000];
+    new Random(42).nextBytes(data);
+    File dataFile = new File(temp.getRoot(), "data.bin");
+    if (!dataFile.exists()) {
+      Files.write(dataFile.toPath(), data);
+    }
+    PluginArchive archive = new PluginArchive(TIME);
+    archive.addContent(PluginArchive.MANIFEST_NAME, "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8), TIME);
+    archive.addContent("org/foo/Bar.class", "class content".getBytes(StandardCharsets.UTF_8), TIME);
+    archive.addFile("data.bin", dataFile);
+    List<PackagedEntry> entries = new ArrayList<>();
+    for (PackagedEntry entry : archive.getEntries()) {
+      entries.add(entry.withTime(TIME));
+    }
+    return entries;
+  }
+
+  private static byte[] readAt(File file, long offset, int length) throws IOException {
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      byte[] data = new byte[length];
+      input.seek(offset);
+      input.readFully(data);
+      return data;
+    }
+  }
+
+  private static byte[] readAll(ZipFile zipFile, String name) throws IOException {
+    return ByteStreams.toByteArray(zipFile.getInputStream(zipFile.getEntry(name)));
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProvidedArtifactResolverTest {
+
+  @Test
+  public void shouldCollectTransitiveDependenciesOfLegacyApi() {
+    DependencyNode commonsLang = node("commons-lang:commons-lang:2.5", "compile");
+    DependencyNode api = node("org.codehaus.sonar:sonar-plugin-api:4.5", "compile", commonsLang);
+    DependencyNode guava = node("com.google.guava:guava:18.0", "compile");
+    DependencyNode root = node("org.foo:sonar-foo-plugin:1.0", null, api, guava);
+
+    assertThat(ProvidedArtifactResolver.collectProvided(root))
+      .containsOnly("org.codehaus.sonar:sonar-plugin-api", "commons-lang:commons-lang");
+  }
+
+  @Test
+  public void shouldPruneTestDependencies() {
+    DependencyNode commonsLang = node("commons-lang:commons-lang:2.5", "compile");
+    DependencyNode testHarness = node("org.codehaus.sonar:sonar-testing-harness:4.5", "test", commonsLang);
+    DependencyNode root = node("org.foo:sonar-foo-plugin:1.0", null, testHarness);
+
+    assertThat(ProvidedArtifactResolver.collectProvided(root)).isEmpty();
+  }
+
+  @Test
+  public void shouldNotConsiderRootAsProvided() {
+    DependencyNode commonsLang = node("commons-lang:commons-lang:2.5", "compile");
+    DependencyNode root = node("org.codehaus.sonar:sonar-foo-plugin:1.0", null, commonsLang);
+
+    assertThat(ProvidedArtifactResolver.collectProvided(root)).isEmpty();
+  }
+
+  @Test
+  public void shouldVisitSharedNodesAsProvided() {
+    DependencyNode commonsLang = node("commons-lang:commons-lang:2.5", "compile");
+    DependencyNode commonsIo = node("commons-io:commons-io:2.4", "compile", commonsLang);
+    DependencyNode api = node("org.codehaus.sonar:sonar-plugin-api:4.5", "compile", commonsIo);
+    DependencyNode root = node("org.foo:sonar-foo-plugin:1.0", null, commonsIo, api);
+
+    assertThat(ProvidedArtifactResolver.collectProvided(root))
+      .containsOnly("org.codehaus.sonar:sonar-plugin-api", "commons-io:commons-io", "commons-lang:commons-lang");
+  }
+
+  @Test
+  public void shouldDetectLegacyApi() {
+    org.apache.maven.artifact.Artifact api = mavenArtifact("org.codehaus.sonar", "sonar-plugin-api");
+    org.apache.maven.artifact.Artifact guava = mavenArtifact("com.google.guava", "guava");
+
+    assertThat(ProvidedArtifactResolver.dependsOnLegacyApi(Arrays.asList(guava, api))).isTrue();
+    assertThat(ProvidedArtifactResolver.dependsOnLegacyApi(Collections.singletonList(guava))).isFalse();
+    assertThat(ProvidedArtifactResolver.key(guava)).isEqualTo("com.google.guava:guava");
+  }
+
+  private static DependencyNode node(String coordinates, String scope, DependencyNode... children) {
+    DefaultDependencyNode node;
+    if (scope == null) {
+      node = new DefaultDependencyNode(new DefaultArtifact(coordinates));
+    } else {
+      node = new DefaultDependencyNode(new Dependency(new DefaultArtifact(coordinates), scope));
+    }
+    node.setChildren(Arrays.asList(children));
+    return node;
+  }
+
+  private static org.apache.maven.artifact.Artifact mavenArtifact(String groupId, String artifactId) {
+    return new org.apache.maven.artifact.DefaultArtifact(groupId, artifactId, "1.0", "compile", "jar", null, new DefaultArtifactHandler("jar"));
+  }
+}
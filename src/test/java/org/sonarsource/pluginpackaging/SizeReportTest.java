@@ -0,0 +1,146 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SizeReportTest {
+
+  private static final long TIME = 1_600_000_000_000L;
+  private static final String DIRECT = "META-INF/lib/direct-1.0.jar";
+  private static final String TRANSITIVE = "META-INF/lib/transitive-1.0.jar";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldReportContributionOfEachDependency() throws IOException {
+    SizeReport report = SizeReport.compute(pluginJar(), origins());
+
+    Map<String, SizeReport.Row> rows = new HashMap<>();
+    for (SizeReport.Row row : report.getRows()) {
+      rows.put(row.getName(), row);
+    }
+    assertThat(rows).hasSize(3);
+    SizeReport.Row plugin = rows.get(SizeReport.PLUGIN_ROW);
+    assertThat(plugin.getClasses()).isEqualTo(1);
+    assertThat(plugin.getClassBytes()).isEqualTo(100L);
+    assertThat(plugin.isTransitive()).isFalse();
+    SizeReport.Row direct = rows.get(DIRECT);
+    assertThat(direct.getClasses()).isEqualTo(2);
+    assertThat(direct.getClassBytes()).isEqualTo(3_000L);
+    assertThat(direct.getCompressedBytes()).isGreaterThan(0L);
+    assertThat(direct.getUncompressedBytes()).isGreaterThan(0L);
+    assertThat(direct.getEstimatedMetaspaceBytes()).isGreaterThan(direct.getClassBytes());
+    assertThat(direct.isTransitive()).isFalse();
+    assertThat(rows.get(TRANSITIVE).isTransitive()).isTrue();
+    assertThat(report.getRows().get(0).getCompressedBytes()).isGreaterThanOrEqualTo(report.getRows().get(1).getCompressedBytes());
+  }
+
+  @Test
+  public void shouldWriteJson() throws IOException {
+    String json = SizeReport.compute(pluginJar(), origins()).toJson();
+
+    assertThat(json).startsWith("{\"file\":\"plugin.jar\",\"fileSize\":");
+    assertThat(json).contains("{\"name\":\"META-INF/lib/transitive-1.0.jar\",\"artifact\":\"org.foo:transitive:jar:1.0\",\"transitive\":true,"
+      + "\"path\":[\"org.foo:direct:jar:1.0\",\"org.foo:transitive:jar:1.0\"],\"compressedBytes\":");
+    assertThat(json).contains("{\"name\":\"(plugin)\",\"compressedBytes\":");
+  }
+
+  @Test
+  public void shouldCheckBudgets() throws IOException {
+    SizeReport report = SizeReport.compute(pluginJar(), origins());
+
+    assertThat(report.checkBudgets("1MB", Collections.singletonList("*:*=1MB"))).isEmpty();
+    assertThat(report.checkBudgets("10", Collections.emptyList())).hasSize(1);
+    List<String> exceeded = report.checkBudgets(null, Arrays.asList("org.foo:transitive=1MB", "org.foo:*=10"));
+    assertThat(exceeded).hasSize(1);
+    assertThat(exceeded.get(0)).startsWith("org.foo:direct contributes ").endsWith(" bytes, more than the budget of 10");
+  }
+
+  @Test
+  public void shouldRejectInvalidBudgets() throws IOException {
+    SizeReport report = SizeReport.compute(pluginJar(), origins());
+
+    assertThatThrownBy(() -> report.checkBudgets(null, Collections.singletonList("guava=1MB")))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Invalid dependency budget, expected <groupId>:<artifactId>=<size>: guava=1MB");
+    assertThatThrownBy(() -> report.checkBudgets("big", Collections.emptyList()))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Invalid size, expected bytes or a number of KB, MB or GB: big");
+  }
+
+  @Test
+  public void shouldParseSizes() {
+    assertThat(SizeReport.parseSize("123")).isEqualTo(123L);
+    assertThat(SizeReport.parseSize("2KB")).isEqualTo(2_048L);
+    assertThat(SizeReport.parseSize(" 3 mb ")).isEqualTo(3L * 1024 * 1024);
+    assertThat(SizeReport.parseSize("1GB")).isEqualTo(1024L * 1024 * 1024);
+  }
+
+  private Map<String, SizeReport.Origin> origins() {
+    Map<String, SizeReport.Origin> origins = new HashMap<>();
+    origins.put(DIRECT, new SizeReport.Origin("org.foo:direct", "org.foo:direct:jar:1.0", Collections.singletonList("org.foo:direct:jar:1.0")));
+    origins.put(TRANSITIVE, new SizeReport.Origin("org.foo:transitive", "org.foo:transitive:jar:1.0",
+      Arrays.asList("org.foo:direct:jar:1.0", "org.foo:transitive:jar:1.0")));
+    return origins;
+  }
+
+  private File pluginJar() throws IOException {
+    File jar = new File(temp.getRoot(), "plugin.jar");
+    new PluginJarWriter(1, Deflater.DEFAULT_COMPRESSION).write(jar, Arrays.asList(
+      PackagedEntry.content(PluginArchive.MANIFEST_NAME, "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8), TIME),
+      PackagedEntry.content("org/foo/Plugin.class", new byte[100], TIME),
+      PackagedEntry.content(DIRECT, nestedJar("org/foo/A.class", "org/foo/B.class"), TIME),
+      PackagedEntry.content(TRANSITIVE, nestedJar("org/bar/C.class"), TIME)));
+    return jar;
+  }
+
+  private static byte[] nestedJar(String... classes) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+      output.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+      output.closeEntry();
+      for (String name : classes) {
+        output.putNextEntry(new ZipEntry(name));
+        output.write(new byte[1_500]);
+        output.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StartupProfileTest {
+
+  private static final String LIB = "META-INF/lib/helper-1.0.jar";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldProfileInstantiationOfPluginClass() throws IOException {
+    File pluginJar = pluginJar(false, true);
+
+    StartupProfile profile = StartupProfile.run(pluginJar, temp.newFolder(), Collections.emptyList());
+
+    assertThat(profile.getPluginClass()).isEqualTo(FakePlugin.class.getName());
+    assertThat(profile.isChildFirst()).isFalse();
+    Map<String, String> sources = profile.getLoadedClasses().stream()
+      .collect(Collectors.toMap(StartupProfile.LoadedClass::getName, StartupProfile.LoadedClass::getSource));
+    assertThat(sources)
+      .containsEntry(FakePlugin.class.getName(), StartupProfile.PLUGIN_SOURCE)
+      .containsEntry(Helper.class.getName(), LIB);
+    assertThat(profile.getLoadedClasses().get(0).getName()).isEqualTo(FakePlugin.class.getName());
+    assertThat(profile.getClassesBySource()).containsEntry(LIB, 1).doesNotContainKey(StartupProfile.PARENT_SOURCE);
+    assertThat(profile.getStaticInitNanos()).isGreaterThanOrEqualTo(FakePlugin.STATIC_INIT_MILLIS * 1_000_000L);
+    assertThat(profile.getConstructorNanos()).isGreaterThanOrEqualTo(0L);
+    assertThat(profile.getHeaviestClasses(1)).hasSize(1);
+  }
+
+  @Test
+  public void shouldLoadFromParentFirstUnlessChildFirst() throws IOException {
+    File parentJar = jar("parent.jar", Collections.singletonList(Helper.class));
+
+    StartupProfile parentFirst = StartupProfile.run(pluginJar(false, true), temp.newFolder(), Collections.singletonList(parentJar));
+    assertThat(parentFirst.getClassesBySource()).containsEntry(StartupProfile.PARENT_SOURCE, 1).doesNotContainKey(LIB);
+
+    StartupProfile childFirst = StartupProfile.run(pluginJar(true, true), temp.newFolder(), Collections.singletonList(parentJar));
+    assertThat(childFirst.isChildFirst()).isTrue();
+    assertThat(childFirst.getClassesBySource()).containsEntry(LIB, 1).doesNotContainKey(StartupProfile.PARENT_SOURCE);
+  }
+
+  @Test
+  public void shouldProfileClassesBeforePackaging() throws IOException {
+    Map<String, File> classpath = new LinkedHashMap<>();
+    classpath.put(StartupProfile.PLUGIN_SOURCE, classesDir(FakePlugin.class));
+    classpath.put(LIB, jar("helper-1.0.jar", Collections.singletonList(Helper.class)));
+
+    StartupProfile profile = StartupProfile.run(FakePlugin.class.getName(), false, classpath, Collections.emptyList());
+
+    assertThat(profile.getStartupEntries()).containsExactly(FakePlugin.class.getName().replace('.', '/') + ".class", LIB);
+  }
+
+  @Test
+  public void shouldFailIfClassIsMissingAtRuntime() throws IOException {
+    File pluginJar = pluginJar(false, false);
+    File workDir = temp.newFolder();
+
+    assertThatThrownBy(() -> StartupProfile.run(pluginJar, workDir, Collections.emptyList()))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessageStartingWith("Fail to instantiate the plugin class " + FakePlugin.class.getName() + ": ")
+      .hasMessageContaining(Helper.class.getName().replace('.', '/'));
+  }
+
+  @Test
+  public void shouldWriteJson() throws IOException {
+    String json = StartupProfile.run(pluginJar(false, true), temp.newFolder(), Collections.emptyList()).toJson(1);
+
+    assertThat(json)
+      .startsWith("{\"pluginClass\":\"" + FakePlugin.class.getName() + "\",\"childFirst\":false,\"loadedClasses\":2,\"classesBySource\":{")
+      .contains("\"META-INF/lib/helper-1.0.jar\":1")
+      .contains(",\"staticInitMs\":")
+      .contains(",\"heaviestClasses\":[{\"name\":");
+  }
+
+  private File pluginJar(boolean childFirst, boolean declareLib) throws IOException {
+    File lib = jar("helper-1.0.jar", Collections.singletonList(Helper.class));
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue(PluginManifestProperty.MAIN_CLASS.getKey(), FakePlugin.class.getName());
+    manifest.getMainAttributes().putValue(PluginManifestProperty.USE_CHILD_FIRST_CLASSLOADER.getKey(), String.valueOf(childFirst));
+    if (declareLib) {
+      manifest.getMainAttributes().putValue(PluginManifestProperty.DEPENDENCIES.getKey(), LIB);
+    }
+    File jar = new File(temp.newFolder(), "plugin.jar");
+    try (JarOutputStream output = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+      output.putNextEntry(new ZipEntry(FakePlugin.class.getName().replace('.', '/') + ".class"));
+      copyClass(FakePlugin.class, output);
+      output.putNextEntry(new ZipEntry(LIB));
+      Files.copy(lib.toPath(), output);
+    }
+    return jar;
+  }
+
+  private File jar(String name, List<Class<?>> classes) throws IOException {
+    File file = new File(temp.newFolder(), name);
+    try (JarOutputStream output = new JarOutputStream(new FileOutputStream(file))) {
+      for (Class<?> type : classes) {
+        output.putNextEntry(new ZipEntry(type.getName().replace('.', '/') + ".class"));
+        copyClass(type, output);
+      }
+    }
+    return file;
+  }
+
+  private File classesDir(Class<?> type) throws IOException {
+    File dir = temp.newFolder();
+    File file = new File(dir, type.getName().replace('.', '/') + ".class");
+    Files.createDirectories(file.getParentFile().toPath());
+    try (InputStream input = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class")) {
+      Files.copy(input, file.toPath());
+    }
+    return dir;
+  }
+
+  private static void copyClass(Class<?> type, JarOutputStream output) throws IOException {
+    try (InputStream input = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class")) {
+      ByteStreams.copy(input, output);
+    }
+  }
+
+  public static class FakePlugin {
+    static final long STATIC_INIT_MILLIS = 20L;
+    static final String VALUE = Helper.value();
+
+    public FakePlugin() {
+      // instantiated by the profile
+    }
+  }
+
+  public static class Helper {
+    public static String value() {
+      try {
+        Thread.sleep(FakePlugin.STATIC_INIT_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return "value";
+    }
+  }
+}
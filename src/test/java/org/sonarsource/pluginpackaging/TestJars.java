@@ -0,0 +1,56 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * JAR files written by tests.
+ */
+class TestJars {
+
+  private TestJars() {
+    // only static methods
+  }
+
+  /**
+   * Writes a JAR file with the given entries. Entries ending with {@code /} are directories, the content of the other
+   * ones is "content of " followed by their name.
+   */
+  static File jar(File dir, String name, String... entries) throws IOException {
+    File file = new File(dir, name);
+    try (OutputStream output = Files.newOutputStream(file.toPath()); ZipOutputStream zip = new ZipOutputStream(output)) {
+      for (String entry : entries) {
+        zip.putNextEntry(new ZipEntry(entry));
+        if (!entry.endsWith("/")) {
+          zip.write(("content of " + entry).getBytes(StandardCharsets.UTF_8));
+        }
+        zip.closeEntry();
+      }
+    }
+    return file;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WrittenEntriesTest {
+
+  private static final long TIME = 1_600_000_000_000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldReadKeysOfWrittenEntries() throws IOException {
+    File jar = temp.newFile("test.jar");
+    File index = new File(temp.getRoot(), "work/test.jar.entries");
+    List<PackagedEntry> entries = entries();
+
+    WrittenEntries.write(index, jar, "settings", entries);
+    Map<String, String> keys = WrittenEntries.read(index, jar, "settings");
+
+    assertThat(keys).hasSize(3);
+    assertThat(keys.get("org/foo/Bar.class")).isEqualTo(entries.get(1).getKey());
+    assertThat(keys.get("org/foo/with space.txt")).isEqualTo(entries.get(2).getKey());
+  }
+
+  @Test
+  public void shouldIgnoreKeysWrittenWithOtherSettings() throws IOException {
+    File jar = temp.newFile("test.jar");
+    File index = new File(temp.getRoot(), "test.jar.entries");
+    WrittenEntries.write(index, jar, "settings", entries());
+
+    assertThat(WrittenEntries.read(index, jar, "other settings")).isNull();
+  }
+
+  @Test
+  public void shouldIgnoreKeysOfModifiedJar() throws IOException {
+    File jar = temp.newFile("test.jar");
+    File index = new File(temp.getRoot(), "test.jar.entries");
+    WrittenEntries.write(index, jar, "settings", entries());
+
+    Files.write(jar.toPath(), "shaded".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(WrittenEntries.read(index, jar, "settings")).isNull();
+  }
+
+  @Test
+  public void shouldIgnoreMissingFiles() throws IOException {
+    File jar = temp.newFile("test.jar");
+
+    assertThat(WrittenEntries.read(new File(temp.getRoot(), "missing.entries"), jar, "settings")).isNull();
+    assertThat(WrittenEntries.read(temp.newFile("test.jar.entries"), new File(temp.getRoot(), "missing.jar"), "settings")).isNull();
+  }
+
+  @Test
+  public void shouldChangeKeyWhenFileChanges() throws IOException {
+    File file = temp.newFile("Bar.class");
+    file.setLastModified(TIME);
+    String key = PackagedEntry.file("org/foo/Bar.class", file).getKey();
+
+    assertThat(PackagedEntry.file("org/foo/Bar.class", file).getKey()).isEqualTo(key);
+    assertThat(PackagedEntry.file("org/foo/Bar.class", file).withTime(TIME).getKey()).isEqualTo(key);
+    file.setLastModified(TIME + 2_000L);
+    assertThat(PackagedEntry.file("org/foo/Bar.class", file).withTime(TIME).getKey()).isNotEqualTo(key);
+    assertThat(PackagedEntry.content("a.txt", new byte[] {1}, TIME).getKey()).isNotEqualTo(PackagedEntry.content("a.txt", new byte[] {2}, TIME).getKey());
+  }
+
+  private List<PackagedEntry> entries() {
+    return Arrays.asList(
+      PackagedEntry.directory("org/", TIME),
+      PackagedEntry.content("org/foo/Bar.class", "bar".getBytes(StandardCharsets.UTF_8), TIME),
+      PackagedEntry.content("org/foo/with space.txt", "text".getBytes(StandardCharsets.UTF_8), TIME));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * SonarQube Server :: Packaging Maven Plugin
+ * Copyright (C) 2009-2025 SonarSource Sàrl
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonarsource.pluginpackaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PackagingEventsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldRecordScanAndArchiveEvents() throws IOException {
+    File classesDir = temp.newFolder("classes");
+    Files.write(new File(classesDir, "Foo.class").toPath(), "foo".getBytes(StandardCharsets.UTF_8));
+    File jar = new File(temp.getRoot(), "test.jar");
+    Path recordingFile = new File(temp.getRoot(), "recording.jfr").toPath();
+
+    try (Recording recording = new Recording()) {
+      recording.enable(JfrPackagingEvents.DirectoryScan.class).withThreshold(Duration.ZERO);
+      recording.enable(JfrPackagingEvents.Archive.class).withThreshold(Duration.ZERO);
+      recording.start();
+      PluginArchive archive = new PluginArchive(0L);
+      archive.addDirectory(classesDir, "", new String[] {"**/**"}, new String[0]);
+      new PluginJarWriter(2, Deflater.DEFAULT_COMPRESSION).write(jar, archive.getEntries());
+      recording.stop();
+      recording.dump(recordingFile);
+    }
+
+    List<String> names = new ArrayList<>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+      String name = event.getEventType().getName();
+      names.add(name);
+      if (name.equals("org.sonarsource.pluginpackaging.DirectoryScan")) {
+        assertThat(event.getInt("entries")).isEqualTo(1);
+        assertThat(event.getLong("bytes")).isEqualTo(3L);
+      } else if (name.equals("org.sonarsource.pluginpackaging.Archive")) {
+        assertThat(event.getString("file")).isEqualTo(jar.getPath());
+        assertThat(event.getInt("entries")).isEqualTo(1);
+        assertThat(event.getLong("fileSize")).isEqualTo(jar.length());
+      }
+    }
+    assertThat(PackagingEvents.isRecorded()).isTrue();
+    assertThat(names).containsOnly("org.sonarsource.pluginpackaging.DirectoryScan", "org.sonarsource.pluginpackaging.Archive");
+  }
+}